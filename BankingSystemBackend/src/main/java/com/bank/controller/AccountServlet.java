@@ -1,45 +1,98 @@
 package com.bank.controller;
 
 import com.bank.dao.AccountDao;
+import com.bank.dao.AccountMetadata;
+import com.bank.dao.IdempotencyRecord;
+import com.bank.dao.IdempotencyStore;
+import com.bank.dao.TransactionDao;
 import com.bank.model.Account;
+import com.bank.model.Money;
+import com.bank.model.Transaction;
+import com.bank.model.TransactionPage;
 import com.bank.model.User;
+import com.bank.util.AppConfig;
+import com.bank.util.BoundedExecutor;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.PrintWriter;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 // Mapped in web.xml to /api/accounts/*
 public class AccountServlet extends BaseServlet {
 
     private final AccountDao accountDao = new AccountDao();
+    private final TransactionDao transactionDao = new TransactionDao();
+    private final IdempotencyStore idempotencyStore = new IdempotencyStore();
+
+    static final String MUTATION_EXECUTOR_ATTRIBUTE = "com.bank.accountMutationExecutor";
+
+    // Runs POSTs off the container threads when account.async.enabled=true (null otherwise)
+    private BoundedExecutor mutationExecutor;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        if (AppConfig.getBoolean("account.async.enabled", false)) {
+            mutationExecutor = BoundedExecutor.fromConfig("account.async", "account-mutation");
+            getServletContext().setAttribute(MUTATION_EXECUTOR_ATTRIBUTE, mutationExecutor); // for MetricsServlet
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (mutationExecutor != null) {
+            mutationExecutor.shutdown();
+        }
+        super.destroy();
+    }
 
     /**
      * Authorization Check: Validates user session for every request.
      * @return The authenticated User object, or null if not authenticated.
      */
     private User checkAuth(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        HttpSession session = req.getSession(false);
-        if (session == null || session.getAttribute("user") == null) {
+        User user = getAuthenticatedUser(req);
+        if (user == null) {
             sendError(resp, HttpServletResponse.SC_UNAUTHORIZED, "You must be logged in to perform this action.");
-            return null;
         }
-        return (User) session.getAttribute("user");
+        return user;
     }
 
     /**
      * Handles GET requests: /api/accounts/
      * Retrieves all accounts for the currently logged-in user.
+     * Also serves /api/accounts/transactions?accountId=&cursor=&limit= (paginated history).
+     * And /api/accounts/balance?accountId=&asOf= (balance at a point in time),
+     * and /api/accounts/statement?accountId=&from=&to=&format=csv|ndjson (streamed export).
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         User user = checkAuth(req, resp);
         if (user == null) return; // Auth failed
 
+        if ("/transactions".equals(req.getPathInfo())) {
+            handleHistory(req, resp, user);
+            return;
+        }
+        if ("/balance".equals(req.getPathInfo())) {
+            handleBalanceAsOf(req, resp, user);
+            return;
+        }
+        if ("/statement".equals(req.getPathInfo())) {
+            handleStatement(req, resp, user);
+            return;
+        }
+
         try {
             List<Account> accounts = accountDao.getAccountsByUserId(user.getUserId());
             sendJsonResponse(resp, accounts);
@@ -62,18 +115,91 @@ public class AccountServlet extends BaseServlet {
             sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid endpoint.");
             return;
         }
-        
+
+        if (mutationExecutor != null && req.isAsyncSupported()) {
+            dispatchAsync(req, resp, user, pathInfo);
+        } else {
+            handleMutation(req, resp, user, pathInfo);
+        }
+    }
+
+    /**
+     * Async mode: the container thread is released while the mutation waits for
+     * row locks. A full backlog, or a request that queued too long, gets a fast 503.
+     */
+    private void dispatchAsync(HttpServletRequest req, HttpServletResponse resp, User user, String pathInfo) throws IOException {
+        AsyncContext async = req.startAsync(req, resp);
+        async.setTimeout(0); // The executor bounds queueing; a started transfer always runs to completion
+
+        boolean accepted = mutationExecutor.submit(() -> {
+            try {
+                handleMutation(req, resp, user, pathInfo);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                async.complete();
+            }
+        }, () -> {
+            try {
+                sendBusy(resp);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                async.complete();
+            }
+        });
+
+        if (!accepted) {
+            sendBusy(resp);
+            async.complete();
+        }
+    }
+
+    private void sendBusy(HttpServletResponse resp) throws IOException {
+        resp.setHeader("Retry-After", "1");
+        sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server is busy. Please try again.");
+    }
+
+    /**
+     * Reads the payload and runs /deposit, /withdraw or /transfer.
+     * With an Idempotency-Key header (and idempotency.enabled), a retry of a request
+     * that already succeeded gets the original response without running again, and
+     * a duplicate that arrives while the first is still running waits for it.
+     */
+    private void handleMutation(HttpServletRequest req, HttpServletResponse resp, User user, String pathInfo) throws IOException {
+        IdempotencyStore.Claim claim = null;
         try {
             Map<String, String> payload = readPayload(req, Map.class);
+
+            String idempotencyKey = IdempotencyStore.isEnabled() ? req.getHeader("Idempotency-Key") : null;
+            if (idempotencyKey != null) {
+                if (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+                    sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid Idempotency-Key.");
+                    return;
+                }
+                // Keys sorted, so a retry that serialises the same fields in another order still matches
+                String fingerprint = pathInfo + " " + gson.toJson(payload == null ? null : new TreeMap<>(payload));
+                claim = idempotencyStore.claim(user.getUserId(), idempotencyKey, fingerprint);
+                if (claim == null) {
+                    resp.setHeader("Retry-After", "1");
+                    sendError(resp, HttpServletResponse.SC_CONFLICT, "A request with this Idempotency-Key is still in progress.");
+                    return;
+                }
+                if (claim.isReplay()) {
+                    sendReplay(resp, claim, claim.getReplay());
+                    return;
+                }
+            }
+
             switch (pathInfo) {
                 case "/deposit":
-                    handleDeposit(req, resp, user, payload);
+                    handleDeposit(req, resp, user, payload, claim);
                     break;
                 case "/withdraw":
-                    handleWithdraw(req, resp, user, payload);
+                    handleWithdraw(req, resp, user, payload, claim);
                     break;
                 case "/transfer":
-                    handleTransfer(req, resp, user, payload);
+                    handleTransfer(req, resp, user, payload, claim);
                     break;
                 default:
                     sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Not Found");
@@ -81,18 +207,165 @@ public class AccountServlet extends BaseServlet {
         } catch (Exception e) {
             e.printStackTrace();
             sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "An error occurred while processing your request.");
+        } finally {
+            if (claim != null) {
+                claim.release();
+            }
+        }
+    }
+
+    /**
+     * Answers a retry with the stored response of the request that used its key first.
+     */
+    private void sendReplay(HttpServletResponse resp, IdempotencyStore.Claim claim, IdempotencyRecord replay) throws IOException {
+        if (!claim.matches(replay)) {
+            sendError(resp, 422, "Idempotency-Key was already used for a different request.");
+            return;
+        }
+        resp.setStatus(replay.getStatusCode());
+        resp.setHeader("Idempotent-Replayed", "true");
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        try (PrintWriter out = resp.getWriter()) {
+            out.print(replay.getResponseBody());
+        }
+    }
+
+    /**
+     * The idempotency record to store with a successful mutation, or null without a key.
+     */
+    private IdempotencyRecord successRecord(IdempotencyStore.Claim claim, Object body) {
+        return (claim == null) ? null : claim.record(HttpServletResponse.SC_OK, gson.toJson(body));
+    }
+
+    /**
+     * After a failed mutation: if the same key committed on another node meanwhile
+     * (which is what failed ours), answers with that response and returns true.
+     */
+    private boolean replayCommitted(HttpServletResponse resp, IdempotencyStore.Claim claim) throws IOException {
+        IdempotencyRecord committed = (claim == null) ? null : claim.findCommitted();
+        if (committed == null) {
+            return false;
         }
+        sendReplay(resp, claim, committed);
+        return true;
     }
 
     // --- Private Handler Methods ---
 
-    private void handleDeposit(HttpServletRequest req, HttpServletResponse resp, User user, Map<String, String> payload) throws IOException {
+    private void handleHistory(HttpServletRequest req, HttpServletResponse resp, User user) throws IOException {
+        try {
+            int accountId = Integer.parseInt(req.getParameter("accountId"));
+            int limit = getIntParameter(req, "limit", TransactionDao.DEFAULT_PAGE_SIZE);
+
+            // Security Check
+            if (!isAccountOwner(user, accountId)) {
+                sendError(resp, HttpServletResponse.SC_FORBIDDEN, "You do not own this account.");
+                return;
+            }
+
+            TransactionPage page = transactionDao.getTransactionsPage(accountId, req.getParameter("cursor"), limit);
+            sendJsonResponse(resp, page);
+
+        } catch (NumberFormatException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid account ID or page size.");
+        } catch (IllegalArgumentException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, e.getMessage()); // bad cursor
+        }
+    }
+
+    /**
+     * GET /api/accounts/balance?accountId=..&asOf=2024-05-31 (end of that day)
+     * or asOf=2024-05-31T14:30:00. Without asOf, the balance now.
+     */
+    private void handleBalanceAsOf(HttpServletRequest req, HttpServletResponse resp, User user) throws IOException {
+        try {
+            int accountId = Integer.parseInt(req.getParameter("accountId"));
+            LocalDateTime asOf = getDateTimeParameter(req, "asOf", true);
+            if (asOf == null) {
+                asOf = LocalDateTime.now();
+            }
+
+            // Security Check
+            if (!isAccountOwner(user, accountId)) {
+                sendError(resp, HttpServletResponse.SC_FORBIDDEN, "You do not own this account.");
+                return;
+            }
+
+            Money balance = transactionDao.getBalanceAsOf(accountId, Timestamp.valueOf(asOf));
+            if (balance == null) {
+                sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to retrieve balance.");
+                return;
+            }
+            sendJsonResponse(resp, Map.of("accountId", accountId, "asOf", asOf.toString(),
+                    "balance", balance.toBigDecimal()));
+
+        } catch (NumberFormatException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid account ID.");
+        } catch (DateTimeParseException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid asOf; use yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss.");
+        }
+    }
+
+    /**
+     * Streams the account's transactions between from and to (inclusive, oldest
+     * first) as CSV or NDJSON. A bare to date includes that whole day; without
+     * from/to the export covers the whole history.
+     */
+    private void handleStatement(HttpServletRequest req, HttpServletResponse resp, User user) throws IOException {
+        int accountId;
+        StatementFormat format;
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            accountId = Integer.parseInt(req.getParameter("accountId"));
+            format = StatementFormat.parse(req.getParameter("format"));
+            from = getDateTimeParameter(req, "from", false);
+            to = getDateTimeParameter(req, "to", true);
+        } catch (NumberFormatException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid account ID.");
+            return;
+        } catch (DateTimeParseException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid from/to; use yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss.");
+            return;
+        } catch (IllegalArgumentException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid format; use csv or ndjson.");
+            return;
+        }
+        if (from == null) {
+            from = LocalDate.of(1970, 1, 1).atStartOfDay();
+        }
+        if (to == null) {
+            to = LocalDateTime.now();
+        }
+        if (from.isAfter(to)) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "from must not be after to.");
+            return;
+        }
+
+        // Security Check
+        if (!isAccountOwner(user, accountId)) {
+            sendError(resp, HttpServletResponse.SC_FORBIDDEN, "You do not own this account.");
+            return;
+        }
+
+        Timestamp fromTs = Timestamp.valueOf(from);
+        Timestamp toTs = Timestamp.valueOf(to);
+        String fileName = "statement-" + accountId + "-" + from.toLocalDate() + "-" + to.toLocalDate()
+                + "." + format.fileExtension;
+        this.<Transaction>sendTextStream(req, resp, format.contentType, fileName, format.header,
+                (tx, out) -> format.write(tx, out, gson),
+                callback -> transactionDao.streamStatement(accountId, fromTs, toTs, callback));
+    }
+
+    private void handleDeposit(HttpServletRequest req, HttpServletResponse resp, User user, Map<String, String> payload,
+                               IdempotencyStore.Claim claim) throws IOException {
         try {
             int accountId = Integer.parseInt(payload.get("accountId"));
-            BigDecimal amount = new BigDecimal(payload.get("amount"));
+            Money amount = Money.parse(payload.get("amount"));
 
             // Validation
-            if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (!amount.isPositive()) {
                 sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Deposit amount must be positive.");
                 return;
             }
@@ -103,10 +376,13 @@ public class AccountServlet extends BaseServlet {
                 return;
             }
             
-            boolean success = accountDao.updateBalance(accountId, amount);
+            Map<String, String> body = Map.of("message", "Deposit successful.");
+            IdempotencyRecord record = successRecord(claim, body);
+            boolean success = accountDao.updateBalance(accountId, amount, record);
             if (success) {
-                sendJsonResponse(resp, Map.of("message", "Deposit successful."));
-            } else {
+                if (claim != null) claim.complete(record);
+                sendJsonResponse(resp, body);
+            } else if (!replayCommitted(resp, claim)) {
                 sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Deposit failed.");
             }
             
@@ -115,13 +391,14 @@ public class AccountServlet extends BaseServlet {
         }
     }
 
-    private void handleWithdraw(HttpServletRequest req, HttpServletResponse resp, User user, Map<String, String> payload) throws IOException {
+    private void handleWithdraw(HttpServletRequest req, HttpServletResponse resp, User user, Map<String, String> payload,
+                               IdempotencyStore.Claim claim) throws IOException {
          try {
             int accountId = Integer.parseInt(payload.get("accountId"));
-            BigDecimal amount = new BigDecimal(payload.get("amount"));
+            Money amount = Money.parse(payload.get("amount"));
 
             // Validation
-            if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (!amount.isPositive()) {
                 sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Withdrawal amount must be positive.");
                 return;
             }
@@ -133,11 +410,14 @@ public class AccountServlet extends BaseServlet {
             }
             
             // We pass a negative amount to the updateBalance method
-            boolean success = accountDao.updateBalance(accountId, amount.negate());
+            Map<String, String> body = Map.of("message", "Withdrawal successful.");
+            IdempotencyRecord record = successRecord(claim, body);
+            boolean success = accountDao.updateBalance(accountId, amount.negate(), record);
             
             if (success) {
-                sendJsonResponse(resp, Map.of("message", "Withdrawal successful."));
-            } else {
+                if (claim != null) claim.complete(record);
+                sendJsonResponse(resp, body);
+            } else if (!replayCommitted(resp, claim)) {
                 // This typically means insufficient funds
                 sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Withdrawal failed. Check for sufficient funds.");
             }
@@ -147,14 +427,15 @@ public class AccountServlet extends BaseServlet {
         }
     }
 
-    private void handleTransfer(HttpServletRequest req, HttpServletResponse resp, User user, Map<String, String> payload) throws IOException {
+    private void handleTransfer(HttpServletRequest req, HttpServletResponse resp, User user, Map<String, String> payload,
+                               IdempotencyStore.Claim claim) throws IOException {
         try {
             int fromAccountId = Integer.parseInt(payload.get("fromAccountId"));
             String toAccountNumber = payload.get("toAccountNumber");
-            BigDecimal amount = new BigDecimal(payload.get("amount"));
+            Money amount = Money.parse(payload.get("amount"));
 
             // Validation
-            if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (!amount.isPositive()) {
                 sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Transfer amount must be positive.");
                 return;
             }
@@ -169,11 +450,14 @@ public class AccountServlet extends BaseServlet {
                 return;
             }
             
-            boolean success = accountDao.transferFunds(fromAccountId, toAccountNumber, amount);
+            Map<String, String> body = Map.of("message", "Transfer successful.");
+            IdempotencyRecord record = successRecord(claim, body);
+            boolean success = accountDao.transferFunds(fromAccountId, toAccountNumber, amount, record);
             
             if (success) {
-                sendJsonResponse(resp, Map.of("message", "Transfer successful."));
-            } else {
+                if (claim != null) claim.complete(record);
+                sendJsonResponse(resp, body);
+            } else if (!replayCommitted(resp, claim)) {
                 // This can be insufficient funds, or "account not found"
                 sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Transfer failed. Check funds or destination account number.");
             }
@@ -196,8 +480,8 @@ public class AccountServlet extends BaseServlet {
             return true;
         }
         
-        // Check for customer ownership
-        Account account = accountDao.getAccountById(accountId);
+        // Check for customer ownership (served from the account metadata cache)
+        AccountMetadata account = accountDao.getAccountMetadata(accountId);
         return account != null && account.getUserId() == user.getUserId();
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.bank.controller;
+
+import com.bank.dao.AccountDao;
+import com.bank.dao.TransactionDao;
+import com.bank.dao.UserDao;
+import com.bank.model.Transaction;
+import com.bank.model.TransactionPage;
+import com.bank.model.User;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+// Mapped in web.xml to /api/admin/*
+public class AdminServlet extends BaseServlet {
+
+    private final AccountDao accountDao = new AccountDao();
+    private final TransactionDao transactionDao = new TransactionDao();
+    private final UserDao userDao = new UserDao();
+
+    /**
+     * Authorization Check: only logged-in admins may use these endpoints.
+     * @return The authenticated admin, or null if the request was rejected.
+     */
+    private User checkAdmin(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        User user = getAuthenticatedUser(req);
+        if (user == null) {
+            sendError(resp, HttpServletResponse.SC_UNAUTHORIZED, "You must be logged in to perform this action.");
+            return null;
+        }
+        if (!"ADMIN".equals(user.getRole())) {
+            sendError(resp, HttpServletResponse.SC_FORBIDDEN, "Admin access required.");
+            return null;
+        }
+        return user;
+    }
+
+    /**
+     * Handles GET requests:
+     * /api/admin/transactions?cursor=&limit= (one page)
+     * /api/admin/transactions/export (every transaction, streamed)
+     * /api/admin/users (every user, streamed)
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        User admin = checkAdmin(req, resp);
+        if (admin == null) return; // Auth failed
+
+        String pathInfo = req.getPathInfo();
+        if (pathInfo == null) {
+            sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Not Found");
+            return;
+        }
+        switch (pathInfo) {
+            case "/transactions":
+                handleTransactionPage(req, resp);
+                break;
+            case "/transactions/export":
+                sendJsonArrayStream(resp, Transaction.class, transactionDao::streamAllTransactions);
+                break;
+            case "/users":
+                sendJsonArrayStream(resp, User.class, userDao::streamAllUsers);
+                break;
+            default:
+                sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Not Found");
+        }
+    }
+
+    /**
+     * Handles POST requests:
+     * /api/admin/accounts/hot {accountId, shards} (split a busy account into sub-balance shards)
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        User admin = checkAdmin(req, resp);
+        if (admin == null) return; // Auth failed
+
+        if ("/accounts/hot".equals(req.getPathInfo())) {
+            handleMakeHot(req, resp);
+        } else {
+            sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Not Found");
+        }
+    }
+
+    // --- Private Handler Methods ---
+
+    private void handleMakeHot(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        try {
+            Map<String, String> payload = readPayload(req, Map.class);
+            int accountId = Integer.parseInt(payload.get("accountId"));
+            int shards = Integer.parseInt(payload.get("shards"));
+            if (shards < 2 || shards > 256) {
+                sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Shard count must be between 2 and 256.");
+                return;
+            }
+            if (accountDao.makeHot(accountId, shards)) {
+                sendJsonResponse(resp, Map.of("message", "Account is now hot."));
+            } else {
+                sendError(resp, HttpServletResponse.SC_CONFLICT, "Account not found or already hot.");
+            }
+        } catch (NumberFormatException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid account ID or shard count.");
+        } catch (IllegalStateException e) {
+            sendError(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
+        }
+    }
+
+    private void handleTransactionPage(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        try {
+            int limit = getIntParameter(req, "limit", TransactionDao.DEFAULT_PAGE_SIZE);
+            TransactionPage page = transactionDao.getTransactionsPage(null, req.getParameter("cursor"), limit);
+            sendJsonResponse(resp, page);
+        } catch (NumberFormatException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid page size.");
+        } catch (IllegalArgumentException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, e.getMessage()); // bad cursor
+        }
+    }
+}
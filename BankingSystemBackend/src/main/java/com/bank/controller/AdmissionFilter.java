@@ -0,0 +1,328 @@
+package com.bank.controller;
+
+import com.bank.model.User;
+import com.bank.util.AppConfig;
+import com.bank.util.ConnectionPool;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.RateLimiter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limiting and admission control for /api/*, mapped after CORSFilter and
+ * AuthTokenFilter.
+ *
+ * - Each request is classified (AUTH, MUTATION, EXPORT, READ) and charged to a
+ *   token bucket for its caller in that class: the logged-in user, or the client
+ *   address when there is none. Login/register are always charged to the address.
+ *   An empty bucket gets 429 with Retry-After.
+ * - The client address is the connection's peer, unless that peer is listed in
+ *   admission.trustedProxies: then it is the last X-Forwarded-For hop that is not
+ *   itself a trusted proxy. Without the list the header is ignored, since anyone
+ *   can send it. Behind a proxy that is not listed, every client shares one address.
+ * - A global cap on requests in progress, by default concurrencyPerConnection times
+ *   the DB pool size, keeps a flood from queueing on the pool. Over the cap a
+ *   request gets 503 at once (or after queueTimeoutMillis). Async requests hold
+ *   their permit until the async work completes. /api/metrics is exempt, so an
+ *   overload can still be observed.
+ *
+ * Buckets that have refilled are evicted every sweepSeconds, and at most maxKeys
+ * are kept per class, so memory stays bounded however many callers there are.
+ *
+ * Off unless admission.enabled=true: set trustedProxies first if the application
+ * sits behind a load balancer, or every login shares one address's bucket.
+ */
+public class AdmissionFilter implements Filter {
+
+    enum EndpointClass { AUTH, MUTATION, EXPORT, READ }
+
+    private static final boolean ENABLED = AppConfig.getBoolean("admission.enabled", false);
+    private static final Set<String> TRUSTED_PROXIES = new HashSet<>();
+    static {
+        for (String proxy : AppConfig.getString("admission.trustedProxies", "").split(",")) {
+            if (!proxy.trim().isEmpty()) {
+                TRUSTED_PROXIES.add(proxy.trim());
+            }
+        }
+    }
+
+    private static final Map<EndpointClass, RateLimiter> LIMITERS = new EnumMap<>(EndpointClass.class);
+    static {
+        int maxKeys = AppConfig.getInt("admission.maxKeys", 100_000);
+        LIMITERS.put(EndpointClass.AUTH, limiter("auth", 2, 10, maxKeys));
+        LIMITERS.put(EndpointClass.MUTATION, limiter("mutation", 10, 20, maxKeys));
+        LIMITERS.put(EndpointClass.EXPORT, limiter("export", 0.2, 2, maxKeys));
+        LIMITERS.put(EndpointClass.READ, limiter("read", 50, 100, maxKeys));
+    }
+
+    private static final LongAdder RATE_LIMITED = new LongAdder();
+    private static final LongAdder OVERLOADED = new LongAdder();
+
+    private static volatile Semaphore inFlight; // null until init(), or when the cap is off
+    private static volatile int maxConcurrent;
+
+    private long queueTimeoutMillis;
+    private ScheduledExecutorService sweeper;
+
+    private static RateLimiter limiter(String name, double defaultPerSecond, int defaultBurst, int maxKeys) {
+        String prefix = "admission." + name + ".";
+        return new RateLimiter(Double.parseDouble(AppConfig.getString(prefix + "perSecond", String.valueOf(defaultPerSecond))),
+                AppConfig.getInt(prefix + "burst", defaultBurst), maxKeys);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        if (!ENABLED) {
+            return;
+        }
+        int cap = AppConfig.getInt("admission.maxConcurrent", 0);
+        if (cap == 0) {
+            cap = poolSize() * AppConfig.getInt("admission.concurrencyPerConnection", 2);
+        }
+        if (cap > 0) {
+            maxConcurrent = cap;
+            inFlight = new Semaphore(cap);
+        }
+        queueTimeoutMillis = AppConfig.getLong("admission.queueTimeoutMillis", 0);
+
+        long sweepSeconds = AppConfig.getLong("admission.sweepSeconds", 60);
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "admission-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(() -> LIMITERS.values().forEach(RateLimiter::evictIdle),
+                sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Size of the DB pool: exact for our own ConnectionPool, db.pool.maxSize otherwise
+     * (Tomcat's pool is configured in context.xml; keep the two in step).
+     */
+    private static int poolSize() {
+        DataSource ds = DatabaseConnection.getDataSource();
+        if (ds instanceof ConnectionPool) {
+            return ((ConnectionPool) ds).getMaxSize();
+        }
+        return AppConfig.getInt("db.pool.maxSize", Runtime.getRuntime().availableProcessors() * 2 + 1);
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+            throws IOException, ServletException {
+        if (!ENABLED) {
+            filterChain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        EndpointClass endpointClass = classify(request.getMethod(), path);
+        long waitNanos = LIMITERS.get(endpointClass).tryAcquire(callerKey(request, endpointClass));
+        if (waitNanos > 0) {
+            RATE_LIMITED.increment();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+            reject(response, 429, retryAfter, "Too many requests. Please slow down.");
+            return;
+        }
+
+        Semaphore permits = path.equals("/api/metrics") ? null : inFlight;
+        if (permits != null && !acquire(permits)) {
+            OVERLOADED.increment();
+            reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, 1, "Server is busy. Please try again.");
+            return;
+        }
+
+        boolean async = false;
+        try {
+            filterChain.doFilter(servletRequest, servletResponse);
+            // complete() cannot take effect before this dispatch returns, so the listener is never late
+            if (permits != null && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new PermitRelease(permits));
+                async = true;
+            }
+        } finally {
+            if (permits != null && !async) {
+                permits.release();
+            }
+        }
+    }
+
+    private boolean acquire(Semaphore permits) {
+        if (queueTimeoutMillis <= 0) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    static EndpointClass classify(String method, String path) {
+        if (path.equals("/api/auth/login") || path.equals("/api/auth/register")) {
+            return EndpointClass.AUTH;
+        }
+        if (path.equals("/api/accounts/statement") || path.equals("/api/admin/transactions/export")
+                || path.equals("/api/admin/users")) {
+            return EndpointClass.EXPORT;
+        }
+        return "GET".equals(method) || "HEAD".equals(method) ? EndpointClass.READ : EndpointClass.MUTATION;
+    }
+
+    /**
+     * The user a request is charged to, or its client address if it has none.
+     */
+    private static String callerKey(HttpServletRequest request, EndpointClass endpointClass) {
+        if (endpointClass != EndpointClass.AUTH) {
+            User user = (User) request.getAttribute("user"); // set by AuthTokenFilter
+            if (user == null) {
+                HttpSession session = request.getSession(false);
+                user = (session != null) ? (User) session.getAttribute("user") : null;
+            }
+            if (user != null) {
+                return "u:" + user.getUserId();
+            }
+        }
+        return "a:" + clientAddress(request);
+    }
+
+    /**
+     * The peer address, or the nearest X-Forwarded-For hop when the peer is a trusted proxy.
+     */
+    static String clientAddress(HttpServletRequest request) {
+        String address = request.getRemoteAddr();
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || !TRUSTED_PROXIES.contains(address)) {
+            return address;
+        }
+        // Walk back from the hop our proxy appended; earlier hops are whatever the client sent
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                break;
+            }
+            address = hop;
+            if (!TRUSTED_PROXIES.contains(hop)) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    private static void reject(HttpServletResponse response, int status, long retryAfterSeconds, String message)
+            throws IOException {
+        response.setStatus(status);
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    @Override
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    // --- Metrics ---
+
+    /**
+     * Requests refused with 429.
+     */
+    public static long getRateLimitedCount() {
+        return RATE_LIMITED.sum();
+    }
+
+    /**
+     * Requests refused with 503 by the concurrency cap.
+     */
+    public static long getOverloadedCount() {
+        return OVERLOADED.sum();
+    }
+
+    public static int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public static int getInFlightCount() {
+        Semaphore permits = inFlight;
+        return (permits != null) ? maxConcurrent - permits.availablePermits() : 0;
+    }
+
+    /**
+     * Live token buckets per endpoint class, e.g. {"read": 120, ...}.
+     */
+    public static Map<String, Integer> getBucketCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        LIMITERS.forEach((endpointClass, limiter) ->
+                counts.put(endpointClass.name().toLowerCase(Locale.ROOT), limiter.getBucketCount()));
+        return counts;
+    }
+
+    /**
+     * Releases an async request's permit once, however its async work ends.
+     */
+    private static final class PermitRelease implements AsyncListener {
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        PermitRelease(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.bank.controller;
+
+import com.bank.dao.AccountDao;
+import com.bank.dao.IdempotencyStore;
+import com.bank.dao.TransactionDao;
+import com.bank.util.BoundedExecutor;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.JdbcMetrics;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts application-wide background work when the application is deployed and stops
+ * it when it is undeployed, so a redeploy does not leave threads from the old
+ * class loader running. Registered in web.xml.
+ *
+ * Servlets and filters stop their own threads in destroy(), which the container calls
+ * before contextDestroyed. The rest is stopped here, callers before what they use:
+ * the account mutation workers, then the DAOs' background tasks, then the metrics
+ * poller, and the connection pool last.
+ */
+public class AppLifecycleListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        JdbcMetrics.start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        BoundedExecutor mutationExecutor = (BoundedExecutor) sce.getServletContext()
+                .getAttribute(AccountServlet.MUTATION_EXECUTOR_ATTRIBUTE);
+        if (mutationExecutor != null) {
+            mutationExecutor.shutdown(); // normally done already by AccountServlet.destroy()
+        }
+        AccountDao.stopBackgroundTasks();
+        TransactionDao.stopBackgroundTasks();
+        IdempotencyStore.stopBackgroundTasks();
+        JdbcMetrics.stop();
+        DatabaseConnection.close();
+    }
+}
@@ -1,8 +1,11 @@
 package com.bank.controller;
 
+import com.bank.dao.RevokedTokenDao;
+import com.bank.dao.UserCredentials;
 import com.bank.dao.UserDao;
 import com.bank.model.User;
 import com.bank.util.PasswordUtils;
+import com.bank.util.SessionTokens;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -16,6 +19,7 @@ import java.util.Map;
 public class AuthServlet extends BaseServlet {
 
     private final UserDao userDao = new UserDao();
+    private final RevokedTokenDao revokedTokenDao = new RevokedTokenDao();
 
     /**
      * Handles POST requests for /login, /register, /logout
@@ -57,9 +61,8 @@ public class AuthServlet extends BaseServlet {
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
         if (pathInfo != null && pathInfo.equals("/session")) {
-            HttpSession session = req.getSession(false); // false = don't create new session
-            if (session != null && session.getAttribute("user") != null) {
-                User user = (User) session.getAttribute("user");
+            User user = getAuthenticatedUser(req); // never creates a session
+            if (user != null) {
                 sendJsonResponse(resp, user); // Send back the logged-in user's data
             } else {
                 // No valid session, send 401
@@ -80,10 +83,11 @@ public class AuthServlet extends BaseServlet {
             return;
         }
 
-        String storedHash = userDao.getPasswordHashByUsername(username);
+        // One query (or a cache hit) for both the hash and the profile
+        UserCredentials credentials = userDao.getCredentialsByUsername(username);
 
-        if (storedHash != null && PasswordUtils.checkPassword(password, storedHash)) {
-            User user = userDao.getUserByUsername(username);
+        if (credentials != null && PasswordUtils.checkPassword(password, credentials.getPasswordHash())) {
+            User user = credentials.toUser();
             
             // Check if user's account is 'ACTIVE'
             if (!"ACTIVE".equals(user.getStatus())) {
@@ -91,6 +95,15 @@ public class AuthServlet extends BaseServlet {
                  return;
             }
 
+            if (SessionTokens.isEnabled()) {
+                // --- Issue a signed token instead of a server-side session ---
+                String token = SessionTokens.issue(user.getUserId(), user.getRole(), user.getUsername());
+                setTokenCookie(req, resp, token, SessionTokens.getTtlSeconds());
+                resp.setHeader("X-Auth-Token", token); // for clients that send "Authorization: Bearer"
+                sendJsonResponse(resp, user);
+                return;
+            }
+
             // --- Create Session ---
             // req.getSession(true) creates a new session if one doesn't exist.
             HttpSession session = req.getSession(true);
@@ -129,10 +142,34 @@ public class AuthServlet extends BaseServlet {
     }
 
     private void handleLogout(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        SessionTokens.Claims claims = (SessionTokens.Claims) req.getAttribute("tokenClaims");
+        if (claims != null) {
+            // Revoke here at once, and on the other nodes at their next revocation poll
+            SessionTokens.revoke(claims.getTokenId(), claims.getExpiresAt());
+            revokedTokenDao.revoke(claims.getTokenId(), claims.getExpiresAt());
+        }
+        if (SessionTokens.isEnabled()) {
+            setTokenCookie(req, resp, "", 0);
+        }
+
         HttpSession session = req.getSession(false); // Get existing session, don't create
         if (session != null) {
             session.invalidate(); // Invalidate the session, logs the user out
         }
         sendJsonResponse(resp, Map.of("message", "Logged out successfully."));
     }
+
+    /**
+     * Sets (or, with maxAgeSeconds 0, clears) the HttpOnly token cookie. Written as a
+     * raw header because the Servlet 4 Cookie API cannot express SameSite.
+     */
+    private void setTokenCookie(HttpServletRequest req, HttpServletResponse resp, String token, long maxAgeSeconds) {
+        StringBuilder cookie = new StringBuilder(AuthTokenFilter.COOKIE_NAME).append('=').append(token)
+                .append("; Path=/; Max-Age=").append(maxAgeSeconds)
+                .append("; HttpOnly; SameSite=Lax");
+        if (req.isSecure()) {
+            cookie.append("; Secure");
+        }
+        resp.addHeader("Set-Cookie", cookie.toString());
+    }
 }
\ No newline at end of file
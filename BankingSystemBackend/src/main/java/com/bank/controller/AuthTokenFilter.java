@@ -0,0 +1,102 @@
+package com.bank.controller;
+
+import com.bank.dao.RevokedTokenDao;
+import com.bank.model.User;
+import com.bank.util.AppConfig;
+import com.bank.util.SessionTokens;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticates requests from a signed session token when auth.mode=TOKEN.
+ *
+ * The token is read from an "Authorization: Bearer" header or the bank_token cookie.
+ * A valid one puts a User (userId, username, role; status ACTIVE) in the "user"
+ * request attribute, which BaseServlet.getAuthenticatedUser reads; no HttpSession
+ * is created or consulted. An invalid or missing token just leaves the attribute
+ * unset, and the servlets answer 401 as before.
+ *
+ * Logouts on other nodes are picked up by polling revoked_tokens every
+ * auth.token.revocationPollSeconds. In SESSION mode the filter passes everything through.
+ */
+public class AuthTokenFilter implements Filter {
+
+    static final String COOKIE_NAME = "bank_token";
+    private static final String BEARER = "Bearer ";
+
+    private ScheduledExecutorService revocationPoller;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        if (!SessionTokens.isEnabled()) {
+            return;
+        }
+        RevokedTokenDao revokedTokenDao = new RevokedTokenDao();
+        long pollSeconds = AppConfig.getLong("auth.token.revocationPollSeconds", 5);
+        revocationPoller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "token-revocation-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        revocationPoller.scheduleWithFixedDelay(() -> {
+            Map<Long, Long> revoked = revokedTokenDao.getActiveRevocations();
+            if (revoked != null) {
+                SessionTokens.syncRevoked(revoked);
+            }
+        }, 0, pollSeconds, TimeUnit.SECONDS);
+        revocationPoller.scheduleWithFixedDelay(revokedTokenDao::purgeExpired, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+            throws IOException, ServletException {
+        if (SessionTokens.isEnabled()) {
+            HttpServletRequest request = (HttpServletRequest) servletRequest;
+            SessionTokens.Claims claims = SessionTokens.verify(readToken(request));
+            if (claims != null) {
+                request.setAttribute("user", new User(claims.getUserId(), claims.getUsername(),
+                        null, null, null, claims.getRole(), "ACTIVE"));
+                request.setAttribute("tokenClaims", claims);
+            }
+        }
+        filterChain.doFilter(servletRequest, servletResponse);
+    }
+
+    /**
+     * @return The raw token from the Authorization header or the cookie, or null.
+     */
+    private static String readToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return header.substring(BEARER.length()).trim();
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+        if (revocationPoller != null) {
+            revocationPoller.shutdownNow();
+        }
+    }
+}
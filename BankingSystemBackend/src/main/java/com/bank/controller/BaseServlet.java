@@ -1,26 +1,46 @@
 package com.bank.controller;
 
+import com.bank.dao.RowCallback;
+import com.bank.model.User;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A base servlet to handle common tasks like CORS and JSON responses.
  */
 public abstract class BaseServlet extends HttpServlet {
 
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final int STREAM_FLUSH_ROWS = 1000;
+
     protected final Gson gson = new Gson();
 
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        setupCORS(resp);
-        super.service(req, resp);
+        RequestMetrics.time(req, resp, () -> {
+            setupCORS(resp);
+            super.service(req, resp);
+        });
     }
     
     /**
@@ -39,7 +59,8 @@ public abstract class BaseServlet extends HttpServlet {
         // !! IMPORTANT: In production, restrict this to your actual frontend domain.
         resp.setHeader("Access-Control-Allow-Origin", "http://localhost:3000");
         resp.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, Accept, X-Requested-With");
+        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, Accept, Authorization, X-Requested-With, Idempotency-Key");
+        resp.setHeader("Access-Control-Expose-Headers", "X-Auth-Token");
         // !! CRITICAL: This allows the JSESSIONID cookie to be sent
         resp.setHeader("Access-Control-Allow-Credentials", "true");
     }
@@ -58,6 +79,48 @@ public abstract class BaseServlet extends HttpServlet {
         return gson.fromJson(sb.toString(), classOfT);
     }
 
+    /**
+     * Helper to read an optional integer query parameter.
+     * @throws NumberFormatException if the parameter is present but not a number.
+     */
+    protected int getIntParameter(HttpServletRequest req, String name, int defaultValue) {
+        String value = req.getParameter(name);
+        return (value == null || value.isEmpty()) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Helper to read an optional date or date-time query parameter (yyyy-MM-dd or
+     * yyyy-MM-ddTHH:mm:ss). A bare date means the start of that day, or its last
+     * instant when endOfDay is set.
+     * @return The parsed value, or null if the parameter is absent.
+     * @throws DateTimeParseException if the parameter is present but malformed.
+     */
+    protected LocalDateTime getDateTimeParameter(HttpServletRequest req, String name, boolean endOfDay) {
+        String value = req.getParameter(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.length() == 10) {
+            LocalDate date = LocalDate.parse(value);
+            return endOfDay ? date.atTime(LocalTime.MAX) : date.atStartOfDay();
+        }
+        return LocalDateTime.parse(value);
+    }
+
+    /**
+     * The logged-in user: the principal AuthTokenFilter took from a signed token
+     * (auth.mode=TOKEN), else the one stored in the HttpSession at login.
+     * @return The user, or null if the request is not authenticated.
+     */
+    protected User getAuthenticatedUser(HttpServletRequest req) {
+        User user = (User) req.getAttribute("user");
+        if (user != null) {
+            return user;
+        }
+        HttpSession session = req.getSession(false); // never create one just to look
+        return (session != null) ? (User) session.getAttribute("user") : null;
+    }
+
     /**
      * Helper to send a JSON response.
      */
@@ -70,6 +133,98 @@ public abstract class BaseServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Writes rows produced by a streaming DAO call as a JSON array, straight to
+     * the response stream. Heap use stays flat regardless of the row count, and
+     * the first row is flushed as soon as it is available. Once output has been
+     * committed, a failure can only abort the response.
+     */
+    protected <T> void sendJsonArrayStream(HttpServletResponse resp, Class<T> rowType, JsonArraySource<T> source) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(resp.getOutputStream(), StandardCharsets.UTF_8)));
+        try {
+            writer.beginArray();
+            final int[] written = {0};
+            source.writeTo(row -> {
+                gson.toJson(row, rowType, writer);
+                if (++written[0] == 1) {
+                    writer.flush(); // push the first bytes out before the query finishes
+                }
+            });
+            writer.endArray();
+            writer.flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!resp.isCommitted()) {
+                resp.reset();
+                sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to stream results.");
+            }
+            // Otherwise the truncated JSON tells the client the export failed
+        }
+    }
+
+    /**
+     * Streams rows produced by a streaming DAO call as a text download (CSV, NDJSON).
+     * No Content-Length is set, so the container sends it chunked, and the body is
+     * gzipped when the client accepts it. Memory use is one row plus the buffers
+     * however many rows there are. Output is flushed after the first row and then
+     * every STREAM_FLUSH_ROWS rows, so a long export keeps the connection busy.
+     * @param header Written before the first row (e.g. a CSV header), or null.
+     */
+    protected <T> void sendTextStream(HttpServletRequest req, HttpServletResponse resp, String contentType,
+                                      String fileName, String header, RowFormatter<T> formatter,
+                                      JsonArraySource<T> source) throws IOException {
+        resp.setContentType(contentType);
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        resp.setHeader("Vary", "Accept-Encoding");
+
+        OutputStream body = resp.getOutputStream();
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip")) {
+            resp.setHeader("Content-Encoding", "gzip");
+            body = new GZIPOutputStream(body, STREAM_BUFFER_SIZE, true); // sync flush: every flush emits a chunk
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        try {
+            if (header != null) {
+                writer.write(header);
+            }
+            final long[] written = {0};
+            source.writeTo(row -> {
+                formatter.format(row, writer);
+                if (++written[0] == 1 || written[0] % STREAM_FLUSH_ROWS == 0) {
+                    writer.flush();
+                }
+            });
+            writer.close(); // finishes the gzip trailer
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!resp.isCommitted()) {
+                resp.reset();
+                sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to stream results.");
+            }
+            // Otherwise the response is cut short (and a gzipped one lacks its trailer)
+        }
+    }
+
+    /**
+     * Writes one row of a text export, including its line terminator.
+     */
+    @FunctionalInterface
+    protected interface RowFormatter<T> {
+        void format(T row, Writer out) throws IOException;
+    }
+
+    /**
+     * A streaming DAO call that feeds rows to the given callback.
+     */
+    @FunctionalInterface
+    protected interface JsonArraySource<T> {
+        void writeTo(RowCallback<T> callback) throws Exception;
+    }
+
     /**
      * Helper to send an error response.
      */
@@ -38,7 +38,8 @@ public class CORSFilter implements Filter {
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         
         // Set the allowed headers
-        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Requested-With");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Requested-With, Idempotency-Key");
+        response.setHeader("Access-Control-Expose-Headers", "X-Auth-Token");
         
         // Allow credentials (if you use sessions/cookies, though we use JWT)
         response.setHeader("Access-Control-Allow-Credentials", "true");
@@ -0,0 +1,330 @@
+package com.bank.controller;
+
+import com.bank.dao.AccountDao;
+import com.bank.dao.AccountMetadataCache;
+import com.bank.dao.IdempotencyStore;
+import com.bank.dao.UserDao;
+import com.bank.model.User;
+import com.bank.util.AppConfig;
+import com.bank.util.BoundedExecutor;
+import com.bank.util.ConnectionPool;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.JdbcMetrics;
+import com.bank.util.LatencyHistogram;
+import com.bank.util.SessionTokens;
+import com.bank.util.StatementCache;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves request and component metrics:
+ * GET /api/metrics                 -> Prometheus text format (for scrapers)
+ * GET /api/metrics?format=json     -> the same as JSON (also with Accept: application/json)
+ *
+ * Latencies are per route (see {@link RequestMetrics}) with p50, p99 and p99.9, as are
+ * connection acquire wait, hold time per borrower and query time per SQL shape
+ * (see {@link JdbcMetrics}).
+ * Open to admins; also to requests from this host with metrics.allowLoopback=true (behind
+ * a reverse proxy on the same host every request is loopback), or to everyone with
+ * metrics.public=true.
+ */
+// Mapped in web.xml to /api/metrics
+public class MetricsServlet extends BaseServlet {
+
+    private static final boolean PUBLIC = AppConfig.getBoolean("metrics.public", false);
+    private static final boolean ALLOW_LOOPBACK = AppConfig.getBoolean("metrics.allowLoopback", false);
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAllowed(req)) {
+            sendError(resp, HttpServletResponse.SC_FORBIDDEN, "Metrics are available to admins only.");
+            return;
+        }
+        String format = req.getParameter("format");
+        String accept = req.getHeader("Accept");
+        boolean json = "json".equalsIgnoreCase(format)
+                || (format == null && accept != null && accept.contains("application/json"));
+        resp.setHeader("Cache-Control", "no-store");
+        if (json) {
+            sendJsonResponse(resp, toJson());
+        } else {
+            resp.setContentType("text/plain; version=0.0.4");
+            resp.setCharacterEncoding("UTF-8");
+            try (PrintWriter out = resp.getWriter()) {
+                writePrometheus(out);
+            }
+        }
+    }
+
+    private boolean isAllowed(HttpServletRequest req) {
+        if (PUBLIC) {
+            return true;
+        }
+        String remote = req.getRemoteAddr();
+        if (ALLOW_LOOPBACK && ("127.0.0.1".equals(remote) || "0:0:0:0:0:0:0:1".equals(remote) || "::1".equals(remote))) {
+            return true;
+        }
+        User user = getAuthenticatedUser(req);
+        return user != null && "ADMIN".equals(user.getRole());
+    }
+
+    // --- Prometheus text format ---
+
+    private void writePrometheus(PrintWriter out) {
+        Map<String, RequestMetrics.Route> routes = RequestMetrics.getRoutes();
+
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        routes.forEach((name, route) -> latencies.put(name, route.latency));
+        writeSummaries(out, "bank_http_request_duration_seconds", "Request latency by route.", "route", latencies);
+
+        out.println("# HELP bank_http_request_duration_max_seconds Slowest request by route since start.");
+        out.println("# TYPE bank_http_request_duration_max_seconds gauge");
+        for (Map.Entry<String, RequestMetrics.Route> e : routes.entrySet()) {
+            out.println("bank_http_request_duration_max_seconds{route=\"" + escapeLabel(e.getKey()) + "\"} "
+                    + seconds(e.getValue().latency.getMaxMicros()));
+        }
+
+        out.println("# HELP bank_http_responses_total Responses by route and status class.");
+        out.println("# TYPE bank_http_responses_total counter");
+        for (Map.Entry<String, RequestMetrics.Route> e : routes.entrySet()) {
+            for (Map.Entry<String, Long> status : e.getValue().getStatusClassCounts().entrySet()) {
+                out.println("bank_http_responses_total{route=\"" + escapeLabel(e.getKey()) + "\",status=\""
+                        + status.getKey() + "\"} " + status.getValue());
+            }
+        }
+
+        out.println("# HELP bank_http_responses_by_code_total Responses by exact status code.");
+        out.println("# TYPE bank_http_responses_by_code_total counter");
+        for (Map.Entry<Integer, Long> e : RequestMetrics.getStatusCodeCounts().entrySet()) {
+            out.println("bank_http_responses_by_code_total{code=\"" + e.getKey() + "\"} " + e.getValue());
+        }
+
+        writeSummary(out, "bank_db_acquire_wait_seconds", "Time spent waiting in getConnection().",
+                JdbcMetrics.getAcquireWait());
+        writeSummaries(out, "bank_db_hold_seconds", "Connection hold time by borrowing method.", "borrower",
+                JdbcMetrics.getHoldTimes());
+        writeSummaries(out, "bank_db_query_seconds", "Statement execution time by SQL shape.", "sql",
+                JdbcMetrics.getQueryTimes());
+
+        for (Metric metric : componentMetrics()) {
+            out.println("# HELP " + metric.name + " " + metric.help);
+            out.println("# TYPE " + metric.name + " " + metric.type);
+            out.println(metric.name + " " + metric.value);
+        }
+    }
+
+    private static void writeSummaries(PrintWriter out, String name, String help, String label,
+                                       Map<String, LatencyHistogram> histograms) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " summary");
+        for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+            writeSummaryLines(out, name, label + "=\"" + escapeLabel(e.getKey()) + "\",", e.getValue());
+        }
+    }
+
+    private static void writeSummary(PrintWriter out, String name, String help, LatencyHistogram histogram) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " summary");
+        writeSummaryLines(out, name, "", histogram);
+    }
+
+    /**
+     * @param labels Leading labels, each followed by a comma ("" for none).
+     */
+    private static void writeSummaryLines(PrintWriter out, String name, String labels, LatencyHistogram histogram) {
+        long[] values = histogram.getQuantileMicros(QUANTILES);
+        for (int i = 0; i < values.length; i++) {
+            out.println(name + "{" + labels + "quantile=\"" + QUANTILE_LABELS[i] + "\"} " + seconds(values[i]));
+        }
+        String sampleLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.println(name + "_sum" + sampleLabels + " " + seconds(histogram.getTotalMicros()));
+        out.println(name + "_count" + sampleLabels + " " + histogram.getCount());
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // --- JSON ---
+
+    private Map<String, Object> toJson() {
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (Map.Entry<String, RequestMetrics.Route> e : RequestMetrics.getRoutes().entrySet()) {
+            Map<String, Object> route = toJson(e.getValue().latency);
+            route.put("status", e.getValue().getStatusClassCounts());
+            routes.put(e.getKey(), route);
+        }
+
+        Map<String, Object> db = new LinkedHashMap<>();
+        db.put("acquireWait", toJson(JdbcMetrics.getAcquireWait()));
+        db.put("holdByBorrower", toJson(JdbcMetrics.getHoldTimes()));
+        db.put("queryByShape", toJson(JdbcMetrics.getQueryTimes()));
+
+        Map<String, Object> components = new LinkedHashMap<>();
+        for (Metric metric : componentMetrics()) {
+            components.put(metric.name, metric.value);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("inFlight", RequestMetrics.getInFlightCount());
+        body.put("statusCodes", RequestMetrics.getStatusCodeCounts());
+        body.put("routes", routes);
+        body.put("db", db);
+        body.put("components", components);
+        return body;
+    }
+
+    private static Map<String, Object> toJson(Map<String, LatencyHistogram> histograms) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> json.put(name, toJson(histogram)));
+        return json;
+    }
+
+    private static Map<String, Object> toJson(LatencyHistogram histogram) {
+        long[] values = histogram.getQuantileMicros(QUANTILES);
+        long count = histogram.getCount();
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("count", count);
+        json.put("meanMs", count > 0 ? millis(histogram.getTotalMicros() / count) : 0);
+        json.put("p50Ms", millis(values[0]));
+        json.put("p99Ms", millis(values[1]));
+        json.put("p999Ms", millis(values[2]));
+        json.put("maxMs", millis(histogram.getMaxMicros()));
+        return json;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    // --- Component metrics ---
+
+    /**
+     * Counters and gauges the DAOs, pool, caches and filters already keep.
+     */
+    private List<Metric> componentMetrics() {
+        List<Metric> metrics = new ArrayList<>();
+        metrics.add(gauge("bank_http_requests_in_flight", "Requests being served.", RequestMetrics.getInFlightCount()));
+
+        metrics.add(counter("bank_transfer_retries_total", "Transfers and balance updates retried after a deadlock or lock-wait timeout.",
+                AccountDao.getRetryCount()));
+        metrics.add(counter("bank_transfer_deadlocks_total", "Deadlocks reported on the transfer and balance-update paths.",
+                AccountDao.getDeadlockCount()));
+        metrics.add(counter("bank_balance_batches_total", "Deposit/withdrawal group commits.",
+                AccountDao.getBatchCount()));
+        metrics.add(counter("bank_balance_batched_entries_total", "Deposits/withdrawals applied by group commit.",
+                AccountDao.getBatchedEntryCount()));
+        metrics.add(counter("bank_balance_batch_failures_total", "Group commits that fell back to one transaction per entry.",
+                AccountDao.getBatchFailureCount()));
+
+        AccountMetadataCache metadata = AccountDao.getMetadataCache();
+        metrics.add(counter("bank_account_metadata_cache_hits_total", "Account metadata cache hits.", metadata.getHitCount()));
+        metrics.add(counter("bank_account_metadata_cache_misses_total", "Account metadata cache misses.", metadata.getMissCount()));
+        metrics.add(counter("bank_account_metadata_cache_evictions_total", "Account metadata cache evictions.",
+                metadata.getEvictionCount()));
+        metrics.add(counter("bank_account_bloom_rejections_total", "Transfers to unknown account numbers rejected before opening a transaction.",
+                metadata.getBloomRejectionCount()));
+        metrics.add(counter("bank_account_bloom_lookups_total", "Bloom filter misses confirmed with a database lookup.",
+                metadata.getBloomLookupCount()));
+
+        metrics.add(counter("bank_statement_cache_hits_total", "Prepared statements reused.", StatementCache.getHitCount()));
+        metrics.add(counter("bank_statement_cache_misses_total", "Statements prepared.", StatementCache.getMissCount()));
+
+        metrics.add(counter("bank_login_cache_hits_total", "Login lookups served from the credential cache.",
+                UserDao.getCredentialCacheHitCount()));
+        metrics.add(counter("bank_login_cache_misses_total", "Login lookups that queried the database.",
+                UserDao.getCredentialCacheMissCount()));
+        metrics.add(counter("bank_login_cache_negative_hits_total", "Unknown usernames answered from the cache.",
+                UserDao.getNegativeHitCount()));
+
+        metrics.add(counter("bank_idempotent_replays_total", "Retried requests answered with the stored response.",
+                IdempotencyStore.getReplayCount()));
+        metrics.add(counter("bank_idempotent_waits_total", "Duplicates that waited for a concurrent first execution.",
+                IdempotencyStore.getWaitCount()));
+
+        metrics.add(gauge("bank_revoked_tokens", "Revoked session tokens not yet expired.", SessionTokens.getRevokedCount()));
+
+        metrics.add(counter("bank_admission_rate_limited_total", "Requests refused with 429.",
+                AdmissionFilter.getRateLimitedCount()));
+        metrics.add(counter("bank_admission_overloaded_total", "Requests refused with 503 by the concurrency cap.",
+                AdmissionFilter.getOverloadedCount()));
+        metrics.add(gauge("bank_admission_in_flight", "Requests holding an admission permit.",
+                AdmissionFilter.getInFlightCount()));
+        metrics.add(gauge("bank_admission_max_concurrent", "Admission concurrency cap (0 = off).",
+                AdmissionFilter.getMaxConcurrent()));
+        for (Map.Entry<String, Integer> e : AdmissionFilter.getBucketCounts().entrySet()) {
+            metrics.add(gauge("bank_admission_buckets_" + e.getKey(), "Live rate-limit buckets.", e.getValue()));
+        }
+
+        metrics.add(gauge("bank_db_borrowed", "Connections held by the application.", JdbcMetrics.getBorrowedCount()));
+        metrics.add(gauge("bank_db_acquire_waiting", "Threads blocked in getConnection().", JdbcMetrics.getWaitingCount()));
+        metrics.add(counter("bank_db_acquire_failures_total", "getConnection() calls that failed or timed out.",
+                JdbcMetrics.getAcquireFailureCount()));
+        metrics.add(counter("bank_db_slow_queries_total", "Statements slower than db.metrics.slowQueryMillis.",
+                JdbcMetrics.getSlowQueryCount()));
+        metrics.add(counter("bank_db_long_holds_total", "Connections held longer than db.metrics.longHoldMillis.",
+                JdbcMetrics.getLongHoldCount()));
+        metrics.add(counter("bank_db_leaked_connections_total", "Connections never closed by a thread that has ended.",
+                JdbcMetrics.getLeakCount()));
+
+        DataSource ds = DatabaseConnection.getDataSource();
+        if (ds instanceof ConnectionPool) {
+            ConnectionPool pool = (ConnectionPool) ds;
+            metrics.add(gauge("bank_db_pool_max", "Pool size limit.", pool.getMaxSize()));
+            metrics.add(gauge("bank_db_pool_active", "Connections borrowed.", pool.getActiveCount()));
+            metrics.add(gauge("bank_db_pool_idle", "Connections idle in the pool.", pool.getIdleCount()));
+            metrics.add(gauge("bank_db_pool_waiting", "Threads waiting for a connection.", pool.getWaitingCount()));
+            metrics.add(counter("bank_db_pool_acquire_timeouts_total", "Borrowers that gave up waiting.",
+                    pool.getAcquireTimeoutCount()));
+            metrics.add(counter("bank_db_pool_leaks_total", "Connections reported as held too long.", pool.getLeakCount()));
+        }
+
+        BoundedExecutor executor = (BoundedExecutor) getServletContext().getAttribute(AccountServlet.MUTATION_EXECUTOR_ATTRIBUTE);
+        if (executor != null) {
+            metrics.add(gauge("bank_async_running", "Async account mutations running.", executor.getRunningCount()));
+            metrics.add(gauge("bank_async_queued", "Async account mutations queued.", executor.getQueuedCount()));
+            metrics.add(counter("bank_async_rejected_total", "Async mutations refused with a full queue.",
+                    executor.getRejectedCount()));
+            metrics.add(counter("bank_async_expired_total", "Async mutations that queued too long.",
+                    executor.getExpiredCount()));
+        }
+        return metrics;
+    }
+
+    private static Metric counter(String name, String help, long value) {
+        return new Metric(name, "counter", help, value);
+    }
+
+    private static Metric gauge(String name, String help, long value) {
+        return new Metric(name, "gauge", help, value);
+    }
+
+    private static final class Metric {
+        final String name;
+        final String type;
+        final String help;
+        final long value;
+
+        Metric(String name, String type, String help, long value) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
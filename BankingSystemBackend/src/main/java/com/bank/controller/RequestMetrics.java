@@ -0,0 +1,202 @@
+package com.bank.controller;
+
+import com.bank.util.AppConfig;
+import com.bank.util.LatencyHistogram;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route request metrics: a latency histogram, responses by status class and
+ * requests in flight. A route is "METHOD /servlet-path/path-info", e.g.
+ * "POST /api/accounts/transfer"; unknown paths (404) share one route per method,
+ * and at most metrics.maxRoutes are tracked, so clients cannot grow the registry.
+ *
+ * Servlets call time(...) around their work. Async requests are recorded when
+ * their AsyncContext completes, so the latency covers the whole request.
+ */
+final class RequestMetrics {
+
+    private static final boolean ENABLED = AppConfig.getBoolean("metrics.enabled", true);
+    private static final int MAX_ROUTES = AppConfig.getInt("metrics.maxRoutes", 200);
+    private static final String OTHER = "other";
+
+    private static final ConcurrentHashMap<String, Route> ROUTES = new ConcurrentHashMap<>();
+    private static final LongAdder[] STATUS_CODES = new LongAdder[600]; // by code; 0 = invalid
+    private static final LongAdder IN_FLIGHT = new LongAdder();
+    static {
+        for (int i = 0; i < STATUS_CODES.length; i++) {
+            STATUS_CODES[i] = new LongAdder();
+        }
+    }
+
+    interface Work {
+        void run() throws ServletException, IOException;
+    }
+
+    private RequestMetrics() {
+    }
+
+    /**
+     * Runs a request's work and records it under its route.
+     */
+    static void time(HttpServletRequest req, HttpServletResponse resp, Work work) throws ServletException, IOException {
+        if (!ENABLED) {
+            work.run();
+            return;
+        }
+        long start = System.nanoTime();
+        IN_FLIGHT.increment();
+        boolean async = false;
+        try {
+            work.run();
+            // complete() cannot take effect before this dispatch returns, so the listener is never late
+            if (req.isAsyncStarted()) {
+                req.getAsyncContext().addListener(new AsyncRecorder(req.getMethod(), pathOf(req), resp, start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                record(req.getMethod(), pathOf(req), resp.getStatus(), start);
+            }
+        }
+    }
+
+    private static String pathOf(HttpServletRequest req) {
+        String pathInfo = req.getPathInfo();
+        return (pathInfo != null) ? req.getServletPath() + pathInfo : req.getServletPath();
+    }
+
+    private static void record(String method, String path, int status, long start) {
+        long elapsed = System.nanoTime() - start;
+        IN_FLIGHT.decrement();
+        routeFor(method, path, status).record(status, elapsed);
+        STATUS_CODES[(status >= 100 && status < 600) ? status : 0].increment();
+    }
+
+    private static Route routeFor(String method, String path, int status) {
+        String name = (status == HttpServletResponse.SC_NOT_FOUND) ? method + " (unmatched)" : method + " " + path;
+        Route route = ROUTES.get(name);
+        if (route != null) {
+            return route;
+        }
+        if (ROUTES.size() >= MAX_ROUTES) {
+            name = OTHER;
+        }
+        return ROUTES.computeIfAbsent(name, n -> new Route());
+    }
+
+    // --- Reading ---
+
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    static long getInFlightCount() {
+        return IN_FLIGHT.sum();
+    }
+
+    /**
+     * Routes by name, sorted for stable output.
+     */
+    static Map<String, Route> getRoutes() {
+        return new TreeMap<>(ROUTES);
+    }
+
+    /**
+     * Non-zero counts by exact status code (0 collects invalid codes).
+     */
+    static Map<Integer, Long> getStatusCodeCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int code = 0; code < STATUS_CODES.length; code++) {
+            long count = STATUS_CODES[code].sum();
+            if (count > 0) {
+                counts.put(code, count);
+            }
+        }
+        return counts;
+    }
+
+    static final class Route {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder[] byStatusClass = new LongAdder[6]; // index 1..5 = 1xx..5xx
+
+        Route() {
+            for (int i = 0; i < byStatusClass.length; i++) {
+                byStatusClass[i] = new LongAdder();
+            }
+        }
+
+        void record(int status, long elapsedNanos) {
+            latency.recordNanos(elapsedNanos);
+            byStatusClass[(status >= 100 && status < 600) ? status / 100 : 0].increment();
+        }
+
+        /**
+         * Non-zero counts keyed "2xx", "4xx", ... ("other" for invalid codes).
+         */
+        Map<String, Long> getStatusClassCounts() {
+            Map<String, Long> counts = new TreeMap<>();
+            for (int i = 0; i < byStatusClass.length; i++) {
+                long count = byStatusClass[i].sum();
+                if (count > 0) {
+                    counts.put(i == 0 ? "other" : i + "xx", count);
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Records an async request once, however its async work ends.
+     */
+    private static final class AsyncRecorder implements AsyncListener {
+        private final String method;
+        private final String path;
+        private final HttpServletResponse resp;
+        private final long start;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        AsyncRecorder(String method, String path, HttpServletResponse resp, long start) {
+            this.method = method;
+            this.path = path;
+            this.resp = resp;
+            this.start = start;
+        }
+
+        private void recordOnce(int status) {
+            if (recorded.compareAndSet(false, true)) {
+                record(method, path, status, start);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            recordOnce(resp.getStatus());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            recordOnce(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            recordOnce(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
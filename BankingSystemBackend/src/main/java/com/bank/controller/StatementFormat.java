@@ -0,0 +1,88 @@
+package com.bank.controller;
+
+import com.bank.model.Transaction;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Output formats of the account statement export (GET /api/accounts/statement).
+ */
+enum StatementFormat {
+
+    /**
+     * RFC 4180 CSV with a header row. Amounts are plain decimals; an empty
+     * balance_after means it was not recorded for that row.
+     */
+    CSV("text/csv", "csv",
+            "transaction_id,transaction_date,transaction_type,amount,balance_after,"
+            + "source_account_id,destination_account_id,description\r\n") {
+        @Override
+        void write(Transaction tx, Writer out, Gson gson) throws IOException {
+            out.write(Integer.toString(tx.getTransactionId()));
+            out.write(',');
+            out.write(String.valueOf(tx.getTransactionDate()));
+            out.write(',');
+            out.write(tx.getTransactionType());
+            out.write(',');
+            writeDecimal(out, tx.getAmount());
+            out.write(',');
+            writeDecimal(out, tx.getBalanceAfter());
+            out.write(',');
+            if (tx.getSourceAccountId() != null) out.write(tx.getSourceAccountId().toString());
+            out.write(',');
+            if (tx.getDestinationAccountId() != null) out.write(tx.getDestinationAccountId().toString());
+            out.write(',');
+            writeQuoted(out, tx.getDescription());
+            out.write("\r\n");
+        }
+    },
+
+    /**
+     * One JSON object per line, same fields as the JSON endpoints.
+     */
+    NDJSON("application/x-ndjson", "ndjson", null) {
+        @Override
+        void write(Transaction tx, Writer out, Gson gson) throws IOException {
+            gson.toJson(tx, Transaction.class, out);
+            out.write('\n');
+        }
+    };
+
+    final String contentType;
+    final String fileExtension;
+    final String header; // null if the format has none
+
+    StatementFormat(String contentType, String fileExtension, String header) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+        this.header = header;
+    }
+
+    abstract void write(Transaction tx, Writer out, Gson gson) throws IOException;
+
+    /**
+     * @throws IllegalArgumentException for an unknown format name.
+     */
+    static StatementFormat parse(String name) {
+        return (name == null || name.isEmpty()) ? CSV : valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    private static void writeDecimal(Writer out, BigDecimal value) throws IOException {
+        if (value != null) {
+            out.write(value.toPlainString());
+        }
+    }
+
+    private static void writeQuoted(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -1,14 +1,20 @@
 package com.bank.controller;
 
+import com.bank.ledger.EntryType;
+import com.bank.ledger.EntryView;
+import com.bank.ledger.LedgerEngine;
+import com.bank.ledger.LedgerEntry;
+import com.bank.ledger.LedgerResult;
+import com.bank.model.Money;
+
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.*;
 import java.io.*;
-import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 
 /**
@@ -18,58 +24,62 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * Supported transaction types: DEPOSIT, WITHDRAW, TRANSFER
  *
- * NOTE: This servlet uses in-memory storage for accounts and transactions. It's intended as a simple example.
+ * NOTE: This servlet uses in-memory storage for accounts and transactions (see {@link LedgerEngine}).
+ * It's intended as a simple example.
  */
 @WebServlet(name = "TransactionServlet", urlPatterns = {"/transactions"})
 public class TransactionServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
 
-    // Simple in-memory storage (thread-safe access via synchronized blocks)
-    private static final Map<Long, Account> accounts = new HashMap<>();
-    private static final List<Transaction> transactions = new ArrayList<>();
-    private static final AtomicLong txIdGenerator = new AtomicLong(1);
+    // In-memory storage; the engine handles its own concurrency
+    private static final LedgerEngine ledger = LedgerEngine.fromConfig();
     private static final AtomicLong accountIdGenerator = new AtomicLong(1);
 
     @Override
     public void init() throws ServletException {
         super.init();
         // Initialize a couple of demo accounts
-        synchronized (accounts) {
-            if (accounts.isEmpty()) {
-                long a1 = accountIdGenerator.getAndIncrement();
-                long a2 = accountIdGenerator.getAndIncrement();
-                accounts.put(a1, new Account(a1, new BigDecimal("1000.00")));
-                accounts.put(a2, new Account(a2, new BigDecimal("500.00")));
+        synchronized (accountIdGenerator) {
+            if (ledger.getAccountCount() == 0) {
+                ledger.openAccount(accountIdGenerator.getAndIncrement(), Money.parse("1000.00"));
+                ledger.openAccount(accountIdGenerator.getAndIncrement(), Money.parse("500.00"));
             }
         }
     }
 
+    @Override
+    public void destroy() {
+        ledger.shutdown();
+        super.destroy();
+    }
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        // Not a BaseServlet, so it records its own request metrics
+        RequestMetrics.time(req, resp, () -> super.service(req, resp));
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String accountIdParam = req.getParameter("accountId");
-        List<Transaction> copy;
-        synchronized (transactions) {
-            if (accountIdParam != null) {
-                try {
-                    long aid = Long.parseLong(accountIdParam);
-                    copy = new ArrayList<>();
-                    for (Transaction t : transactions) {
-                        if (t.accountId == aid || t.targetAccountId == aid) copy.add(t);
-                    }
-                } catch (NumberFormatException e) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    writeJson(resp, "{\"error\":\"invalid accountId\"}");
-                    return;
-                }
-            } else {
-                copy = new ArrayList<>(transactions);
+        // Entries are written straight from the ledger's columns into one buffer
+        JsonArrayWriter array = new JsonArrayWriter();
+        if (accountIdParam != null) {
+            try {
+                ledger.forEachEntry(Long.parseLong(accountIdParam), array);
+            } catch (NumberFormatException e) {
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                writeJson(resp, "{\"error\":\"invalid accountId\"}");
+                return;
             }
+        } else {
+            ledger.forEachEntry(array);
         }
 
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
-        writeJson(resp, toJsonArray(copy));
+        writeJson(resp, array.finish());
     }
 
     @Override
@@ -94,9 +104,9 @@ public class TransactionServlet extends HttpServlet {
             return;
         }
 
-        TransactionType txType;
+        EntryType txType;
         try {
-            txType = TransactionType.valueOf(type.toUpperCase(Locale.ROOT));
+            txType = EntryType.valueOf(type.toUpperCase(Locale.ROOT));
         } catch (IllegalArgumentException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             writeJson(resp, "{\"error\":\"invalid transaction type\"}");
@@ -105,84 +115,52 @@ public class TransactionServlet extends HttpServlet {
 
         long accountId;
         long targetAccountId = -1;
-        BigDecimal amount;
+        Money amount;
         try {
             accountId = Long.parseLong(accountIdStr);
             if (targetAccountIdStr != null && !targetAccountIdStr.trim().isEmpty()) {
                 targetAccountId = Long.parseLong(targetAccountIdStr);
             }
-            amount = new BigDecimal(amountStr);
-            if (amount.signum() <= 0) throw new NumberFormatException();
+            amount = Money.parse(amountStr);
+            if (!amount.isPositive()) throw new NumberFormatException();
         } catch (NumberFormatException ex) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             writeJson(resp, "{\"error\":\"invalid numeric fields\"}");
             return;
         }
 
-        // Ensure accounts exist (auto-create for demo)
-        synchronized (accounts) {
-            accounts.computeIfAbsent(accountId, id -> new Account(id, BigDecimal.ZERO));
-            if (txType == TransactionType.TRANSFER) {
-                accounts.computeIfAbsent(targetAccountId, id -> new Account(id, BigDecimal.ZERO));
-            }
+        if (txType == EntryType.TRANSFER && targetAccountId == -1) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeJson(resp, "{\"error\":\"targetAccountId required for transfer\"}");
+            return;
         }
 
-        // Execute transaction
-        Transaction tx;
-        synchronized (accounts) {
-            Account src = accounts.get(accountId);
-            Account dest = txType == TransactionType.TRANSFER ? accounts.get(targetAccountId) : null;
-
-            switch (txType) {
-                case DEPOSIT:
-                    src.balance = src.balance.add(amount);
-                    tx = new Transaction(txIdGenerator.getAndIncrement(), txType, accountId, -1, amount, Instant.now().toEpochMilli());
-                    break;
-                case WITHDRAW:
-                    if (src.balance.compareTo(amount) < 0) {
-                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                        writeJson(resp, "{\"error\":\"insufficient funds\"}");
-                        return;
-                    }
-                    src.balance = src.balance.subtract(amount);
-                    tx = new Transaction(txIdGenerator.getAndIncrement(), txType, accountId, -1, amount, Instant.now().toEpochMilli());
-                    break;
-                case TRANSFER:
-                    if (dest == null) {
-                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                        writeJson(resp, "{\"error\":\"targetAccountId required for transfer\"}");
-                        return;
-                    }
-                    if (src.balance.compareTo(amount) < 0) {
-                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                        writeJson(resp, "{\"error\":\"insufficient funds\"}");
-                        return;
-                    }
-                    src.balance = src.balance.subtract(amount);
-                    dest.balance = dest.balance.add(amount);
-                    tx = new Transaction(txIdGenerator.getAndIncrement(), txType, accountId, targetAccountId, amount, Instant.now().toEpochMilli());
-                    break;
-                default:
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    writeJson(resp, "{\"error\":\"unsupported transaction type\"}");
-                    return;
-            }
+        // Execute transaction (accounts are auto-created for demo)
+        LedgerResult result;
+        try {
+            result = ledger.execute(txType, accountId, targetAccountId, amount);
+        } catch (ArithmeticException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeJson(resp, "{\"error\":\"balance out of range\"}");
+            return;
         }
-
-        synchronized (transactions) {
-            transactions.add(tx);
+        if (!result.isSuccess()) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeJson(resp, "{\"error\":\"insufficient funds\"}");
+            return;
         }
+        LedgerEntry tx = result.getEntry();
 
         // Build response with transaction and updated balances
         StringBuilder sb = new StringBuilder();
         sb.append("{");
         sb.append("\"transaction\":").append(tx.toJson()).append(",");
         sb.append("\"balances\":{");
-        Account a1 = accounts.get(accountId);
-        sb.append("\"").append(accountId).append("\":").append(a1.balance.toPlainString());
-        if (tx.targetAccountId != -1) {
-            Account a2 = accounts.get(tx.targetAccountId);
-            sb.append(",\"").append(tx.targetAccountId).append("\":").append(a2.balance.toPlainString());
+        sb.append("\"").append(accountId).append("\":");
+        result.getSourceBalance().appendTo(sb);
+        if (tx.getTargetAccountId() != -1) {
+            sb.append(",\"").append(tx.getTargetAccountId()).append("\":");
+            result.getTargetBalance().appendTo(sb);
         }
         sb.append("}}");
 
@@ -192,7 +170,7 @@ public class TransactionServlet extends HttpServlet {
         writeJson(resp, sb.toString());
     }
 
-    // ---- Helpers and simple models ----
+    // ---- Helpers ----
 
     private static String readBody(HttpServletRequest req) throws IOException {
         StringBuilder sb = new StringBuilder();
@@ -243,17 +221,23 @@ public class TransactionServlet extends HttpServlet {
         return json.substring(start, i);
     }
 
-    private static String toJsonArray(List<Transaction> list) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        boolean first = true;
-        for (Transaction t : list) {
+    /**
+     * Collects ledger entries into a JSON array as they are visited.
+     */
+    private static final class JsonArrayWriter implements Consumer<EntryView> {
+        private final StringBuilder sb = new StringBuilder("[");
+        private boolean first = true;
+
+        @Override
+        public void accept(EntryView entry) {
             if (!first) sb.append(",");
-            sb.append(t.toJson());
+            entry.appendJson(sb);
             first = false;
         }
-        sb.append("]");
-        return sb.toString();
+
+        String finish() {
+            return sb.append("]").toString();
+        }
     }
 
     private static void writeJson(HttpServletResponse resp, String json) throws IOException {
@@ -262,51 +246,4 @@ public class TransactionServlet extends HttpServlet {
             out.flush();
         }
     }
-
-    private enum TransactionType {
-        DEPOSIT, WITHDRAW, TRANSFER
-    }
-
-    private static class Account {
-        final long id;
-        BigDecimal balance;
-
-        Account(long id, BigDecimal balance) {
-            this.id = id;
-            this.balance = balance;
-        }
-    }
-
-    private static class Transaction {
-        final long id;
-        final TransactionType type;
-        final long accountId;
-        final long targetAccountId; // -1 when not applicable
-        final BigDecimal amount;
-        final long timestamp;
-
-        Transaction(long id, TransactionType type, long accountId, long targetAccountId, BigDecimal amount, long timestamp) {
-            this.id = id;
-            this.type = type;
-            this.accountId = accountId;
-            this.targetAccountId = targetAccountId;
-            this.amount = amount;
-            this.timestamp = timestamp;
-        }
-
-        String toJson() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("{");
-            sb.append("\"id\":").append(id).append(",");
-            sb.append("\"type\":\"").append(type.name()).append("\",");
-            sb.append("\"accountId\":").append(accountId).append(",");
-            sb.append("\"amount\":").append(amount.toPlainString()).append(",");
-            sb.append("\"timestamp\":").append(timestamp);
-            if (targetAccountId != -1) {
-                sb.append(",\"targetAccountId\":").append(targetAccountId);
-            }
-            sb.append("}");
-            return sb.toString();
-        }
-    }
-}
\ No newline at end of file
+}
@@ -14,6 +14,15 @@ import javax.servlet.http.HttpServletResponse;
 public class UserServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Records request metrics like BaseServlet does.
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+        throws ServletException, IOException {
+        RequestMetrics.time(request, response, () -> super.service(request, response));
+    }
+
     /**
      * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
      * Handles HTTP GET requests, typically for displaying data or a form.
@@ -1,22 +1,92 @@
 package com.bank.dao;
 
 import com.bank.model.Account;
+import com.bank.model.Money;
+import com.bank.util.AppConfig;
+import com.bank.util.BloomFilter;
 import com.bank.util.DatabaseConnection;
 
-import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AccountDao {
 
+    // Retry policy for transfers that lose a lock race
+    private static final int MAX_TRANSFER_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 5;
+
+    private static final LongAdder RETRIES = new LongAdder();
+    private static final LongAdder DEADLOCKS = new LongAdder();
+
+    // Owner/number lookups for authorization and transfer routing. Account IDs, numbers
+    // and owners never change once created, so entries only leave the cache by eviction.
+    private static final AccountMetadataCache METADATA_CACHE =
+            new AccountMetadataCache(AppConfig.getInt("account.cache.maxSize", 10_000),
+                    AppConfig.getLong("account.cache.missTtlSeconds", 30) * 1000L);
+    private static final boolean BLOOM_ENABLED = AppConfig.getBoolean("account.cache.bloomFilter", false);
+    private static final long BLOOM_REFRESH_MILLIS = AppConfig.getLong("account.cache.bloomRefreshSeconds", 300) * 1000L;
+    private static final long BLOOM_MIN_EXPECTED = AppConfig.getLong("account.cache.bloomExpected", 100_000);
+    private static final ScheduledExecutorService BLOOM_LOADER;
+    static {
+        if (BLOOM_ENABLED) {
+            // Rebuilt off the request path: the rebuild scans every account number
+            BLOOM_LOADER = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "account-bloom-loader");
+                t.setDaemon(true);
+                return t;
+            });
+            BLOOM_LOADER.scheduleWithFixedDelay(AccountDao::reloadKnownNumbers, 0, BLOOM_REFRESH_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            BLOOM_LOADER = null;
+        }
+    }
+
+    // Opt-in sub-balance shards for hot accounts (needs the account_shards table, see HotAccounts)
+    private static final HotAccounts HOT = AppConfig.getBoolean("account.hot.enabled", false)
+            ? new HotAccounts(AppConfig.getLong("account.hot.refreshSeconds", 60) * 1000L,
+                    AppConfig.getLong("account.hot.rebalanceSeconds", 30) * 1000L)
+            : null;
+
+    // Every account read reports the exact total: the row's balance plus any shard rows,
+    // summed in one statement so both come from the same snapshot.
+    static final String TOTAL_BALANCE = (HOT != null)
+            ? "a.balance + COALESCE((SELECT SUM(s.balance) FROM account_shards s WHERE s.account_id = a.account_id), 0)"
+            : "a.balance";
+    private static final String ACCOUNT_SELECT = "SELECT a.*, " + TOTAL_BALANCE + " AS total_balance FROM accounts a";
+
+    // Opt-in group commit of deposits/withdrawals; declared after the other statics it relies on
+    private static final BalanceUpdateBatcher BATCHER = AppConfig.getBoolean("account.batch.enabled", false)
+            ? new BalanceUpdateBatcher(new AccountDao(), HOT != null,
+                    AppConfig.getInt("account.batch.maxSize", 256),
+                    AppConfig.getLong("account.batch.maxDelayMicros", 500))
+            : null;
+
+    private final BalanceUpdateMode mode;
+    private final TransactionDao transactionDao = new TransactionDao();
+
+    public AccountDao() {
+        this(BalanceUpdateMode.fromConfig(AppConfig.getString("account.balanceUpdateMode", "LOCKING")));
+    }
+
+    public AccountDao(BalanceUpdateMode mode) {
+        this.mode = mode;
+    }
+
     /**
      * Retrieves all accounts associated with a specific user.
      */
     public List<Account> getAccountsByUserId(int userId) {
         List<Account> accounts = new ArrayList<>();
-        String sql = "SELECT * FROM accounts WHERE user_id = ?";
+        String sql = ACCOUNT_SELECT + " WHERE a.user_id = ?";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
@@ -36,7 +106,7 @@ public class AccountDao {
      * Retrieves a single account by its account number.
      */
     public Account getAccountByAccountNumber(String accountNumber) {
-        String sql = "SELECT * FROM accounts WHERE account_number = ?";
+        String sql = ACCOUNT_SELECT + " WHERE a.account_number = ?";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
@@ -56,7 +126,7 @@ public class AccountDao {
      * Retrieves a single account by its ID.
      */
     public Account getAccountById(int accountId) {
-        String sql = "SELECT * FROM accounts WHERE account_id = ?";
+        String sql = ACCOUNT_SELECT + " WHERE a.account_id = ?";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
@@ -72,6 +142,23 @@ public class AccountDao {
         return null;
     }
     
+    /**
+     * Returns the immutable owner/number facts for an account, from the
+     * metadata cache when possible. Used for ownership checks.
+     * @return null if the account does not exist.
+     */
+    public AccountMetadata getAccountMetadata(int accountId) {
+        AccountMetadata metadata = METADATA_CACHE.getById(accountId);
+        if (metadata != null) {
+            return metadata;
+        }
+        Account account = getAccountById(accountId);
+        if (account == null) {
+            return null; // Misses are not cached; the account may be created later
+        }
+        return remember(account);
+    }
+
     /**
      * Creates a new bank account for a user.
      * This is often an admin-driven process.
@@ -88,6 +175,9 @@ public class AccountDao {
             ps.setString(3, accountType); // e.g., "SAVINGS"
 
             int rowsAffected = ps.executeUpdate();
+            if (rowsAffected > 0) {
+                METADATA_CACHE.addKnownNumber(accountNumber);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -98,57 +188,110 @@ public class AccountDao {
 
     /**
      * Core logic for Deposit or Withdrawal.
+     * Runs in LOCKING or CONDITIONAL mode depending on configuration.
      * @param accountId The account ID.
      * @param amount The amount to add (positive for deposit, negative for withdrawal).
      * @return true if successful, false otherwise.
      */
-    public boolean updateBalance(int accountId, BigDecimal amount) {
+    public boolean updateBalance(int accountId, Money amount) {
+        return updateBalance(accountId, amount, null);
+    }
+
+    /**
+     * Same as above; on success the idempotency record (if not null) is stored in the
+     * same database transaction. A key that is already stored makes this return false.
+     */
+    public boolean updateBalance(int accountId, Money amount, IdempotencyRecord idempotency) {
+        if (BATCHER != null && shardCount(accountId) == 0) {
+            if (BATCHER.submit(accountId, amount, idempotency)) {
+                return true;
+            }
+            // A refused withdrawal may be on an account made hot since the last reload
+            if (!amount.isNegative() || !becameHot(accountId)) {
+                return false;
+            }
+        }
+        return applyBalanceUpdate(accountId, amount, idempotency);
+    }
+
+    /**
+     * Applies one balance update in its own database transaction
+     * (also the batcher's fallback when a whole batch fails).
+     */
+    boolean applyBalanceUpdate(int accountId, Money amount, IdempotencyRecord idempotency) {
+        int shards = shardCount(accountId);
+        boolean consolidate = false;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                boolean applied = attemptBalanceUpdate(accountId, shards, consolidate, amount, idempotency);
+                if (!applied && shards == 0 && amount.isNegative() && becameHot(accountId)) {
+                    shards = shardCount(accountId);
+                    continue; // Refused against the base row alone; retry against the shards
+                }
+                return applied;
+            } catch (HotAccounts.ConsolidationRequired e) {
+                consolidate = true;
+            } catch (SQLException e) {
+                // Hot-account debits wait on shard locks held by transfers and the rebalancer; retry those
+                boolean deadlock = isDeadlock(e);
+                if (deadlock) {
+                    DEADLOCKS.increment();
+                }
+                if (shards > 0 && (deadlock || isLockWaitTimeout(e)) && attempt < MAX_TRANSFER_ATTEMPTS) {
+                    RETRIES.increment();
+                    backoff(attempt);
+                    continue;
+                }
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Runs a single deposit/withdrawal attempt. The connection is always rolled back
+     * and returned to the pool before a SQLException reaches the caller.
+     */
+    private boolean attemptBalanceUpdate(int accountId, int shards, boolean consolidate, Money amount,
+                                         IdempotencyRecord idempotency) throws SQLException {
         // We use a transaction to ensure the balance check and update are atomic.
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false); // Start transaction
 
-            // Step 1: Lock the row for update and check balance for withdrawals
-            String lockSql = "SELECT balance FROM accounts WHERE account_id = ? FOR UPDATE";
-            BigDecimal currentBalance;
-            try (PreparedStatement lockPs = conn.prepareStatement(lockSql)) {
-                lockPs.setInt(1, accountId);
-                ResultSet rs = lockPs.executeQuery();
-                if (!rs.next()) {
-                    throw new SQLException("Account not found.");
-                }
-                currentBalance = rs.getBigDecimal("balance");
+            // Steps 1-3: Check funds and apply the change
+            boolean applied;
+            if (shards > 0) {
+                applied = applyShardedUpdate(conn, accountId, shards, amount, consolidate);
+            } else {
+                applied = (mode == BalanceUpdateMode.CONDITIONAL)
+                        ? applyConditionalUpdate(conn, accountId, amount)
+                        : applyLockingUpdate(conn, accountId, amount);
             }
-            
-            // Step 2: Check for sufficient funds if it's a withdrawal
-            if (amount.compareTo(BigDecimal.ZERO) < 0) { // If amount is negative
-                if (currentBalance.add(amount).compareTo(BigDecimal.ZERO) < 0) {
-                    // Insufficient funds
-                    conn.rollback();
-                    return false; 
-                }
-            }
-
-            // Step 3: Perform the update
-            String updateSql = "UPDATE accounts SET balance = balance + ? WHERE account_id = ?";
-            try (PreparedStatement updatePs = conn.prepareStatement(updateSql)) {
-                updatePs.setBigDecimal(1, amount);
-                updatePs.setInt(2, accountId);
-                updatePs.executeUpdate();
+            if (!applied) {
+                // Insufficient funds
+                conn.rollback();
+                return false;
             }
 
             // Step 4: Log the transaction (delegated to TransactionDao)
-            TransactionDao txDao = new TransactionDao();
-            String type = (amount.compareTo(BigDecimal.ZERO) > 0) ? "DEPOSIT" : "WITHDRAWAL";
+            String type = amount.isPositive() ? "DEPOSIT" : "WITHDRAWAL";
             // Pass the connection so it's part of the same transaction
-            txDao.createTransaction(conn, accountId, type, amount.abs(), accountId, null, "Transaction");
+            if (shards > 0) {
+                // No single row holds a hot account's balance, so there is no exact balance_after
+                transactionDao.createTransaction(conn, accountId, type, amount.abs(), accountId, null, "Transaction", null);
+            } else {
+                transactionDao.createTransaction(conn, accountId, type, amount.abs(), accountId, null, "Transaction");
+            }
+            if (idempotency != null) {
+                IdempotencyStore.insert(conn, Collections.singletonList(idempotency));
+            }
 
             conn.commit(); // Commit transaction
             return true;
 
         } catch (SQLException e) {
-            e.printStackTrace();
             if (conn != null) {
                 try {
                     conn.rollback(); // Rollback on error
@@ -156,7 +299,7 @@ public class AccountDao {
                     ex.printStackTrace();
                 }
             }
-            return false;
+            throw e;
         } finally {
             if (conn != null) {
                 try {
@@ -171,18 +314,73 @@ public class AccountDao {
 
     /**
      * Core logic for transferring money between two accounts.
-     * This is a critical ACID transaction.
+     * This is a critical ACID transaction. Deadlocks and lock-wait timeouts
+     * are retried a bounded number of times with a jittered backoff.
      */
-    public boolean transferFunds(int fromAccountId, String toAccountNumber, BigDecimal amount) {
+    public boolean transferFunds(int fromAccountId, String toAccountNumber, Money amount) {
+        return transferFunds(fromAccountId, toAccountNumber, amount, null);
+    }
+
+    /**
+     * Same as above; on success the idempotency record (if not null) is stored in the
+     * same database transaction. A key that is already stored makes this return false.
+     */
+    public boolean transferFunds(int fromAccountId, String toAccountNumber, Money amount,
+                                 IdempotencyRecord idempotency) {
+        if (BLOOM_ENABLED && !isKnownDestination(toAccountNumber)) {
+            return false; // Destination account not found, no transaction started
+        }
+        boolean consolidate = false;
+        boolean rechecked = false;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                boolean moved = attemptTransfer(fromAccountId, toAccountNumber, amount, consolidate, idempotency);
+                if (!moved && !rechecked && shardCount(fromAccountId) == 0) {
+                    rechecked = true;
+                    if (becameHot(fromAccountId)) {
+                        continue; // Refused against the base row alone; retry against the shards
+                    }
+                }
+                return moved;
+            } catch (HotAccounts.ConsolidationRequired e) {
+                consolidate = true;
+            } catch (SQLException e) {
+                boolean deadlock = isDeadlock(e);
+                if (deadlock) {
+                    DEADLOCKS.increment();
+                }
+                if ((deadlock || isLockWaitTimeout(e)) && attempt < MAX_TRANSFER_ATTEMPTS) {
+                    RETRIES.increment();
+                    backoff(attempt);
+                    continue;
+                }
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Runs a single transfer attempt. The connection is always rolled back
+     * and returned to the pool before a SQLException reaches the caller.
+     */
+    private boolean attemptTransfer(int fromAccountId, String toAccountNumber, Money amount, boolean consolidate,
+                                    IdempotencyRecord idempotency) throws SQLException {
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false); // START TRANSACTION
 
-            // Step 1: Get the destination account ID
-            Account toAccount = getAccountByAccountNumber(toAccountNumber);
+            // Step 1: Resolve the destination account ID, from the metadata cache or on this
+            // transaction's connection, so a transfer never holds more than one pooled connection.
+            // A cached ID is safe: both move strategies re-check that the row still exists.
+            AccountMetadata toAccount = METADATA_CACHE.getByNumber(toAccountNumber);
             if (toAccount == null) {
-                throw new SQLException("Destination account not found.");
+                Account loaded = getAccountByAccountNumber(conn, toAccountNumber);
+                if (loaded == null) {
+                    throw new SQLException("Destination account not found.");
+                }
+                toAccount = remember(loaded);
             }
             int toAccountId = toAccount.getAccountId();
             
@@ -190,69 +388,454 @@ public class AccountDao {
                 throw new SQLException("Cannot transfer to the same account.");
             }
 
-            // Step 2: Lock and retrieve source account balance
-            String lockSqlFrom = "SELECT balance FROM accounts WHERE account_id = ? FOR UPDATE";
-            BigDecimal fromBalance;
-            try (PreparedStatement ps = conn.prepareStatement(lockSqlFrom)) {
-                ps.setInt(1, fromAccountId);
-                ResultSet rs = ps.executeQuery();
-                if (!rs.next()) throw new SQLException("Source account not found.");
-                fromBalance = rs.getBigDecimal("balance");
+            // Steps 2-5: Check funds and move the money
+            int fromShards = shardCount(fromAccountId);
+            int toShards = shardCount(toAccountId);
+            boolean moved;
+            if (fromShards > 0 || toShards > 0) {
+                moved = moveFundsSharded(conn, fromAccountId, fromShards, toAccountId, toShards, amount, consolidate);
+            } else {
+                moved = (mode == BalanceUpdateMode.CONDITIONAL)
+                        ? moveFundsConditional(conn, fromAccountId, toAccountId, amount)
+                        : moveFundsLocking(conn, fromAccountId, toAccountId, amount);
             }
-
-            // Step 3: Check for sufficient funds
-            if (fromBalance.compareTo(amount) < 0) {
+            if (!moved) {
                 conn.rollback();
                 return false; // Insufficient funds
             }
-
-            // Step 4: Lock destination account
-            String lockSqlTo = "SELECT account_id FROM accounts WHERE account_id = ? FOR UPDATE";
-            try (PreparedStatement ps = conn.prepareStatement(lockSqlTo)) {
-                ps.setInt(1, toAccountId);
-                if (!ps.executeQuery().next()) throw new SQLException("Destination account disappeared.");
-            }
             
-            // To prevent deadlocks, always lock accounts in a consistent order (e.g., by ascending ID)
-            // This simple implementation locks sequentially, which is okay but
-            // a more robust solution would lock (fromId, toId) in a sorted order.
-
-            // Step 5: Withdraw from source account
-            String withdrawSql = "UPDATE accounts SET balance = balance - ? WHERE account_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(withdrawSql)) {
-                ps.setBigDecimal(1, amount);
-                ps.setInt(2, fromAccountId);
-                ps.executeUpdate();
-            }
-
-            // Step 6: Deposit to destination account
-            String depositSql = "UPDATE accounts SET balance = balance + ? WHERE account_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(depositSql)) {
-                ps.setBigDecimal(1, amount);
-                ps.setInt(2, toAccountId);
-                ps.executeUpdate();
-            }
-            
-            // Step 7: Log both sides of the transaction
-            TransactionDao txDao = new TransactionDao();
+            // Step 6: Log both sides of the transaction
             String desc = "Transfer to " + toAccountNumber;
-            txDao.createTransaction(conn, fromAccountId, "TRANSFER", amount.negate(), fromAccountId, toAccountId, desc);
+            logTransfer(conn, fromAccountId, fromShards, amount.negate(), fromAccountId, toAccountId, desc);
             
             String descTo = "Transfer from account ID " + fromAccountId;
-            txDao.createTransaction(conn, toAccountId, "TRANSFER", amount, fromAccountId, toAccountId, descTo);
+            logTransfer(conn, toAccountId, toShards, amount, fromAccountId, toAccountId, descTo);
+            if (idempotency != null) {
+                IdempotencyStore.insert(conn, Collections.singletonList(idempotency));
+            }
 
             conn.commit(); // COMMIT TRANSACTION
             return true;
 
         } catch (SQLException e) {
-            e.printStackTrace();
             if (conn != null) try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
-            return false;
+            throw e;
         } finally {
             if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { e.printStackTrace(); }
         }
     }
-    
+
+    /**
+     * Logs one side of a transfer; hot accounts get no balance_after (see attemptBalanceUpdate).
+     */
+    private void logTransfer(Connection conn, int accountId, int shards, Money amount,
+                             int fromAccountId, int toAccountId, String desc) throws SQLException {
+        if (shards > 0) {
+            transactionDao.createTransaction(conn, accountId, "TRANSFER", amount, fromAccountId, toAccountId, desc, null);
+        } else {
+            transactionDao.createTransaction(conn, accountId, "TRANSFER", amount, fromAccountId, toAccountId, desc);
+        }
+    }
+
+    // --- Balance Update Strategies ---
+
+    /**
+     * LOCKING mode: lock the row, check the balance, then apply the delta.
+     * @return false if a withdrawal would overdraw the account.
+     */
+    private boolean applyLockingUpdate(Connection conn, int accountId, Money amount) throws SQLException {
+        // Lock the row for update and check balance for withdrawals
+        String lockSql = "SELECT balance FROM accounts WHERE account_id = ? FOR UPDATE";
+        Money currentBalance;
+        try (PreparedStatement lockPs = conn.prepareStatement(lockSql)) {
+            lockPs.setInt(1, accountId);
+            ResultSet rs = lockPs.executeQuery();
+            if (!rs.next()) {
+                throw new SQLException("Account not found.");
+            }
+            currentBalance = Money.of(rs.getBigDecimal("balance"));
+        }
+
+        // Check for sufficient funds if it's a withdrawal
+        if (amount.isNegative() && currentBalance.plus(amount).isNegative()) {
+            return false;
+        }
+
+        String updateSql = "UPDATE accounts SET balance = balance + ? WHERE account_id = ?";
+        try (PreparedStatement updatePs = conn.prepareStatement(updateSql)) {
+            updatePs.setBigDecimal(1, amount.toBigDecimal());
+            updatePs.setInt(2, accountId);
+            updatePs.executeUpdate();
+        }
+        return true;
+    }
+
+    /**
+     * CONDITIONAL mode: one UPDATE that only matches when the funds are there.
+     * @return false if a withdrawal would overdraw the account.
+     */
+    private boolean applyConditionalUpdate(Connection conn, int accountId, Money amount) throws SQLException {
+        if (!amount.isNegative()) {
+            if (credit(conn, accountId, amount) == 0) {
+                throw new SQLException("Account not found.");
+            }
+            return true;
+        }
+        if (debitIfSufficient(conn, accountId, amount.negate()) == 0) {
+            // Either the account is missing or the guard rejected the debit
+            if (getAccountById(conn, accountId) == null) {
+                throw new SQLException("Account not found.");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * LOCKING mode for transfers: lock both rows in one statement, always in ascending
+     * account_id order, so two transfers crossing in opposite directions cannot deadlock.
+     * @return false if the source account has insufficient funds.
+     */
+    private boolean moveFundsLocking(Connection conn, int fromAccountId, int toAccountId, Money amount) throws SQLException {
+        String lockSql = "SELECT account_id, balance FROM accounts WHERE account_id IN (?, ?) ORDER BY account_id FOR UPDATE";
+        Money fromBalance = null;
+        boolean toFound = false;
+        try (PreparedStatement ps = conn.prepareStatement(lockSql)) {
+            ps.setInt(1, Math.min(fromAccountId, toAccountId));
+            ps.setInt(2, Math.max(fromAccountId, toAccountId));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getInt("account_id") == fromAccountId) {
+                        fromBalance = Money.of(rs.getBigDecimal("balance"));
+                    } else {
+                        toFound = true;
+                    }
+                }
+            }
+        }
+        if (fromBalance == null) throw new SQLException("Source account not found.");
+        if (!toFound) throw new SQLException("Destination account disappeared.");
+
+        if (fromBalance.isLessThan(amount)) {
+            return false;
+        }
+
+        String withdrawSql = "UPDATE accounts SET balance = balance - ? WHERE account_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(withdrawSql)) {
+            ps.setBigDecimal(1, amount.toBigDecimal());
+            ps.setInt(2, fromAccountId);
+            ps.executeUpdate();
+        }
+        credit(conn, toAccountId, amount);
+        return true;
+    }
+
+    /**
+     * CONDITIONAL mode for transfers: a guarded debit plus a plain credit. The two
+     * UPDATEs are issued in ascending account_id order to keep lock acquisition ordered.
+     * @return false if the source account has insufficient funds.
+     */
+    private boolean moveFundsConditional(Connection conn, int fromAccountId, int toAccountId, Money amount) throws SQLException {
+        if (fromAccountId < toAccountId) {
+            if (debitIfSufficient(conn, fromAccountId, amount) == 0) {
+                return rejectDebit(conn, fromAccountId);
+            }
+            if (credit(conn, toAccountId, amount) == 0) {
+                throw new SQLException("Destination account disappeared.");
+            }
+        } else {
+            if (credit(conn, toAccountId, amount) == 0) {
+                throw new SQLException("Destination account disappeared.");
+            }
+            if (debitIfSufficient(conn, fromAccountId, amount) == 0) {
+                return rejectDebit(conn, fromAccountId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deposit or withdrawal on a hot account: credits hit a random shard, debits draw from
+     * one shard, or with consolidate from the base row and every shard (see {@link HotAccounts}).
+     * @throws HotAccounts.ConsolidationRequired if the fast debit failed; retry consolidating.
+     */
+    private boolean applyShardedUpdate(Connection conn, int accountId, int shards, Money amount,
+                                       boolean consolidate) throws SQLException {
+        if (amount.isPositive()) {
+            HOT.credit(conn, accountId, shards, amount);
+            return true;
+        }
+        return debitHot(conn, accountId, amount.negate(), consolidate);
+    }
+
+    /**
+     * Transfers where at least one side is a hot account, in the lock order HotAccounts
+     * documents: first the accounts rows (the plain side, and the hot source's base row
+     * when consolidating) in ascending account_id, then shard rows in ascending account_id.
+     * @return false if the source account has insufficient funds.
+     * @throws HotAccounts.ConsolidationRequired if the fast debit failed; retry consolidating.
+     */
+    private boolean moveFundsSharded(Connection conn, int fromAccountId, int fromShards, int toAccountId,
+                                     int toShards, Money amount, boolean consolidate) throws SQLException {
+        int[] order = (fromAccountId < toAccountId)
+                ? new int[] {fromAccountId, toAccountId}
+                : new int[] {toAccountId, fromAccountId};
+
+        // Phase 1: accounts rows
+        for (int accountId : order) {
+            if (accountId == fromAccountId) {
+                if (fromShards == 0) {
+                    if (debitIfSufficient(conn, fromAccountId, amount) == 0) {
+                        return rejectDebit(conn, fromAccountId);
+                    }
+                } else if (consolidate) {
+                    HotAccounts.lockBase(conn, fromAccountId);
+                }
+            } else if (toShards == 0 && credit(conn, toAccountId, amount) == 0) {
+                throw new SQLException("Destination account disappeared.");
+            }
+        }
+
+        // Phase 2: shard rows
+        for (int accountId : order) {
+            if (accountId == fromAccountId) {
+                if (fromShards > 0 && !debitHot(conn, fromAccountId, amount, consolidate)) {
+                    return false; // Insufficient funds across the base row and all shards
+                }
+            } else if (toShards > 0) {
+                HOT.credit(conn, toAccountId, toShards, amount);
+            }
+        }
+        return true;
+    }
+
+    private boolean debitHot(Connection conn, int accountId, Money amount, boolean consolidate) throws SQLException {
+        if (consolidate) {
+            return HOT.debitConsolidating(conn, accountId, amount);
+        }
+        if (!HOT.debitFromShard(conn, accountId, amount)) {
+            throw new HotAccounts.ConsolidationRequired(accountId);
+        }
+        return true;
+    }
+
+    private boolean rejectDebit(Connection conn, int accountId) throws SQLException {
+        if (getAccountById(conn, accountId) == null) {
+            throw new SQLException("Source account not found.");
+        }
+        return false; // Insufficient funds
+    }
+
+    private int debitIfSufficient(Connection conn, int accountId, Money amount) throws SQLException {
+        String sql = "UPDATE accounts SET balance = balance - ? WHERE account_id = ? AND balance >= ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amount.toBigDecimal());
+            ps.setInt(2, accountId);
+            ps.setBigDecimal(3, amount.toBigDecimal());
+            return ps.executeUpdate();
+        }
+    }
+
+    private int credit(Connection conn, int accountId, Money amount) throws SQLException {
+        String sql = "UPDATE accounts SET balance = balance + ? WHERE account_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amount.toBigDecimal());
+            ps.setInt(2, accountId);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Looks up an account by number on the caller's connection.
+     */
+    private Account getAccountByAccountNumber(Connection conn, String accountNumber) throws SQLException {
+        String sql = ACCOUNT_SELECT + " WHERE a.account_number = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapResultSetToAccount(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Looks up an account on the caller's connection (used only on the slow path
+     * to tell "missing account" apart from "insufficient funds").
+     */
+    private Account getAccountById(Connection conn, int accountId) throws SQLException {
+        String sql = ACCOUNT_SELECT + " WHERE a.account_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapResultSetToAccount(rs) : null;
+            }
+        }
+    }
+
+    // --- Hot Accounts ---
+
+    /**
+     * After a refused debit: true if the account turns out to have been made hot since
+     * this node last loaded the list, so its shards should be tried.
+     */
+    private static boolean becameHot(int accountId) {
+        return HOT != null && HOT.recheck(accountId) > 0;
+    }
+
+    /**
+     * @return The number of sub-balance shards, or 0 for an ordinary account.
+     */
+    private static int shardCount(int accountId) {
+        return (HOT != null) ? HOT.shardCount(accountId) : 0;
+    }
+
+    /**
+     * Marks an account as hot by splitting its balance across sub-balance rows.
+     * @return false if the account does not exist or is already hot.
+     * @throws IllegalStateException if hot accounts are disabled (account.hot.enabled).
+     */
+    public boolean makeHot(int accountId, int shards) {
+        if (HOT == null) {
+            throw new IllegalStateException("Hot accounts are disabled.");
+        }
+        try {
+            return HOT.makeHot(accountId, shards);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // --- Lifecycle ---
+
+    /**
+     * Stops the Bloom filter loader, the hot-account reload/rebalance and the balance
+     * batcher (each only runs if enabled). Called by AppLifecycleListener when the
+     * application is undeployed; updates submitted to the batcher afterwards fail.
+     */
+    public static void stopBackgroundTasks() {
+        if (BATCHER != null) {
+            BATCHER.stop();
+        }
+        if (HOT != null) {
+            HOT.stop();
+        }
+        if (BLOOM_LOADER != null) {
+            BLOOM_LOADER.shutdownNow();
+            try {
+                BLOOM_LOADER.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // --- Metadata Cache ---
+
+    private static AccountMetadata remember(Account account) {
+        AccountMetadata metadata = new AccountMetadata(account.getAccountId(), account.getUserId(),
+                account.getAccountNumber(), account.getAccountType());
+        METADATA_CACHE.put(metadata);
+        return metadata;
+    }
+
+    /**
+     * Checks a transfer destination before a transaction is opened. A number the Bloom
+     * filter has not seen may still exist (opened on another node since the last rebuild),
+     * so it is confirmed with one plain lookup rather than refused outright; a confirmed
+     * miss is refused without a lookup for account.cache.missTtlSeconds.
+     */
+    private boolean isKnownDestination(String accountNumber) {
+        if (!METADATA_CACHE.isUnknownToFilter(accountNumber)) {
+            return true;
+        }
+        if (METADATA_CACHE.isRecentlyMissing(accountNumber)) {
+            return false;
+        }
+        Account account = getAccountByAccountNumber(accountNumber);
+        if (account == null) {
+            METADATA_CACHE.rememberMissing(accountNumber);
+            return false;
+        }
+        METADATA_CACHE.countBloomLookup();
+        remember(account);
+        METADATA_CACHE.addKnownNumber(accountNumber);
+        return true;
+    }
+
+    /**
+     * Rebuilds the Bloom filter of known account numbers. Runs on the loader thread;
+     * until the first load finishes, every destination is looked up normally.
+     */
+    private static void reloadKnownNumbers() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement st = conn.createStatement()) {
+            long count;
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM accounts")) {
+                count = rs.next() ? rs.getLong(1) : 0;
+            }
+            // Leave head room so accounts created before the next refresh keep the error rate low
+            BloomFilter filter = new BloomFilter(Math.max(BLOOM_MIN_EXPECTED, count * 2), 0.01);
+            METADATA_CACHE.beginReload(filter);
+            try (ResultSet rs = st.executeQuery("SELECT account_number FROM accounts")) {
+                while (rs.next()) {
+                    filter.put(rs.getString(1));
+                }
+            }
+            METADATA_CACHE.finishReload(filter);
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace(); // Keep the old filter (or none) and try again next time
+            METADATA_CACHE.finishReload(null);
+        }
+    }
+
+    /**
+     * Exposes the shared metadata cache for statistics.
+     */
+    public static AccountMetadataCache getMetadataCache() {
+        return METADATA_CACHE;
+    }
+
+    // --- Contention Metrics ---
+
+    /**
+     * Number of transfer and single-update attempts that were retried after a deadlock
+     * or lock-wait timeout.
+     */
+    public static long getRetryCount() {
+        return RETRIES.sum();
+    }
+
+    /**
+     * Number of deadlocks reported by the database on the transfer and single-update paths.
+     */
+    public static long getDeadlockCount() {
+        return DEADLOCKS.sum();
+    }
+
+    // --- Group Commit Metrics (0 while account.batch.enabled=false) ---
+
+    /**
+     * Number of group commits (one transaction each) the batcher has run.
+     */
+    public static long getBatchCount() {
+        return (BATCHER != null) ? BATCHER.getBatchCount() : 0;
+    }
+
+    /**
+     * Number of deposits/withdrawals applied through group commits.
+     */
+    public static long getBatchedEntryCount() {
+        return (BATCHER != null) ? BATCHER.getBatchedEntryCount() : 0;
+    }
+
+    /**
+     * Number of group commits that failed and fell back to one transaction per entry.
+     */
+    public static long getBatchFailureCount() {
+        return (BATCHER != null) ? BATCHER.getBatchFailureCount() : 0;
+    }
+
     // --- Helper Methods ---
 
     private String generateUniqueAccountNumber() {
@@ -262,13 +845,40 @@ public class AccountDao {
         return String.format("%010d", rand.nextInt(1_000_000_000));
     }
 
+    /**
+     * MySQL reports deadlocks as SQLState 40001 / error 1213.
+     */
+    private static boolean isDeadlock(SQLException e) {
+        return "40001".equals(e.getSQLState()) || e.getErrorCode() == 1213;
+    }
+
+    /**
+     * MySQL reports "Lock wait timeout exceeded" as error 1205.
+     */
+    private static boolean isLockWaitTimeout(SQLException e) {
+        return e.getErrorCode() == 1205;
+    }
+
+    /**
+     * Sleeps for an exponentially growing, fully jittered delay so that
+     * colliding transfers do not retry in lock-step.
+     */
+    private static void backoff(int attempt) {
+        long ceiling = BASE_BACKOFF_MILLIS << Math.min(attempt, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, ceiling + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private Account mapResultSetToAccount(ResultSet rs) throws SQLException {
         return new Account(
             rs.getInt("account_id"),
             rs.getInt("user_id"),
             rs.getString("account_number"),
             rs.getString("account_type"),
-            rs.getBigDecimal("balance"),
+            rs.getBigDecimal("total_balance"),
             rs.getTimestamp("created_at")
         );
     }
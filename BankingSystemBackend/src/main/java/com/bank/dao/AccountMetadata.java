@@ -0,0 +1,35 @@
+package com.bank.dao;
+
+/**
+ * The rarely-changing facts about an account that authorization and
+ * transfer routing need: its ID, number, owner and type. No balance.
+ */
+public final class AccountMetadata {
+    private final int accountId;
+    private final int userId;
+    private final String accountNumber;
+    private final String accountType;
+
+    public AccountMetadata(int accountId, int userId, String accountNumber, String accountType) {
+        this.accountId = accountId;
+        this.userId = userId;
+        this.accountNumber = accountNumber;
+        this.accountType = accountType;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public String getAccountType() {
+        return accountType;
+    }
+}
@@ -0,0 +1,148 @@
+package com.bank.dao;
+
+import com.bank.util.BloomFilter;
+import com.bank.util.LruCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process cache of account metadata keyed by account ID and by account number,
+ * plus a Bloom filter of every known account number.
+ *
+ * The Bloom filter tells which numbers are certainly known, so transfers to them
+ * go straight to their transaction. It is rebuilt from the database periodically;
+ * accounts created in this JVM are added immediately, but accounts created by
+ * another node are only seen after the next rebuild, so a number missing from the
+ * filter must be confirmed against the database. A confirmed miss is remembered for
+ * missTtlMillis, so repeated transfers to the same unknown number cost one lookup per
+ * TTL; an account opened elsewhere with that number is refused for at most that long.
+ */
+public class AccountMetadataCache {
+    private final LruCache<Integer, AccountMetadata> byId;
+    private final LruCache<String, AccountMetadata> byNumber;
+
+    private volatile BloomFilter knownNumbers; // null until the first load, or when disabled
+    private volatile BloomFilter loadingNumbers; // filter being rebuilt, also receives new numbers
+    private final LruCache<String, Long> missingNumbers; // number -> nanoTime the miss expires
+    private final long missTtlNanos;
+    private final LongAdder bloomRejections = new LongAdder();
+    private final LongAdder bloomLookups = new LongAdder();
+
+    public AccountMetadataCache(int maxSize, long missTtlMillis) {
+        byId = new LruCache<>(maxSize, 16);
+        byNumber = new LruCache<>(maxSize, 16);
+        missingNumbers = new LruCache<>(maxSize, 16);
+        missTtlNanos = TimeUnit.MILLISECONDS.toNanos(missTtlMillis);
+    }
+
+    public AccountMetadata getById(int accountId) {
+        return byId.get(accountId);
+    }
+
+    public AccountMetadata getByNumber(String accountNumber) {
+        return byNumber.get(accountNumber);
+    }
+
+    public void put(AccountMetadata metadata) {
+        byId.put(metadata.getAccountId(), metadata);
+        byNumber.put(metadata.getAccountNumber(), metadata);
+    }
+
+    /**
+     * True if the Bloom filter has been loaded and has not seen this number: no account
+     * had it at the last rebuild, nor was one opened on this node since.
+     */
+    public boolean isUnknownToFilter(String accountNumber) {
+        BloomFilter filter = knownNumbers;
+        return filter != null && !filter.mightContain(accountNumber);
+    }
+
+    /**
+     * True if this number missed the filter and was confirmed not to exist less than
+     * missTtlMillis ago. Counts the rejection.
+     */
+    boolean isRecentlyMissing(String accountNumber) {
+        Long expires = missingNumbers.get(accountNumber);
+        if (expires == null) {
+            return false;
+        }
+        if (System.nanoTime() - expires >= 0) {
+            missingNumbers.invalidate(accountNumber);
+            return false;
+        }
+        bloomRejections.increment();
+        return true;
+    }
+
+    /**
+     * Records a number that missed the filter and was confirmed not to exist.
+     */
+    void rememberMissing(String accountNumber) {
+        bloomLookups.increment();
+        bloomRejections.increment();
+        if (missTtlNanos > 0) {
+            missingNumbers.put(accountNumber, System.nanoTime() + missTtlNanos);
+        }
+    }
+
+    /**
+     * Counts a number that missed the filter but was found in the database.
+     */
+    void countBloomLookup() {
+        bloomLookups.increment();
+    }
+
+    public void addKnownNumber(String accountNumber) {
+        missingNumbers.invalidate(accountNumber);
+        BloomFilter filter = knownNumbers;
+        if (filter != null) {
+            filter.put(accountNumber);
+        }
+        BloomFilter loading = loadingNumbers;
+        if (loading != null) {
+            loading.put(accountNumber);
+        }
+    }
+
+    /**
+     * Starts a rebuild. Numbers added from now on go into both filters, so an
+     * account committed after the rebuild's scan began is not lost.
+     */
+    void beginReload(BloomFilter filter) {
+        loadingNumbers = filter;
+    }
+
+    void finishReload(BloomFilter filter) {
+        if (filter != null) {
+            knownNumbers = filter;
+        }
+        loadingNumbers = null;
+    }
+
+    // --- Metrics ---
+
+    public long getHitCount() {
+        return byId.getHitCount() + byNumber.getHitCount();
+    }
+
+    public long getMissCount() {
+        return byId.getMissCount() + byNumber.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return byId.getEvictionCount() + byNumber.getEvictionCount();
+    }
+
+    public long getBloomRejectionCount() {
+        return bloomRejections.sum();
+    }
+
+    /**
+     * Filter misses confirmed against the database; the rest were refused from the
+     * recent-miss cache.
+     */
+    public long getBloomLookupCount() {
+        return bloomLookups.sum();
+    }
+}
@@ -0,0 +1,181 @@
+package com.bank.dao;
+
+import com.bank.util.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one closing balance per account per day, so point-in-time balances are
+ * a checkpoint plus the transactions since (see TransactionDao.getBalanceAsOf):
+ *
+ *   CREATE TABLE balance_checkpoints (
+ *       account_id      INT NOT NULL,
+ *       checkpoint_date DATE NOT NULL,
+ *       balance         DECIMAL(15,2) NOT NULL,
+ *       PRIMARY KEY (account_id, checkpoint_date),
+ *       INDEX idx_checkpoint_date (checkpoint_date, account_id),
+ *       FOREIGN KEY (account_id) REFERENCES accounts(account_id)
+ *   );
+ *
+ * The checkpoint for day D is the account's current total minus everything logged
+ * from D+1 00:00 on, read in one statement, so it needs no locks and only scans
+ * the rows written since. Accounts are done in keyset chunks, each committed on
+ * its own; a run that dies halfway resumes after the last account it wrote.
+ * Runs once at startup and then daily at the configured time; each run back-fills
+ * every day from the latest checkpoint (which may be half-written) to yesterday,
+ * so days missed while the server was down or a run failed are not left as gaps.
+ */
+class BalanceCheckpointer {
+
+    private static final int CHUNK = 1000;
+
+    private static final String LATEST_SQL = "SELECT MAX(checkpoint_date) FROM balance_checkpoints";
+    private static final String RESUME_SQL =
+            "SELECT MAX(account_id) FROM balance_checkpoints WHERE checkpoint_date = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO balance_checkpoints (account_id, checkpoint_date, balance) VALUES (?, ?, ?)";
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Without a schedule: checkpoints are only written by calling catchUp or checkpoint.
+     */
+    BalanceCheckpointer() {
+        scheduler = null;
+    }
+
+    BalanceCheckpointer(LocalTime runAt) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "balance-checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(this::catchUp);
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(runAt);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(this::catchUp,
+                Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the daily run, waiting briefly for one in progress (a run stopped halfway
+     * resumes at the next start).
+     */
+    void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void catchUp() {
+        try {
+            catchUp(LocalDate.now().minusDays(1));
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace(); // Retried at the next run; as-of queries fall back to other checkpoints
+        }
+    }
+
+    /**
+     * Checkpoints every day from the latest existing checkpoint up to and including lastDay,
+     * oldest first. With no checkpoints at all, only lastDay is written.
+     * @return the number of checkpoints written.
+     */
+    int catchUp(LocalDate lastDay) throws SQLException {
+        LocalDate day = lastDay;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(LATEST_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            Date latest = rs.next() ? rs.getDate(1) : null;
+            if (latest != null && latest.toLocalDate().isBefore(lastDay)) {
+                day = latest.toLocalDate(); // again, in case that run died halfway
+            }
+        }
+
+        int written = 0;
+        for (; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            written += checkpoint(day);
+        }
+        return written;
+    }
+
+    /**
+     * Writes the closing balance of every account for the given day that does not have one yet.
+     * @return the number of checkpoints written.
+     */
+    int checkpoint(LocalDate day) throws SQLException {
+        Date checkpointDate = Date.valueOf(day);
+        Timestamp dayEnd = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        String selectSql = "SELECT a.account_id, " + AccountDao.TOTAL_BALANCE + " - COALESCE((SELECT SUM("
+                + TransactionDao.SIGNED_AMOUNT + ") FROM transactions t WHERE t.account_id = a.account_id"
+                + " AND t.transaction_date >= ?), 0) AS closing_balance"
+                + " FROM accounts a WHERE a.account_id > ? ORDER BY a.account_id LIMIT " + CHUNK;
+
+        int written = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            int after = 0;
+            try (PreparedStatement ps = conn.prepareStatement(RESUME_SQL)) {
+                ps.setDate(1, checkpointDate);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        after = rs.getInt(1); // 0 when the day has not been started
+                    }
+                }
+            }
+
+            while (true) {
+                int rows = 0;
+                conn.setAutoCommit(false);
+                try (PreparedStatement select = conn.prepareStatement(selectSql);
+                     PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+                    select.setTimestamp(1, dayEnd);
+                    select.setInt(2, after);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            after = rs.getInt("account_id");
+                            insert.setInt(1, after);
+                            insert.setDate(2, checkpointDate);
+                            insert.setBigDecimal(3, rs.getBigDecimal("closing_balance"));
+                            insert.addBatch();
+                            rows++;
+                        }
+                    }
+                    if (rows > 0) {
+                        insert.executeBatch();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                written += rows;
+                if (rows < CHUNK) {
+                    return written;
+                }
+            }
+        }
+    }
+}
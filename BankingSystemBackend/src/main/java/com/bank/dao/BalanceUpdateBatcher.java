@@ -0,0 +1,370 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.model.Transaction;
+import com.bank.util.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for deposits and withdrawals.
+ *
+ * Callers hand their update to a single flusher thread and wait. The flusher
+ * collects whatever arrives within maxDelayMicros (up to maxSize entries) and
+ * applies it in one database transaction:
+ *   1. lock every touched account row, in ascending account_id order;
+ *   2. walk the entries in arrival order against the locked balances, rejecting
+ *      any withdrawal that would overdraw its account;
+ *   3. one batched UPDATE per account (net delta) and one batched INSERT of the
+ *      accepted transactions, then a single commit.
+ * An account that has shard rows (made hot, possibly by another node since this
+ * node's last reload) is decided against its base row alone, which is never more
+ * than its total, and its transactions get a NULL balance_after as on the sharded
+ * path. A rejected entry fails on its own; the rest of the batch still commits. If the
+ * batch as a whole fails, every entry is retried one by one on the normal path.
+ *
+ * Anything else thrown by a flush (including an Error) fails that batch's entries
+ * and the flusher carries on; if the flusher thread dies anyway, the next caller
+ * starts a new one. Callers never wait on an entry nobody will complete: after stop(),
+ * entries still queued fail and new ones are refused.
+ */
+class BalanceUpdateBatcher {
+
+    // Fixed IN-list width so the lock query is one cached statement; short chunks repeat the last ID
+    private static final int LOCK_CHUNK = 32;
+    private static final String LOCK_SQL;
+    private static final String SHARDED_SQL;
+    static {
+        StringBuilder in = new StringBuilder("(?");
+        for (int i = 1; i < LOCK_CHUNK; i++) {
+            in.append(", ?");
+        }
+        in.append(")");
+        LOCK_SQL = "SELECT account_id, balance FROM accounts WHERE account_id IN " + in + " ORDER BY account_id FOR UPDATE";
+        SHARDED_SQL = "SELECT DISTINCT account_id FROM account_shards WHERE account_id IN " + in;
+    }
+    private static final String UPDATE_SQL = "UPDATE accounts SET balance = balance + ? WHERE account_id = ?";
+    // How often a waiting caller checks that its entry is still queued or in flight
+    private static final long WAIT_CHECK_MILLIS = 1000;
+    // Queued by stop(): the flusher commits what it took before this and exits
+    private static final Request STOP = new Request(0, null, null);
+
+    private final AccountDao fallback;
+    private final TransactionDao transactionDao = new TransactionDao();
+    private final boolean checkShards;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private volatile Thread flusher;
+    private volatile boolean stopped;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedEntries = new LongAdder();
+    private final LongAdder batchFailures = new LongAdder();
+
+    /**
+     * @param checkShards Whether accounts can have shard rows (account.hot.enabled).
+     */
+    BalanceUpdateBatcher(AccountDao fallback, boolean checkShards, int maxSize, long maxDelayMicros) {
+        this.fallback = fallback;
+        this.checkShards = checkShards;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        startFlusher();
+    }
+
+    private synchronized void startFlusher() {
+        if (!stopped && (flusher == null || !flusher.isAlive())) {
+            Thread t = new Thread(this::run, "balance-batcher");
+            t.setDaemon(true);
+            t.start();
+            flusher = t;
+        }
+    }
+
+    /**
+     * Queues an update and waits for its batch to commit.
+     * @return true if applied, false on insufficient funds, unknown account or error.
+     */
+    boolean submit(int accountId, Money amount, IdempotencyRecord idempotency) {
+        Request request = new Request(accountId, amount, idempotency);
+        queue.add(request);
+        if (stopped) {
+            if (queue.remove(request)) {
+                return false;
+            }
+        } else if (!flusher.isAlive()) {
+            startFlusher();
+        }
+        while (true) {
+            try {
+                return request.result.get(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Still queued or in a batch that is waiting on locks; only a dead flusher strands it
+                if (stopped) {
+                    if (queue.remove(request)) {
+                        return false;
+                    }
+                } else if (!flusher.isAlive()) {
+                    startFlusher();
+                }
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Withdraw the entry if no batch has taken it yet; otherwise its outcome stands
+                if (queue.remove(request)) {
+                    return false;
+                }
+                return request.result.join();
+            }
+        }
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(maxSize);
+        try {
+            boolean last = false;
+            while (!last) {
+                try {
+                    Request first = queue.take();
+                    if (first == STOP) {
+                        return;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxSize) {
+                        long remaining = deadline - System.nanoTime();
+                        Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        if (next == STOP) {
+                            last = true;
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    flush(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable t) {
+                    // Keep the flusher alive (an Error here would otherwise strand every caller)
+                    t.printStackTrace();
+                    failAll(batch, t);
+                }
+                batch.clear();
+            }
+        } finally {
+            // Only reached if the thread is exiting: nothing taken off the queue may be left waiting
+            failAll(batch, new IllegalStateException("Balance batcher stopped."));
+        }
+    }
+
+    /**
+     * Lets the flusher commit the batch it is collecting, waiting up to 5 seconds, then
+     * fails whatever is still queued. Later submits return false.
+     */
+    void stop() {
+        synchronized (this) {
+            stopped = true; // startFlusher() will not replace the flusher from here on
+        }
+        queue.add(STOP);
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Request> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.remove(STOP);
+        failAll(left, new IllegalStateException("Balance batcher stopped."));
+    }
+
+    private static void failAll(List<Request> batch, Throwable cause) {
+        for (Request request : batch) {
+            request.result.completeExceptionally(cause);
+        }
+    }
+
+    private void flush(List<Request> batch) {
+        batches.increment();
+        batchedEntries.add(batch.size());
+        try {
+            applyBatch(batch);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            batchFailures.increment();
+            // Isolate whatever broke the batch: apply each entry in its own transaction
+            for (Request request : batch) {
+                if (!request.result.isDone()) {
+                    request.result.complete(fallback.applyBalanceUpdate(request.accountId, request.amount, request.idempotency));
+                }
+            }
+        }
+    }
+
+    private void applyBatch(List<Request> batch) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            // Step 1: Lock the touched rows in ascending order (same order as transfers)
+            int[] ids = batch.stream().mapToInt(r -> r.accountId).sorted().distinct().toArray();
+            Map<Integer, Long> balances = lockBalances(conn, ids);
+            // Read after the locks, so an account made hot before this batch is seen as such
+            Set<Integer> sharded = checkShards ? shardedAccounts(conn, ids) : Collections.emptySet();
+
+            // Step 2: Decide each entry in arrival order against the running balance
+            Map<Integer, Long> deltas = new TreeMap<>();
+            List<Transaction> accepted = new ArrayList<>(batch.size());
+            List<IdempotencyRecord> idempotencyRecords = new ArrayList<>();
+            boolean[] applied = new boolean[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+                Long balance = balances.get(request.accountId);
+                long delta = request.amount.getMinorUnits();
+                if (balance == null || balance + delta < 0) {
+                    continue; // Unknown account or insufficient funds
+                }
+                long balanceAfter = Math.addExact(balance, delta);
+                balances.put(request.accountId, balanceAfter);
+                deltas.merge(request.accountId, delta, Math::addExact);
+                accepted.add(toTransaction(request, sharded.contains(request.accountId) ? null : balanceAfter));
+                if (request.idempotency != null) {
+                    idempotencyRecords.add(request.idempotency);
+                }
+                applied[i] = true;
+            }
+
+            // Step 3: One net UPDATE per account, one INSERT per accepted entry
+            if (!accepted.isEmpty()) {
+                try (PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
+                    for (Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                        ps.setBigDecimal(1, Money.ofMinor(delta.getValue()).toBigDecimal());
+                        ps.setInt(2, delta.getKey());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                transactionDao.createTransactions(conn, accepted);
+            }
+            if (!idempotencyRecords.isEmpty()) {
+                IdempotencyStore.insert(conn, idempotencyRecords); // a duplicate fails the batch; the fallback sorts it out
+            }
+            conn.commit();
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(applied[i]);
+            }
+        } catch (SQLException | ArithmeticException e) {
+            if (conn != null) try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            throw (e instanceof SQLException) ? (SQLException) e : new SQLException("Balance out of range.", e);
+        } finally {
+            if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { e.printStackTrace(); }
+        }
+    }
+
+    /**
+     * Locks every account in the batch and returns its balance in minor units.
+     * Accounts that do not exist are absent from the map.
+     */
+    private Map<Integer, Long> lockBalances(Connection conn, int[] ids) throws SQLException {
+        Map<Integer, Long> balances = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(LOCK_SQL)) {
+            for (int from = 0; from < ids.length; from += LOCK_CHUNK) {
+                for (int i = 0; i < LOCK_CHUNK; i++) {
+                    ps.setInt(i + 1, ids[Math.min(from + i, ids.length - 1)]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        balances.put(rs.getInt("account_id"), Money.of(rs.getBigDecimal("balance")).getMinorUnits());
+                    }
+                }
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * The accounts among ids that have shard rows, whose base row is not their balance.
+     */
+    private Set<Integer> shardedAccounts(Connection conn, int[] ids) throws SQLException {
+        Set<Integer> sharded = new HashSet<>();
+        try (PreparedStatement ps = conn.prepareStatement(SHARDED_SQL)) {
+            for (int from = 0; from < ids.length; from += LOCK_CHUNK) {
+                for (int i = 0; i < LOCK_CHUNK; i++) {
+                    ps.setInt(i + 1, ids[Math.min(from + i, ids.length - 1)]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        sharded.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return sharded;
+    }
+
+    /**
+     * @param balanceAfterMinor The account's balance after this entry, or null if it is not known exactly.
+     */
+    private static Transaction toTransaction(Request request, Long balanceAfterMinor) {
+        Transaction tx = new Transaction();
+        tx.setAccountId(request.accountId);
+        tx.setTransactionType(request.amount.isPositive() ? "DEPOSIT" : "WITHDRAWAL");
+        tx.setAmount(request.amount.abs().toBigDecimal());
+        tx.setSourceAccountId(request.accountId);
+        tx.setDescription("Transaction");
+        tx.setBalanceAfter(balanceAfterMinor == null ? null : Money.ofMinor(balanceAfterMinor).toBigDecimal());
+        return tx;
+    }
+
+    // --- Metrics ---
+
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    long getBatchedEntryCount() {
+        return batchedEntries.sum();
+    }
+
+    long getBatchFailureCount() {
+        return batchFailures.sum();
+    }
+
+    private static final class Request {
+        final int accountId;
+        final Money amount;
+        final IdempotencyRecord idempotency; // null without an Idempotency-Key
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Request(int accountId, Money amount, IdempotencyRecord idempotency) {
+            this.accountId = accountId;
+            this.amount = amount;
+            this.idempotency = idempotency;
+        }
+    }
+}
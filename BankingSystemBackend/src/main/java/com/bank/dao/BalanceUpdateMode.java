@@ -0,0 +1,20 @@
+package com.bank.dao;
+
+/**
+ * Execution strategy used by AccountDao for deposits, withdrawals and transfers.
+ * Selected with the "account.balanceUpdateMode" setting.
+ */
+public enum BalanceUpdateMode {
+    /** Lock the row(s) with SELECT ... FOR UPDATE, check funds in Java, then UPDATE. */
+    LOCKING,
+    /** Check funds and move money in one guarded UPDATE; the affected-row count decides the outcome. */
+    CONDITIONAL;
+
+    static BalanceUpdateMode fromConfig(String value) {
+        try {
+            return valueOf(value.toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return LOCKING;
+        }
+    }
+}
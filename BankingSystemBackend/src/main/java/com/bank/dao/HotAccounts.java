@@ -0,0 +1,360 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.util.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sub-balance shards for "hot" accounts (merchant settlement, payroll sources)
+ * whose single accounts row would otherwise serialize every transfer.
+ *
+ * A hot account's balance is accounts.balance plus the sum of its shard rows:
+ *
+ *   CREATE TABLE account_shards (
+ *       account_id INT NOT NULL,
+ *       shard_no   INT NOT NULL,
+ *       balance    DECIMAL(15,2) NOT NULL DEFAULT 0.00,
+ *       PRIMARY KEY (account_id, shard_no),
+ *       FOREIGN KEY (account_id) REFERENCES accounts(account_id)
+ *   );
+ *
+ * Credits go to a random shard. Debits go to one shard that (by a non-locking
+ * read) has enough funds; if none does, or it lost a race, the caller rolls back
+ * and retries the whole transaction consolidating: it locks the account's base row
+ * with its other accounts rows, then every shard, and draws across them. A background
+ * job periodically evens the shards out and sweeps accounts.balance into them.
+ *
+ * Lock order, on every path: all accounts rows a transaction needs (plain accounts,
+ * and the base row of a hot account being consolidated, rebalanced or made hot) in
+ * ascending account_id, then shard rows in ascending (account_id, shard_no). The fast
+ * paths never lock a base row and lock at most one shard per account, which is why a
+ * failed fast debit restarts rather than taking the base row after a shard.
+ *
+ * The list of hot accounts is reloaded in the background every refreshMillis. Because
+ * the total always includes accounts.balance, a node that does not yet know an account
+ * is hot still credits it correctly; a debit it rejects for lack of funds is re-checked
+ * with {@link #recheck(int)} and retried on the sharded path.
+ */
+class HotAccounts {
+
+    private static final String SHARD_BALANCES_SQL = "SELECT shard_no, balance FROM account_shards WHERE account_id = ?";
+    private static final String CREDIT_SHARD_SQL =
+            "UPDATE account_shards SET balance = balance + ? WHERE account_id = ? AND shard_no = ?";
+    private static final String DEBIT_SHARD_SQL =
+            "UPDATE account_shards SET balance = balance - ? WHERE account_id = ? AND shard_no = ? AND balance >= ?";
+    private static final String LOCK_BASE_SQL = "SELECT balance FROM accounts WHERE account_id = ? FOR UPDATE";
+    private static final String LOCK_SHARDS_SQL =
+            "SELECT shard_no, balance FROM account_shards WHERE account_id = ? ORDER BY shard_no FOR UPDATE";
+    private static final String SET_SHARD_SQL = "UPDATE account_shards SET balance = ? WHERE account_id = ? AND shard_no = ?";
+    private static final String SET_BASE_SQL = "UPDATE accounts SET balance = ? WHERE account_id = ?";
+    private static final String INSERT_SHARD_SQL = "INSERT INTO account_shards (account_id, shard_no, balance) VALUES (?, ?, ?)";
+
+    private volatile Map<Integer, Integer> shardCounts = new ConcurrentHashMap<>(); // account_id -> shards
+    private final ScheduledExecutorService background;
+
+    HotAccounts(long refreshMillis, long rebalanceMillis) {
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-accounts");
+            t.setDaemon(true);
+            return t;
+        });
+        background.scheduleWithFixedDelay(this::reload, 0, Math.max(1, refreshMillis), TimeUnit.MILLISECONDS);
+        if (rebalanceMillis > 0) {
+            background.scheduleWithFixedDelay(this::rebalanceAll, rebalanceMillis, rebalanceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the reload and rebalance runs, waiting briefly for one in progress.
+     */
+    void stop() {
+        background.shutdownNow();
+        try {
+            background.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of shards, or 0 if the account is not hot (or not known to be yet).
+     */
+    int shardCount(int accountId) {
+        Integer shards = shardCounts.get(accountId);
+        return shards == null ? 0 : shards;
+    }
+
+    /**
+     * Runs on the background thread; a failed load keeps the previous view until the next run.
+     */
+    private void reload() {
+        Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT account_id, COUNT(*) FROM account_shards GROUP BY account_id")) {
+            while (rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+            shardCounts = counts;
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Checks whether an account this node treats as plain has been made hot since the
+     * last reload, e.g. after a debit on its base row was refused. Borrows a connection,
+     * so call it after the caller's own connection has been returned.
+     * @return The number of shards now known for the account (0 if it is not hot).
+     */
+    int recheck(int accountId) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM account_shards WHERE account_id = ?")) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                int shards = rs.next() ? rs.getInt(1) : 0;
+                if (shards > 0) {
+                    shardCounts.put(accountId, shards);
+                }
+                return shards;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Thrown when a fast-path debit could not be served by one shard. The caller rolls the
+     * transaction back and runs it again consolidating, so the base row is locked before
+     * any shard rather than after one.
+     */
+    static final class ConsolidationRequired extends SQLException {
+        ConsolidationRequired(int accountId) {
+            super("Debit on hot account " + accountId + " needs the consolidating path.");
+        }
+    }
+
+    // --- Money Movement (caller's transaction) ---
+
+    void credit(Connection conn, int accountId, int shards, Money amount) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(CREDIT_SHARD_SQL)) {
+            ps.setBigDecimal(1, amount.toBigDecimal());
+            ps.setInt(2, accountId);
+            ps.setInt(3, ThreadLocalRandom.current().nextInt(shards));
+            if (ps.executeUpdate() == 0) {
+                throw new SQLException("Shard missing for hot account " + accountId + ".");
+            }
+        }
+    }
+
+    /**
+     * Fast path: takes the amount from one shard without locking the base row.
+     * @return false if no single shard could cover it (or the one tried lost a race);
+     *         the caller must then roll back and retry with {@link #debitConsolidating}.
+     */
+    boolean debitFromShard(Connection conn, int accountId, Money amount) throws SQLException {
+        // One shard that looked big enough in a non-locking read
+        List<Integer> candidates = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(SHARD_BALANCES_SQL)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (!Money.of(rs.getBigDecimal("balance")).isLessThan(amount)) {
+                        candidates.add(rs.getInt("shard_no"));
+                    }
+                }
+            }
+        }
+        if (!candidates.isEmpty()) {
+            int shard = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+            try (PreparedStatement ps = conn.prepareStatement(DEBIT_SHARD_SQL)) {
+                ps.setBigDecimal(1, amount.toBigDecimal());
+                ps.setInt(2, accountId);
+                ps.setInt(3, shard);
+                ps.setBigDecimal(4, amount.toBigDecimal());
+                return ps.executeUpdate() == 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Slow path: lock the account row and every shard, then draw from them in order.
+     * Any other accounts rows the transaction needs must already be locked (see the lock
+     * order above); the base row may be too.
+     * @return false if the whole account (base plus shards) cannot cover the amount.
+     */
+    boolean debitConsolidating(Connection conn, int accountId, Money amount) throws SQLException {
+        long base = lockBase(conn, accountId);
+        long[] balances = lockShards(conn, accountId);
+        long total = base;
+        for (long balance : balances) {
+            total = Math.addExact(total, balance);
+        }
+        long remaining = amount.getMinorUnits();
+        if (total < remaining) {
+            return false;
+        }
+        for (int shard = 0; shard < balances.length && remaining > 0; shard++) {
+            long take = Math.min(balances[shard], remaining);
+            if (take > 0) {
+                setShard(conn, accountId, shard, balances[shard] - take);
+                remaining -= take;
+            }
+        }
+        if (remaining > 0) {
+            setBase(conn, accountId, base - remaining);
+        }
+        return true;
+    }
+
+    // --- Administration ---
+
+    /**
+     * Splits an account's balance evenly across new shard rows, in its own transaction.
+     * @return false if the account does not exist or is already hot.
+     */
+    boolean makeHot(int accountId, int shards) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            long base;
+            try {
+                base = lockBase(conn, accountId);
+            } catch (SQLException e) {
+                conn.rollback();
+                return false; // Account not found
+            }
+            if (lockShards(conn, accountId).length > 0) {
+                conn.rollback();
+                return false;
+            }
+            long[] split = split(base, shards);
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_SHARD_SQL)) {
+                for (int shard = 0; shard < shards; shard++) {
+                    ps.setInt(1, accountId);
+                    ps.setInt(2, shard);
+                    ps.setBigDecimal(3, Money.ofMinor(split[shard]).toBigDecimal());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            setBase(conn, accountId, 0);
+            conn.commit();
+
+            shardCounts.put(accountId, shards);
+            return true;
+        } catch (SQLException e) {
+            if (conn != null) try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            throw e;
+        } finally {
+            if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { e.printStackTrace(); }
+        }
+    }
+
+    /**
+     * Evens out the shards of every hot account and sweeps accounts.balance into them.
+     */
+    void rebalanceAll() {
+        for (Integer accountId : shardCounts.keySet()) {
+            Connection conn = null;
+            try {
+                conn = DatabaseConnection.getConnection();
+                conn.setAutoCommit(false);
+                long total = lockBase(conn, accountId);
+                long[] balances = lockShards(conn, accountId);
+                for (long balance : balances) {
+                    total = Math.addExact(total, balance);
+                }
+                long[] split = split(total, balances.length);
+                for (int shard = 0; shard < balances.length; shard++) {
+                    if (split[shard] != balances[shard]) {
+                        setShard(conn, accountId, shard, split[shard]);
+                    }
+                }
+                setBase(conn, accountId, 0);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                e.printStackTrace();
+                if (conn != null) try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            } finally {
+                if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    // --- Helpers ---
+
+    private static long[] split(long total, int shards) {
+        long[] split = new long[shards];
+        if (shards == 0) {
+            return split;
+        }
+        long each = total / shards;
+        for (int shard = 0; shard < shards; shard++) {
+            split[shard] = each;
+        }
+        split[0] += total - each * shards; // remainder cents go to shard 0
+        return split;
+    }
+
+    static long lockBase(Connection conn, int accountId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(LOCK_BASE_SQL)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Account not found.");
+                }
+                return Money.of(rs.getBigDecimal("balance")).getMinorUnits();
+            }
+        }
+    }
+
+    /**
+     * @return Shard balances indexed by shard_no (shards are numbered 0..n-1).
+     */
+    private static long[] lockShards(Connection conn, int accountId) throws SQLException {
+        List<Long> balances = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(LOCK_SHARDS_SQL)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    balances.add(Money.of(rs.getBigDecimal("balance")).getMinorUnits());
+                }
+            }
+        }
+        return balances.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static void setShard(Connection conn, int accountId, int shard, long balanceMinor) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SET_SHARD_SQL)) {
+            ps.setBigDecimal(1, Money.ofMinor(balanceMinor).toBigDecimal());
+            ps.setInt(2, accountId);
+            ps.setInt(3, shard);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void setBase(Connection conn, int accountId, long balanceMinor) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SET_BASE_SQL)) {
+            ps.setBigDecimal(1, Money.ofMinor(balanceMinor).toBigDecimal());
+            ps.setInt(2, accountId);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.bank.dao;
+
+/**
+ * The stored outcome of a request sent with an Idempotency-Key: enough to answer
+ * a retry with the original response, and the hash of the original request so a
+ * reused key with a different payload can be refused.
+ */
+public final class IdempotencyRecord {
+    private final int userId;
+    private final String key;
+    private final String requestHash;
+    private final int statusCode;
+    private final String responseBody;
+
+    public IdempotencyRecord(int userId, String key, String requestHash, int statusCode, String responseBody) {
+        this.userId = userId;
+        this.key = key;
+        this.requestHash = requestHash;
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+}
@@ -0,0 +1,319 @@
+package com.bank.dao;
+
+import com.bank.util.AppConfig;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.LruCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedupe for retried POSTs that carry an Idempotency-Key header.
+ *
+ * The outcome of a successful request is written to idempotency_keys in the same
+ * database transaction as the money movement (see AccountDao), so a key is
+ * recorded if and only if its transfer committed:
+ *
+ *   CREATE TABLE idempotency_keys (
+ *       user_id         INT NOT NULL,
+ *       idempotency_key VARCHAR(100) NOT NULL,
+ *       request_hash    CHAR(64) NOT NULL,
+ *       status_code     INT NOT NULL,
+ *       response_body   VARCHAR(1000) NOT NULL,
+ *       created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+ *       PRIMARY KEY (user_id, idempotency_key),
+ *       INDEX idx_idempotency_created (created_at)
+ *   );
+ *
+ * Recent outcomes are also kept in an LRU, so most retries are answered without
+ * touching the database at all. Within this JVM, a duplicate that arrives while
+ * the first request is still running waits briefly for it instead of racing it,
+ * and is told to retry (409 with Retry-After) if it is still running then; across
+ * nodes, the primary key makes the loser's transaction fail and roll back, and it
+ * then answers from the winner's row. Failed requests store nothing: nothing was
+ * applied, so a retry simply runs again. Rows are purged after retentionHours.
+ */
+public class IdempotencyStore {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    private static final boolean ENABLED = AppConfig.getBoolean("idempotency.enabled", false);
+    private static final long WAIT_MILLIS = AppConfig.getLong("idempotency.waitMillis", 2_000);
+    private static final long RETENTION_MILLIS = AppConfig.getLong("idempotency.retentionHours", 24) * 3_600_000L;
+
+    private static final String SELECT_SQL = "SELECT request_hash, status_code, response_body FROM idempotency_keys " +
+                                             "WHERE user_id = ? AND idempotency_key = ?";
+    private static final String INSERT_SQL = "INSERT INTO idempotency_keys " +
+                                             "(user_id, idempotency_key, request_hash, status_code, response_body) " +
+                                             "VALUES (?, ?, ?, ?, ?)";
+    private static final String PURGE_SQL = "DELETE FROM idempotency_keys WHERE created_at < ?";
+
+    private static final LruCache<String, IdempotencyRecord> RECENT =
+            new LruCache<>(AppConfig.getInt("idempotency.cache.size", 10_000), 16);
+    private static final ConcurrentHashMap<String, CompletableFuture<IdempotencyRecord>> IN_FLIGHT =
+            new ConcurrentHashMap<>();
+
+    private static final LongAdder REPLAYS = new LongAdder();
+    private static final LongAdder WAITS = new LongAdder();
+
+    private static final ScheduledExecutorService PURGER;
+    static {
+        if (ENABLED) {
+            PURGER = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "idempotency-purger");
+                t.setDaemon(true);
+                return t;
+            });
+            PURGER.scheduleWithFixedDelay(IdempotencyStore::purgeExpired, 1, 60, TimeUnit.MINUTES);
+        } else {
+            PURGER = null;
+        }
+    }
+
+    /**
+     * Stops the hourly purge of expired keys. Called by AppLifecycleListener when the
+     * application is undeployed.
+     */
+    public static void stopBackgroundTasks() {
+        if (PURGER == null) {
+            return;
+        }
+        PURGER.shutdownNow();
+        try {
+            PURGER.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether Idempotency-Key headers are honoured (idempotency.enabled; needs the table above).
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Claims a key for one execution of a request.
+     * @param fingerprint Anything that identifies the request (endpoint plus payload);
+     *                    it is hashed, never stored.
+     * @return A claim that either carries the stored outcome to replay or makes the
+     *         caller the key's owner; null if another request with the same key was
+     *         still running after idempotency.waitMillis.
+     */
+    public Claim claim(int userId, String key, String fingerprint) {
+        String id = userId + ":" + key;
+        String requestHash = sha256Hex(fingerprint);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+        while (true) {
+            IdempotencyRecord recent = RECENT.get(id);
+            if (recent != null) {
+                REPLAYS.increment();
+                return new Claim(userId, key, id, requestHash, null, recent);
+            }
+
+            CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+            CompletableFuture<IdempotencyRecord> running = IN_FLIGHT.putIfAbsent(id, mine);
+            if (running == null) {
+                // Ours on this node; an earlier attempt may still have committed (here or elsewhere)
+                IdempotencyRecord stored = load(userId, key);
+                if (stored != null) {
+                    RECENT.put(id, stored);
+                    IN_FLIGHT.remove(id, mine);
+                    mine.complete(stored);
+                    REPLAYS.increment();
+                    return new Claim(userId, key, id, requestHash, null, stored);
+                }
+                return new Claim(userId, key, id, requestHash, mine, null);
+            }
+
+            WAITS.increment();
+            try {
+                IdempotencyRecord outcome = running.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (outcome != null) {
+                    REPLAYS.increment();
+                    return new Claim(userId, key, id, requestHash, null, outcome);
+                }
+                // The first execution failed and stored nothing: try to run it ourselves
+            } catch (TimeoutException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                // Never completed exceptionally; treat like a failed first execution
+            }
+        }
+    }
+
+    /**
+     * Reads a stored outcome from the database, or null if there is none (or the read failed).
+     */
+    private static IdempotencyRecord load(int userId, String key) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SELECT_SQL)) {
+            ps.setInt(1, userId);
+            ps.setString(2, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new IdempotencyRecord(userId, key, rs.getString("request_hash"),
+                            rs.getInt("status_code"), rs.getString("response_body"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Records outcomes *within* the caller's database transaction. A key that was
+     * already recorded fails the INSERT, and with it the caller's transaction.
+     */
+    static void insert(Connection conn, List<IdempotencyRecord> records) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            for (IdempotencyRecord record : records) {
+                ps.setInt(1, record.getUserId());
+                ps.setString(2, record.getKey());
+                ps.setString(3, record.getRequestHash());
+                ps.setInt(4, record.getStatusCode());
+                ps.setString(5, record.getResponseBody());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void purgeExpired() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(PURGE_SQL)) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - RETENTION_MILLIS));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String sha256Hex(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // --- Metrics ---
+
+    public static long getReplayCount() {
+        return REPLAYS.sum();
+    }
+
+    /**
+     * Duplicates that had to wait for a concurrent first execution.
+     */
+    public static long getWaitCount() {
+        return WAITS.sum();
+    }
+
+    /**
+     * One request's hold on a key. Either isReplay() and getReplay() is the stored
+     * outcome to send back, or the caller owns the key: it passes record(...) to the
+     * DAO, then calls complete(record) on success (or findCommitted() on failure),
+     * and always calls release().
+     */
+    public static final class Claim {
+        private final int userId;
+        private final String key;
+        private final String id;
+        private final String requestHash;
+        private final CompletableFuture<IdempotencyRecord> running; // null for a replay
+        private final IdempotencyRecord replay;
+
+        private Claim(int userId, String key, String id, String requestHash,
+                      CompletableFuture<IdempotencyRecord> running, IdempotencyRecord replay) {
+            this.userId = userId;
+            this.key = key;
+            this.id = id;
+            this.requestHash = requestHash;
+            this.running = running;
+            this.replay = replay;
+        }
+
+        public boolean isReplay() {
+            return replay != null;
+        }
+
+        public IdempotencyRecord getReplay() {
+            return replay;
+        }
+
+        /**
+         * Whether a stored outcome belongs to this same request (and not to a
+         * different request that reused the key).
+         */
+        public boolean matches(IdempotencyRecord record) {
+            return record.getRequestHash().equals(requestHash);
+        }
+
+        /**
+         * The outcome to store if the request succeeds with this response.
+         */
+        public IdempotencyRecord record(int statusCode, String responseBody) {
+            return new IdempotencyRecord(userId, key, requestHash, statusCode, responseBody);
+        }
+
+        /**
+         * The owner's request committed: remember its outcome and wake any waiting duplicates.
+         */
+        public void complete(IdempotencyRecord record) {
+            if (running != null) {
+                RECENT.put(id, record);
+                IN_FLIGHT.remove(id, running);
+                running.complete(record);
+            }
+        }
+
+        /**
+         * After a failed execution: the outcome another node committed under this key
+         * meanwhile (its INSERT is what failed ours), or null if there is none.
+         */
+        public IdempotencyRecord findCommitted() {
+            IdempotencyRecord stored = load(userId, key);
+            if (stored != null) {
+                complete(stored);
+            }
+            return stored;
+        }
+
+        /**
+         * Gives the key up. Duplicates still waiting on a request that did not
+         * complete() run again themselves.
+         */
+        public void release() {
+            if (running != null && !running.isDone()) {
+                IN_FLIGHT.remove(id, running);
+                running.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.bank.dao;
+
+import com.bank.util.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared revocation list for signed session tokens (auth.mode=TOKEN). Only tokens
+ * logged out before they expire are listed, and only until they would have
+ * expired, so the table stays small:
+ *
+ *   CREATE TABLE revoked_tokens (
+ *       token_id   BIGINT PRIMARY KEY,
+ *       expires_at TIMESTAMP NOT NULL,
+ *       INDEX idx_revoked_expires (expires_at)
+ *   );
+ */
+public class RevokedTokenDao {
+
+    private static final String INSERT_SQL = "INSERT INTO revoked_tokens (token_id, expires_at) VALUES (?, ?)";
+    private static final String ACTIVE_SQL = "SELECT token_id, expires_at FROM revoked_tokens WHERE expires_at > ?";
+    private static final String PURGE_SQL = "DELETE FROM revoked_tokens WHERE expires_at <= ?";
+
+    /**
+     * @param expiresAt Epoch seconds at which the token expires anyway.
+     * @return true if the revocation was recorded.
+     */
+    public boolean revoke(long tokenId, long expiresAt) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            ps.setLong(1, tokenId);
+            ps.setTimestamp(2, new Timestamp(expiresAt * 1000));
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return tokenId -> expiresAt (epoch seconds) for every still-unexpired revoked
+     *         token, or null if the read failed.
+     */
+    public Map<Long, Long> getActiveRevocations() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(ACTIVE_SQL)) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            Map<Long, Long> revoked = new HashMap<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    revoked.put(rs.getLong("token_id"), rs.getTimestamp("expires_at").getTime() / 1000);
+                }
+            }
+            return revoked;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void purgeExpired() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(PURGE_SQL)) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
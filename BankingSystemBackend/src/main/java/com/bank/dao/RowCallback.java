@@ -0,0 +1,12 @@
+package com.bank.dao;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time from a streaming DAO query.
+ * Typically writes each row straight to an HTTP response.
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+    void accept(T row) throws IOException;
+}
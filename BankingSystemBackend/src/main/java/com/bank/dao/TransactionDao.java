@@ -1,21 +1,100 @@
 package com.bank.dao;
 
+import com.bank.model.Money;
 import com.bank.model.Transaction;
+import com.bank.model.TransactionPage;
+import com.bank.util.AppConfig;
 import com.bank.util.DatabaseConnection;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
+/**
+ * Transaction log. Each row carries balance_after, the account's balance once it
+ * was applied (NULL for hot accounts, whose balance is spread over shard rows,
+ * and for rows written before the column existed):
+ *
+ *   ALTER TABLE transactions ADD COLUMN balance_after DECIMAL(15,2) NULL;
+ *
+ * Point-in-time balances use the daily checkpoints described in BalanceCheckpointer.
+ */
 public class TransactionDao {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final BalanceCheckpointer CHECKPOINTER = AppConfig.getBoolean("transactions.checkpoint.enabled", false)
+            ? new BalanceCheckpointer(LocalTime.parse(AppConfig.getString("transactions.checkpoint.time", "00:05")))
+            : null;
+
+    private static final String INSERT_SQL = "INSERT INTO transactions (account_id, transaction_type, amount, " +
+                                             "source_account_id, destination_account_id, description, balance_after) " +
+                                             "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // Same row, with balance_after copied from the account in the same statement
+    private static final String INSERT_FROM_ACCOUNT_SQL = "INSERT INTO transactions (account_id, transaction_type, amount, " +
+                                                          "source_account_id, destination_account_id, description, balance_after) " +
+                                                          "SELECT ?, ?, ?, ?, ?, ?, balance FROM accounts WHERE account_id = ?";
+
+    // Signed effect of a row on its account: withdrawals are stored as positive amounts
+    static final String SIGNED_AMOUNT = "CASE WHEN t.transaction_type = 'WITHDRAWAL' THEN -t.amount ELSE t.amount END";
+
+    private static final String STATEMENT_SQL = "SELECT * FROM transactions " +
+                                                "WHERE account_id = ? AND transaction_date >= ? AND transaction_date <= ? " +
+                                                "ORDER BY transaction_date, transaction_id";
+    private static final String CHECKPOINT_SQL = "SELECT checkpoint_date, balance FROM balance_checkpoints " +
+                                                 "WHERE account_id = ? AND checkpoint_date < ? " +
+                                                 "ORDER BY checkpoint_date DESC LIMIT 1";
+    private static final String LATER_CHECKPOINT_SQL = "SELECT checkpoint_date, balance FROM balance_checkpoints " +
+                                                       "WHERE account_id = ? AND checkpoint_date >= ? " +
+                                                       "ORDER BY checkpoint_date LIMIT 1";
+    private static final String RANGE_SUM_SQL = "SELECT COALESCE(SUM(" + SIGNED_AMOUNT + "), 0) FROM transactions t " +
+                                                "WHERE t.account_id = ? AND t.transaction_date >= ? AND t.transaction_date <= ?";
+    // Rows after asOf up to the end of a later checkpoint's day, to walk that checkpoint back
+    private static final String LATER_RANGE_SUM_SQL = "SELECT COALESCE(SUM(" + SIGNED_AMOUNT + "), 0) FROM transactions t " +
+                                                      "WHERE t.account_id = ? AND t.transaction_date > ? AND t.transaction_date < ?";
+
+    // Keyset page queries, indexed by (account filter ? 1 : 0) | (cursor ? 2 : 0). Fixed
+    // strings so each shape is prepared once per connection by the statement cache.
+    private static final String[] PAGE_SQL = new String[4];
+    static {
+        for (int shape = 0; shape < PAGE_SQL.length; shape++) {
+            StringBuilder sql = new StringBuilder("SELECT * FROM transactions WHERE 1 = 1");
+            if ((shape & 1) != 0) {
+                sql.append(" AND account_id = ?");
+            }
+            if ((shape & 2) != 0) {
+                sql.append(" AND (transaction_date < ? OR (transaction_date = ? AND transaction_id < ?))");
+            }
+            sql.append(" ORDER BY transaction_date DESC, transaction_id DESC LIMIT ?");
+            PAGE_SQL[shape] = sql.toString();
+        }
+    }
+
+    /**
+     * Stops the daily balance checkpoint (transactions.checkpoint.enabled), if it runs.
+     * Called by AppLifecycleListener when the application is undeployed.
+     */
+    public static void stopBackgroundTasks() {
+        if (CHECKPOINTER != null) {
+            CHECKPOINTER.stop();
+        }
+    }
+
     /**
      * Logs a new transaction. This method is designed to be called
-     * *within* another DAO's database transaction.
+     * *within* another DAO's database transaction, after the account's balance
+     * has been updated: balance_after is copied from the (locked) accounts row.
      * @param conn The existing database connection.
      * @param accountId The primary account involved.
      * @param type "DEPOSIT", "WITHDRAWAL", "TRANSFER"
@@ -24,27 +103,13 @@ public class TransactionDao {
      * @param destId Destination account ID (nullable)
      * @param description A description of the transaction.
      */
-    public boolean createTransaction(Connection conn, int accountId, String type, BigDecimal amount, 
+    public boolean createTransaction(Connection conn, int accountId, String type, Money amount, 
                                      Integer sourceId, Integer destId, String description) throws SQLException {
         
-        String sql = "INSERT INTO transactions (account_id, transaction_type, amount, " +
-                     "source_account_id, destination_account_id, description) " +
-                     "VALUES (?, ?, ?, ?, ?, ?)";
-        
         // We do *not* close the connection here, as it's managed by the calling method.
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, accountId);
-            ps.setString(2, type);
-            ps.setBigDecimal(3, amount);
-            
-            // Handle nullable foreign keys
-            if (sourceId != null) ps.setInt(4, sourceId);
-            else ps.setNull(4, java.sql.Types.INTEGER);
-            
-            if (destId != null) ps.setInt(5, destId);
-            else ps.setNull(5, java.sql.Types.INTEGER);
-            
-            ps.setString(6, description);
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_FROM_ACCOUNT_SQL)) {
+            bindTransaction(ps, accountId, type, amount.toBigDecimal(), sourceId, destId, description);
+            ps.setInt(7, accountId);
 
             int rowsAffected = ps.executeUpdate();
             return rowsAffected > 0;
@@ -52,6 +117,36 @@ public class TransactionDao {
         // Let SQLException propagate up to be handled by the calling method's rollback logic
     }
 
+    /**
+     * Same as above, with an explicit balance_after (null when it is not known exactly).
+     */
+    public boolean createTransaction(Connection conn, int accountId, String type, Money amount,
+                                     Integer sourceId, Integer destId, String description,
+                                     Money balanceAfter) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            bindTransaction(ps, accountId, type, amount.toBigDecimal(), sourceId, destId, description);
+            ps.setBigDecimal(7, balanceAfter == null ? null : balanceAfter.toBigDecimal());
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Logs several transactions with one JDBC batch, *within* the caller's
+     * database transaction. Uses accountId, transactionType, amount,
+     * sourceAccountId, destinationAccountId, description and balanceAfter of each entry.
+     */
+    public void createTransactions(Connection conn, List<Transaction> transactions) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            for (Transaction tx : transactions) {
+                bindTransaction(ps, tx.getAccountId(), tx.getTransactionType(), tx.getAmount(),
+                        tx.getSourceAccountId(), tx.getDestinationAccountId(), tx.getDescription());
+                ps.setBigDecimal(7, tx.getBalanceAfter());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
     /**
      * Retrieves all transactions for a specific account.
      */
@@ -95,7 +190,217 @@ public class TransactionDao {
         return transactions;
     }
 
-    
+    /**
+     * (Admin) Streams every transaction, newest first, without materializing the result.
+     * Rows come from a forward-only cursor and are handed to the callback as they arrive.
+     */
+    public void streamAllTransactions(RowCallback<Transaction> callback) throws SQLException, IOException {
+        String sql = "SELECT * FROM transactions ORDER BY transaction_date DESC, transaction_id DESC";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            DatabaseConnection.enableStreaming(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(mapResultSetToTransaction(rs));
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams one account's transactions with from <= transaction_date <= to, oldest
+     * first, from a forward-only cursor (a statement export). One index range scan on
+     * (account_id, transaction_date, transaction_id); rows are never materialized.
+     */
+    public void streamStatement(int accountId, Timestamp from, Timestamp to, RowCallback<Transaction> callback)
+            throws SQLException, IOException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(STATEMENT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            ps.setInt(1, accountId);
+            ps.setTimestamp(2, from);
+            ps.setTimestamp(3, to);
+            DatabaseConnection.enableStreaming(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(mapResultSetToTransaction(rs));
+                }
+            }
+        }
+    }
+
+    /**
+     * The account's balance as of the given instant (inclusive): the nearest daily
+     * checkpoint before that day plus the transactions logged since, so the scan is
+     * bounded by one day's rows however long the history is. Before the first
+     * checkpoint it walks back from the nearest later one instead, and without any
+     * (checkpointing off, or a new account) from the current balance.
+     * @return The balance, or null if the account does not exist or the query failed.
+     */
+    public Money getBalanceAsOf(int accountId, Timestamp asOf) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            Date asOfDate = Date.valueOf(asOf.toLocalDateTime().toLocalDate());
+            Date checkpointDate = null;
+            BigDecimal checkpointBalance = null;
+            try (PreparedStatement ps = conn.prepareStatement(CHECKPOINT_SQL)) {
+                ps.setInt(1, accountId);
+                ps.setDate(2, asOfDate);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        checkpointDate = rs.getDate("checkpoint_date");
+                        checkpointBalance = rs.getBigDecimal("balance");
+                    }
+                }
+            }
+
+            if (checkpointDate != null) {
+                try (PreparedStatement ps = conn.prepareStatement(RANGE_SUM_SQL)) {
+                    ps.setInt(1, accountId);
+                    ps.setTimestamp(2, Timestamp.valueOf(checkpointDate.toLocalDate().plusDays(1).atStartOfDay()));
+                    ps.setTimestamp(3, asOf);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        return Money.of(checkpointBalance.add(rs.getBigDecimal(1)));
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(LATER_CHECKPOINT_SQL)) {
+                ps.setInt(1, accountId);
+                ps.setDate(2, asOfDate);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        checkpointDate = rs.getDate("checkpoint_date");
+                        checkpointBalance = rs.getBigDecimal("balance");
+                    }
+                }
+            }
+            if (checkpointDate != null) {
+                try (PreparedStatement ps = conn.prepareStatement(LATER_RANGE_SUM_SQL)) {
+                    ps.setInt(1, accountId);
+                    ps.setTimestamp(2, asOf);
+                    ps.setTimestamp(3, Timestamp.valueOf(checkpointDate.toLocalDate().plusDays(1).atStartOfDay()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        return Money.of(checkpointBalance.subtract(rs.getBigDecimal(1)));
+                    }
+                }
+            }
+
+            String sql = "SELECT " + AccountDao.TOTAL_BALANCE + " - COALESCE((SELECT SUM(" + SIGNED_AMOUNT + ") " +
+                         "FROM transactions t WHERE t.account_id = a.account_id AND t.transaction_date > ?), 0) " +
+                         "FROM accounts a WHERE a.account_id = ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setTimestamp(1, asOf);
+                ps.setInt(2, accountId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? Money.of(rs.getBigDecimal(1)) : null;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Keyset-paginated history, newest first, ordered by (transaction_date, transaction_id).
+     * Each page is one index range scan, so its cost does not grow with the table.
+     * Expects indexes on (account_id, transaction_date, transaction_id) and
+     * (transaction_date, transaction_id).
+     * @param accountId Restrict to one account, or null for all transactions (admin).
+     * @param cursor The nextCursor of the previous page, or null for the first page.
+     * @param limit Page size, clamped to 1..MAX_PAGE_SIZE.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public TransactionPage getTransactionsPage(Integer accountId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Cursor after = (cursor == null || cursor.isEmpty()) ? null : Cursor.decode(cursor);
+
+        String sql = PAGE_SQL[(accountId != null ? 1 : 0) | (after != null ? 2 : 0)];
+
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        String nextCursor = null;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            if (accountId != null) {
+                ps.setInt(i++, accountId);
+            }
+            if (after != null) {
+                ps.setTimestamp(i++, after.date);
+                ps.setTimestamp(i++, after.date);
+                ps.setInt(i++, after.transactionId);
+            }
+            ps.setInt(i, pageSize + 1); // one extra row tells us whether another page exists
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (transactions.size() == pageSize) {
+                        Transaction last = transactions.get(pageSize - 1);
+                        nextCursor = new Cursor(last.getTransactionDate(), last.getTransactionId()).encode();
+                        break;
+                    }
+                    transactions.add(mapResultSetToTransaction(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new TransactionPage(transactions, nextCursor);
+    }
+
+    // --- Helper Methods ---
+
+    /**
+     * Keyset position. The token is URL-safe Base64 of "epochMillis.nanos.transactionId".
+     */
+    private static final class Cursor {
+        final Timestamp date;
+        final int transactionId;
+
+        Cursor(Timestamp date, int transactionId) {
+            this.date = date;
+            this.transactionId = transactionId;
+        }
+
+        String encode() {
+            String raw = date.getTime() + "." + date.getNanos() + "." + transactionId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+                String[] parts = raw.split("\\.");
+                if (parts.length != 3) throw new IllegalArgumentException("Invalid cursor.");
+                Timestamp date = new Timestamp(Long.parseLong(parts[0]));
+                date.setNanos(Integer.parseInt(parts[1]));
+                return new Cursor(date, Integer.parseInt(parts[2]));
+            } catch (IllegalArgumentException e) { // includes NumberFormatException
+                throw new IllegalArgumentException("Invalid cursor.", e);
+            }
+        }
+    }
+
+    private static void bindTransaction(PreparedStatement ps, int accountId, String type, BigDecimal amount,
+                                        Integer sourceId, Integer destId, String description) throws SQLException {
+        ps.setInt(1, accountId);
+        ps.setString(2, type);
+        ps.setBigDecimal(3, amount);
+
+        // Handle nullable foreign keys
+        if (sourceId != null) ps.setInt(4, sourceId);
+        else ps.setNull(4, java.sql.Types.INTEGER);
+
+        if (destId != null) ps.setInt(5, destId);
+        else ps.setNull(5, java.sql.Types.INTEGER);
+
+        ps.setString(6, description);
+    }
+
     private Transaction mapResultSetToTransaction(ResultSet rs) throws SQLException {
         Transaction tx = new Transaction();
         tx.setTransactionId(rs.getInt("transaction_id"));
@@ -106,6 +411,7 @@ public class TransactionDao {
         tx.setDestinationAccountId((Integer) rs.getObject("destination_account_id"));
         tx.setDescription(rs.getString("description"));
         tx.setTransactionDate(rs.getTimestamp("transaction_date"));
+        tx.setBalanceAfter(rs.getBigDecimal("balance_after"));
         return tx;
     }
 }
\ No newline at end of file
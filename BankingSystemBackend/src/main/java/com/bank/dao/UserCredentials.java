@@ -0,0 +1,41 @@
+package com.bank.dao;
+
+import com.bank.model.User;
+
+/**
+ * A user's profile plus the stored password hash, as read for login in one query.
+ * Kept separate from User so the hash never ends up in a session or a response.
+ */
+public final class UserCredentials {
+    private final int userId;
+    private final String username;
+    private final String email;
+    private final String firstName;
+    private final String lastName;
+    private final String role;
+    private final String status;
+    private final String passwordHash;
+
+    UserCredentials(int userId, String username, String email, String firstName, String lastName,
+                    String role, String status, String passwordHash) {
+        this.userId = userId;
+        this.username = username;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.role = role;
+        this.status = status;
+        this.passwordHash = passwordHash;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    /**
+     * A fresh User for the caller to keep (e.g. in its session); this object may be cached.
+     */
+    public User toUser() {
+        return new User(userId, username, email, firstName, lastName, role, status);
+    }
+}
@@ -1,18 +1,90 @@
 package com.bank.dao;
 
 import com.bank.model.User;
+import com.bank.util.AppConfig;
 import com.bank.util.DatabaseConnection;
+import com.bank.util.LruCache;
 import com.bank.util.PasswordUtils;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class UserDao {
 
+    // Login lookups by username. Entries live for ttlSeconds (negativeTtlSeconds for
+    // unknown usernames), so a status change made on another node is seen within the TTL.
+    private static final boolean CACHE_ENABLED = AppConfig.getBoolean("auth.cache.enabled", true);
+    private static final long CACHE_TTL_NANOS = TimeUnit.SECONDS.toNanos(AppConfig.getLong("auth.cache.ttlSeconds", 30));
+    private static final long NEGATIVE_TTL_NANOS =
+            TimeUnit.SECONDS.toNanos(AppConfig.getLong("auth.cache.negativeTtlSeconds", 5));
+    private static final LruCache<String, CachedCredentials> CREDENTIALS =
+            new LruCache<>(AppConfig.getInt("auth.cache.maxSize", 10_000), 16);
+    private static final LongAdder NEGATIVE_HITS = new LongAdder();
+    // Bumped by every write that invalidates cached credentials. A lookup that read the
+    // database before a write but caches its row after it drops the entry again.
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static final String CREDENTIALS_SQL = "SELECT user_id, username, email, first_name, last_name, role, status, " +
+                                                  "password_hash FROM users WHERE username = ?";
+
+    /**
+     * Login lookup: the profile and password hash in one query, served from a
+     * short-TTL cache (including "no such user") when possible.
+     * @return The credentials, or null if the username does not exist (or the lookup failed).
+     */
+    public UserCredentials getCredentialsByUsername(String username) {
+        long now = System.nanoTime();
+        long generation = GENERATION.get();
+        if (CACHE_ENABLED) {
+            CachedCredentials cached = CREDENTIALS.get(username);
+            if (cached != null && now - cached.expiresAt < 0) {
+                if (cached.credentials == null) {
+                    NEGATIVE_HITS.increment();
+                }
+                return cached.credentials;
+            }
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(CREDENTIALS_SQL)) {
+
+            ps.setString(1, username);
+            UserCredentials credentials = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    credentials = new UserCredentials(
+                        rs.getInt("user_id"),
+                        rs.getString("username"),
+                        rs.getString("email"),
+                        rs.getString("first_name"),
+                        rs.getString("last_name"),
+                        rs.getString("role"),
+                        rs.getString("status"),
+                        rs.getString("password_hash"));
+                }
+            }
+            if (CACHE_ENABLED) {
+                long ttl = (credentials != null) ? CACHE_TTL_NANOS : NEGATIVE_TTL_NANOS;
+                CREDENTIALS.put(username, new CachedCredentials(credentials, now + ttl));
+                if (GENERATION.get() != generation) {
+                    CREDENTIALS.invalidate(username); // may be older than the write that bumped it
+                }
+            }
+            return credentials;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null; // not cached: a failed lookup must not look like an unknown user next time
+        }
+    }
+
     /**
      * Finds a user by username.
      * @param username The username to search for.
@@ -76,6 +148,8 @@ public class UserDao {
             ps.setString(5, lastName);
 
             int rowsAffected = ps.executeUpdate();
+            GENERATION.incrementAndGet();
+            CREDENTIALS.invalidate(username); // drop a cached "no such user"
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -104,6 +178,24 @@ public class UserDao {
         return users;
     }
     
+    /**
+     * (Admin) Streams every user without materializing the result.
+     * Rows come from a forward-only cursor and are handed to the callback as they arrive.
+     */
+    public void streamAllUsers(RowCallback<User> callback) throws SQLException, IOException {
+        String sql = "SELECT * FROM users";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            DatabaseConnection.enableStreaming(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(mapResultSetToUser(rs));
+                }
+            }
+        }
+    }
+    
     /**
      * (Admin) Updates a user's status.
      */
@@ -120,6 +212,8 @@ public class UserDao {
             ps.setInt(2, userId);
             
             int rowsAffected = ps.executeUpdate();
+            GENERATION.incrementAndGet();
+            CREDENTIALS.invalidateAll(); // keyed by username; status changes are rare admin actions
             return rowsAffected > 0;
 
         } catch (SQLException e) {
@@ -128,6 +222,23 @@ public class UserDao {
         }
     }
 
+    // --- Login cache metrics ---
+
+    public static long getCredentialCacheHitCount() {
+        return CREDENTIALS.getHitCount();
+    }
+
+    public static long getCredentialCacheMissCount() {
+        return CREDENTIALS.getMissCount();
+    }
+
+    /**
+     * Logins for unknown usernames answered from the cache.
+     */
+    public static long getNegativeHitCount() {
+        return NEGATIVE_HITS.sum();
+    }
+
 
     /**
      * Helper method to map a ResultSet row to a User object.
@@ -143,4 +254,14 @@ public class UserDao {
             rs.getString("status")
         );
     }
-}
\ No newline at end of file
+
+    private static final class CachedCredentials {
+        final UserCredentials credentials; // null: the username does not exist
+        final long expiresAt; // System.nanoTime()
+
+        CachedCredentials(UserCredentials credentials, long expiresAt) {
+            this.credentials = credentials;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
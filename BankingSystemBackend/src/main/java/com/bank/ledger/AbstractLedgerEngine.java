@@ -0,0 +1,274 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Account storage and command logic shared by the ledger engines.
+ * Subclasses decide how concurrent commands are kept apart by implementing
+ * withAccounts() and withAllAccounts(); apply() assumes the caller already
+ * has exclusive access to the accounts it is given.
+ */
+abstract class AbstractLedgerEngine implements LedgerEngine {
+
+    /** Placeholder for "no second account" in withAccounts(). */
+    protected static final long NO_ACCOUNT = -1;
+
+    private final ConcurrentMap<Long, LedgerAccount> accounts = new ConcurrentHashMap<>();
+    private final ColumnarEntryStore entries = new ColumnarEntryStore();
+    private final AtomicLong entryIdGenerator = new AtomicLong(1);
+
+    private volatile LedgerJournal journal; // null unless journaling is enabled
+    private boolean shutDown; // only read and written with exclusive access
+
+    /**
+     * Runs the action while no other command can touch the given accounts.
+     * @param targetAccountId A second account, or NO_ACCOUNT.
+     */
+    protected abstract <T> T withAccounts(long accountId, long targetAccountId, Supplier<T> action);
+
+    /**
+     * Runs the action while no command can touch any account.
+     */
+    protected abstract <T> T withAllAccounts(Supplier<T> action);
+
+    @Override
+    public LedgerResult execute(EntryType type, long accountId, long targetAccountId, Money amount) {
+        long target = type == EntryType.TRANSFER ? targetAccountId : NO_ACCOUNT;
+        long minor = amount.getMinorUnits();
+        return withAccounts(accountId, target, () -> {
+            checkRunning();
+            return apply(type, account(accountId), target == NO_ACCOUNT ? null : account(target), minor);
+        });
+    }
+
+    @Override
+    public void openAccount(long accountId, Money openingBalance) {
+        withAccounts(accountId, NO_ACCOUNT, () -> {
+            checkRunning();
+            if (!accounts.containsKey(accountId)) {
+                LedgerJournal j = journal;
+                if (j != null) {
+                    j.appendOpen(accountId, openingBalance.getMinorUnits());
+                }
+                accounts.put(accountId, new LedgerAccount(accountId, openingBalance.getMinorUnits()));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Money getBalance(long accountId) {
+        LedgerAccount account = accounts.get(accountId);
+        return account == null ? null : Money.ofMinor(account.balance);
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    @Override
+    public void forEachEntry(long accountId, Consumer<EntryView> visitor) {
+        entries.forEach(accountId, visitor);
+    }
+
+    @Override
+    public void forEachEntry(Consumer<EntryView> visitor) {
+        entries.forEach(NO_ACCOUNT, visitor);
+    }
+
+    /**
+     * Waits for commands in progress, then closes the journal. Later commands are rejected,
+     * so nothing is applied in memory without being journaled.
+     */
+    @Override
+    public void shutdown() {
+        stopJournalTasks(); // a snapshot in progress needs the locks taken below
+        withAllAccounts(() -> {
+            closeJournal();
+            return null;
+        });
+    }
+
+    /**
+     * Stops the journal's background sync and snapshots, waiting for a run in progress.
+     */
+    protected void stopJournalTasks() {
+        LedgerJournal j = journal;
+        if (j != null) {
+            j.stopBackgroundTasks();
+        }
+    }
+
+    /**
+     * Rejects further commands and closes the journal. The caller must already exclude
+     * every other writer.
+     */
+    protected void closeJournal() {
+        shutDown = true;
+        LedgerJournal j = journal;
+        if (j != null) {
+            journal = null;
+            j.close();
+        }
+    }
+
+    private void checkRunning() {
+        if (shutDown) {
+            throw new IllegalStateException("Ledger has been shut down.");
+        }
+    }
+
+    /**
+     * Returns the account, opening it with a zero balance on first use.
+     */
+    protected LedgerAccount account(long accountId) {
+        return accounts.computeIfAbsent(accountId, id -> new LedgerAccount(id, 0));
+    }
+
+    /**
+     * Applies a command to accounts the caller holds exclusively.
+     * The entry is journaled before either balance changes, so a failed append
+     * (disk full, I/O error) leaves the accounts as they were; overflow is also
+     * checked up front.
+     * @param dest The destination account for TRANSFER, null otherwise.
+     * @param amount The amount in minor units.
+     */
+    protected LedgerResult apply(EntryType type, LedgerAccount src, LedgerAccount dest, long amount) {
+        LedgerEntry entry;
+        switch (type) {
+            case DEPOSIT:
+                long deposited = Math.addExact(src.balance, amount);
+                entry = record(type, src.id, -1, amount);
+                src.balance = deposited;
+                return LedgerResult.ok(entry, src.balance, 0);
+            case WITHDRAW:
+                if (src.balance < amount) {
+                    return LedgerResult.insufficientFunds();
+                }
+                entry = record(type, src.id, -1, amount);
+                src.balance -= amount;
+                return LedgerResult.ok(entry, src.balance, 0);
+            case TRANSFER:
+                if (src.balance < amount) {
+                    return LedgerResult.insufficientFunds();
+                }
+                if (src == dest) {
+                    entry = record(type, src.id, dest.id, amount);
+                    return LedgerResult.ok(entry, src.balance, dest.balance);
+                }
+                long credited = Math.addExact(dest.balance, amount);
+                entry = record(type, src.id, dest.id, amount);
+                src.balance -= amount;
+                dest.balance = credited;
+                return LedgerResult.ok(entry, src.balance, dest.balance);
+            default:
+                throw new IllegalArgumentException("Unsupported entry type: " + type);
+        }
+    }
+
+    /**
+     * Journals the entry (if journaling is on) and adds it to the in-memory history.
+     * Throws without side effects on the accounts if the journal append fails.
+     */
+    private LedgerEntry record(EntryType type, long accountId, long targetAccountId, long amount) {
+        LedgerEntry entry = new LedgerEntry(entryIdGenerator.getAndIncrement(), type, accountId, targetAccountId,
+                amount, Instant.now().toEpochMilli());
+        LedgerJournal j = journal;
+        if (j != null) {
+            j.appendEntry(entry);
+        }
+        entries.append(entry);
+        return entry;
+    }
+
+
+    // --- Durability ---
+
+    /**
+     * Rebuilds state from the journal directory, then journals every later change.
+     * Must be called before the engine is shared with other threads.
+     */
+    void attachJournal(LedgerJournal journal) throws IOException {
+        journal.recover(new LedgerJournal.Replayer() {
+            @Override
+            public void restoreAccount(long accountId, long balance) {
+                accounts.put(accountId, new LedgerAccount(accountId, balance));
+            }
+
+            @Override
+            public void restoreNextEntryId(long nextEntryId) {
+                entryIdGenerator.set(nextEntryId);
+            }
+
+            @Override
+            public void replay(LedgerEntry entry) {
+                LedgerAccount src = account(entry.getAccountId());
+                switch (entry.getType()) {
+                    case DEPOSIT:
+                        src.balance += entry.getAmountMinor();
+                        break;
+                    case WITHDRAW:
+                        src.balance -= entry.getAmountMinor();
+                        break;
+                    case TRANSFER:
+                        LedgerAccount dest = account(entry.getTargetAccountId());
+                        src.balance -= entry.getAmountMinor();
+                        dest.balance += entry.getAmountMinor();
+                        break;
+                }
+                entries.append(entry);
+                entryIdGenerator.set(Math.max(entryIdGenerator.get(), entry.getId() + 1));
+            }
+        });
+        this.journal = journal;
+        journal.startBackgroundTasks(this::takeSnapshot);
+    }
+
+    /**
+     * Writes a consistent snapshot of all balances and starts a fresh journal segment.
+     */
+    private void takeSnapshot() {
+        withAllAccounts(() -> {
+            LedgerJournal j = journal;
+            if (j == null) return null;
+            int n = accounts.size();
+            long[] ids = new long[n];
+            long[] balances = new long[n];
+            int i = 0;
+            for (LedgerAccount a : accounts.values()) {
+                ids[i] = a.id;
+                balances[i++] = a.balance;
+            }
+            try {
+                j.snapshot(entryIdGenerator.get(), ids, balances);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Mutable account state; the balance is in minor units. It is volatile so readers
+     * never need a lock; writes only happen while the owning engine excludes other writers.
+     */
+    static final class LedgerAccount {
+        final long id;
+        volatile long balance;
+
+        LedgerAccount(long id, long balance) {
+            this.id = id;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.bank.ledger;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Append-only entry storage laid out as primitive columns.
+ *
+ * Rows live in fixed-size chunks of parallel long[] columns (id, accountId,
+ * targetAccountId, amount in minor units, timestamp) plus a byte[] type
+ * column, so an entry costs about 41 bytes and no object headers. Writers
+ * claim a row index, fill the columns, then publish rows strictly in index
+ * order; readers only look at published rows and never take a lock.
+ *
+ * A per-account index maps each account to the row positions where it is the
+ * source or the target, so history lookups cost O(results). Every engine
+ * already excludes concurrent commands on the same account, which makes each
+ * position list single-writer.
+ */
+final class ColumnarEntryStore {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // 16384 rows
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int SPIN_TRIES = 100;
+
+    private static final EntryType[] TYPES = EntryType.values();
+
+    private volatile Chunk[] chunks = new Chunk[16];
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final ConcurrentMap<Long, PositionList> accountIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Appends one entry and makes it visible to readers.
+     * @return The row index of the new entry.
+     */
+    long append(long id, EntryType type, long accountId, long targetAccountId, long amountMinor, long timestamp) {
+        long index = claimed.getAndIncrement();
+        if (index > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Entry store is full.");
+        }
+        Chunk chunk = chunkFor(index);
+        int row = (int) (index & CHUNK_MASK);
+        chunk.ids[row] = id;
+        chunk.types[row] = (byte) type.ordinal();
+        chunk.accountIds[row] = accountId;
+        chunk.targetAccountIds[row] = targetAccountId;
+        chunk.amounts[row] = amountMinor;
+        chunk.timestamps[row] = timestamp;
+
+        // Publish in index order, so "published" is always a clean prefix of fully written rows
+        int tries = 0;
+        while (published.get() != index) {
+            if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        published.set(index + 1);
+
+        // Index only after publishing, so every indexed position is readable
+        indexRow(accountId, index);
+        if (targetAccountId != -1 && targetAccountId != accountId) {
+            indexRow(targetAccountId, index);
+        }
+        return index;
+    }
+
+    long append(LedgerEntry e) {
+        return append(e.getId(), e.getType(), e.getAccountId(), e.getTargetAccountId(),
+                e.getAmountMinor(), e.getTimestamp());
+    }
+
+    /**
+     * Number of rows visible to readers.
+     */
+    long size() {
+        return published.get();
+    }
+
+    /**
+     * Visits published rows in append order with a single reused view.
+     * @param accountId Only rows involving this account, or NO_ACCOUNT for all rows.
+     */
+    void forEach(long accountId, Consumer<EntryView> visitor) {
+        EntryView view = new EntryView();
+        if (accountId != AbstractLedgerEngine.NO_ACCOUNT) {
+            PositionList positions = accountIndex.get(accountId);
+            if (positions == null) return;
+            int count = positions.size; // read size before the array
+            int[] rows = positions.rows;
+            Chunk[] snapshot = chunks;
+            for (int i = 0; i < count; i++) {
+                int index = rows[i];
+                view.moveTo(snapshot[index >>> CHUNK_BITS], index & CHUNK_MASK);
+                visitor.accept(view);
+            }
+            return;
+        }
+
+        long end = published.get();
+        Chunk[] snapshot = chunks;
+        for (long index = 0; index < end; index++) {
+            view.moveTo(snapshot[(int) (index >>> CHUNK_BITS)], (int) (index & CHUNK_MASK));
+            visitor.accept(view);
+        }
+    }
+
+    private void indexRow(long accountId, long row) {
+        accountIndex.computeIfAbsent(accountId, id -> new PositionList()).add((int) row);
+    }
+
+    private Chunk chunkFor(long index) {
+        int c = (int) (index >>> CHUNK_BITS);
+        Chunk[] current = chunks;
+        if (c < current.length && current[c] != null) {
+            return current[c];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (c >= current.length) {
+                Chunk[] grown = new Chunk[Math.max(current.length * 2, c + 1)];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            if (current[c] == null) {
+                current[c] = new Chunk();
+            }
+            chunks = current;
+            return current[c];
+        }
+    }
+
+    /**
+     * Growable int[] of row positions for one account. Single writer; readers
+     * read size first, then rows, and see every position below that size.
+     */
+    static final class PositionList {
+        volatile int[] rows = new int[4];
+        volatile int size;
+
+        void add(int row) {
+            int n = size;
+            int[] current = rows;
+            if (n == current.length) {
+                current = Arrays.copyOf(current, n + (n >> 1) + 1);
+                rows = current;
+            }
+            current[n] = row;
+            size = n + 1;
+        }
+    }
+
+    /**
+     * One block of CHUNK_SIZE rows, column by column.
+     */
+    static final class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];
+        final byte[] types = new byte[CHUNK_SIZE];
+        final long[] accountIds = new long[CHUNK_SIZE];
+        final long[] targetAccountIds = new long[CHUNK_SIZE];
+        final long[] amounts = new long[CHUNK_SIZE];
+        final long[] timestamps = new long[CHUNK_SIZE];
+
+        EntryType type(int row) {
+            return TYPES[types[row]];
+        }
+    }
+}
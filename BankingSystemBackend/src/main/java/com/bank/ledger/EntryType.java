@@ -0,0 +1,8 @@
+package com.bank.ledger;
+
+/**
+ * Kinds of commands the in-memory ledger understands.
+ */
+public enum EntryType {
+    DEPOSIT, WITHDRAW, TRANSFER
+}
@@ -0,0 +1,69 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+
+/**
+ * Flyweight over one row of the columnar entry store. The same instance is
+ * moved from row to row during a scan, so do not keep a reference to it
+ * after the visitor returns; call toEntry() for a detached copy.
+ */
+public final class EntryView {
+    private ColumnarEntryStore.Chunk chunk;
+    private int row;
+
+    EntryView() {}
+
+    void moveTo(ColumnarEntryStore.Chunk chunk, int row) {
+        this.chunk = chunk;
+        this.row = row;
+    }
+
+    public long getId() {
+        return chunk.ids[row];
+    }
+
+    public EntryType getType() {
+        return chunk.type(row);
+    }
+
+    public long getAccountId() {
+        return chunk.accountIds[row];
+    }
+
+    public long getTargetAccountId() {
+        return chunk.targetAccountIds[row];
+    }
+
+    /**
+     * The amount in minor units (cents).
+     */
+    public long getAmountMinor() {
+        return chunk.amounts[row];
+    }
+
+    public long getTimestamp() {
+        return chunk.timestamps[row];
+    }
+
+    public LedgerEntry toEntry() {
+        return new LedgerEntry(getId(), getType(), getAccountId(), getTargetAccountId(), getAmountMinor(), getTimestamp());
+    }
+
+    /**
+     * Writes the row as JSON without allocating intermediate strings.
+     */
+    public void appendJson(StringBuilder sb) {
+        sb.append("{");
+        sb.append("\"id\":").append(getId()).append(",");
+        sb.append("\"type\":\"").append(getType().name()).append("\",");
+        sb.append("\"accountId\":").append(getAccountId()).append(",");
+        sb.append("\"amount\":");
+        Money.appendTo(sb, getAmountMinor()).append(",");
+        sb.append("\"timestamp\":").append(getTimestamp());
+        long target = getTargetAccountId();
+        if (target != -1) {
+            sb.append(",\"targetAccountId\":").append(target);
+        }
+        sb.append("}");
+    }
+}
@@ -0,0 +1,21 @@
+package com.bank.ledger;
+
+import java.util.function.Supplier;
+
+/**
+ * Ledger engine that serializes every command behind a single monitor.
+ * This is the original TransactionServlet behaviour, kept as a baseline
+ * for comparing against the striped engine.
+ */
+final class GlobalLockLedgerEngine extends AbstractLedgerEngine {
+
+    @Override
+    protected synchronized <T> T withAccounts(long accountId, long targetAccountId, Supplier<T> action) {
+        return action.get();
+    }
+
+    @Override
+    protected synchronized <T> T withAllAccounts(Supplier<T> action) {
+        return action.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+import com.bank.util.AppConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * In-memory account ledger used by TransactionServlet.
+ * Accounts are opened with a zero balance the first time a command touches them.
+ */
+public interface LedgerEngine {
+
+    /**
+     * Opens an account with the given balance, unless it already exists.
+     */
+    void openAccount(long accountId, Money openingBalance);
+
+    /**
+     * Applies one command atomically.
+     * @param targetAccountId Destination for TRANSFER, ignored otherwise.
+     * @param amount A positive amount.
+     * @throws ArithmeticException if a balance would overflow.
+     */
+    LedgerResult execute(EntryType type, long accountId, long targetAccountId, Money amount);
+
+    /**
+     * Reads a balance without blocking writers.
+     * @return The current balance, or null if the account does not exist.
+     */
+    Money getBalance(long accountId);
+
+    int getAccountCount();
+
+    /**
+     * Visits entries where the account is either the source or the target, oldest first.
+     * The view passed to the visitor is reused for every entry.
+     */
+    void forEachEntry(long accountId, Consumer<EntryView> visitor);
+
+    /**
+     * Visits every entry, oldest first, with a reused view.
+     */
+    void forEachEntry(Consumer<EntryView> visitor);
+
+    /**
+     * Stops any background threads owned by the engine.
+     */
+    default void shutdown() {
+    }
+
+    /**
+     * Builds the engine selected by the "ledger.engine" setting.
+     * STRIPED (default) locks per account stripe; GLOBAL serializes every command behind one monitor;
+     * RING hands every command to a single writer thread through a ring buffer.
+     * If "ledger.journal.dir" is set, state is recovered from and journaled to that directory.
+     */
+    static LedgerEngine fromConfig() {
+        AbstractLedgerEngine ledger;
+        String engine = AppConfig.getString("ledger.engine", "STRIPED").toUpperCase(Locale.ROOT);
+        switch (engine) {
+            case "GLOBAL":
+                ledger = new GlobalLockLedgerEngine();
+                break;
+            case "RING":
+                ledger = new RingBufferLedgerEngine(AppConfig.getInt("ledger.ringSize", 1024));
+                break;
+            case "STRIPED":
+            default:
+                int stripes = AppConfig.getInt("ledger.stripes", Runtime.getRuntime().availableProcessors() * 4);
+                ledger = new StripedLedgerEngine(stripes);
+        }
+
+        String journalDir = AppConfig.getString("ledger.journal.dir", null);
+        if (journalDir != null) {
+            LedgerJournal journal = new LedgerJournal(Paths.get(journalDir),
+                    AppConfig.getInt("ledger.journal.syncEveryEntries", 64),
+                    AppConfig.getLong("ledger.journal.syncIntervalMicros", 1000),
+                    AppConfig.getLong("ledger.journal.snapshotEvery", 100_000));
+            try {
+                ledger.attachJournal(journal);
+            } catch (IOException e) {
+                ledger.shutdown();
+                throw new UncheckedIOException("Cannot recover ledger journal from " + journalDir, e);
+            }
+        }
+        return ledger;
+    }
+}
@@ -0,0 +1,71 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+
+/**
+ * An immutable record of one applied ledger command.
+ */
+public final class LedgerEntry {
+    private final long id;
+    private final EntryType type;
+    private final long accountId;
+    private final long targetAccountId; // -1 when not applicable
+    private final long amountMinor;
+    private final long timestamp;
+
+    public LedgerEntry(long id, EntryType type, long accountId, long targetAccountId, long amountMinor, long timestamp) {
+        this.id = id;
+        this.type = type;
+        this.accountId = accountId;
+        this.targetAccountId = targetAccountId;
+        this.amountMinor = amountMinor;
+        this.timestamp = timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public EntryType getType() {
+        return type;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public long getTargetAccountId() {
+        return targetAccountId;
+    }
+
+    public Money getAmount() {
+        return Money.ofMinor(amountMinor);
+    }
+
+    /**
+     * The amount in minor units (cents).
+     */
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("\"id\":").append(id).append(",");
+        sb.append("\"type\":\"").append(type.name()).append("\",");
+        sb.append("\"accountId\":").append(accountId).append(",");
+        sb.append("\"amount\":");
+        Money.appendTo(sb, amountMinor).append(",");
+        sb.append("\"timestamp\":").append(timestamp);
+        if (targetAccountId != -1) {
+            sb.append(",\"targetAccountId\":").append(targetAccountId);
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
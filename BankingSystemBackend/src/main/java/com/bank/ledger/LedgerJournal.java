@@ -0,0 +1,407 @@
+package com.bank.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal for the in-memory ledger.
+ *
+ * Every applied command (and every account opened with a balance) is appended
+ * to the current segment file through a FileChannel. Appends reach the OS page
+ * cache immediately, so a JVM crash loses nothing; fsync is grouped and runs
+ * once every syncEveryEntries appends or every syncIntervalMicros, whichever
+ * comes first. Commands acknowledged inside that window can be lost on a
+ * power failure.
+ *
+ * Every snapshotEvery appends, the engine writes a snapshot of all balances
+ * and the journal rolls to a new segment; older segments are deleted. Recovery
+ * loads the snapshot and replays the segments written after it. Entry history
+ * from before the last snapshot is not restored.
+ *
+ * An append that fails is cut back off the segment, so the journal never holds
+ * a record its caller was told failed, nor torn bytes that would end a later
+ * replay early. A failed fsync leaves the state of earlier unsynced records
+ * unknown (the kernel may have dropped the dirty pages), so it also fails every
+ * later append until the ledger is restarted and recovers from the files.
+ *
+ * Record layout: int payloadLength, int crc32(payload), payload. Amounts and
+ * balances are stored in minor units.
+ */
+final class LedgerJournal implements Closeable {
+
+    /** Receives recovered state, in order: accounts, next entry id, then replayed entries. */
+    interface Replayer {
+        void restoreAccount(long accountId, long balance);
+
+        void restoreNextEntryId(long nextEntryId);
+
+        void replay(LedgerEntry entry);
+    }
+
+    private static final byte KIND_OPEN = 0; // account opened with a balance; not an EntryType
+    private static final int SNAPSHOT_MAGIC = 0x4C534E50; // "LSNP"
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1024;
+
+    private final Path dir;
+    private final int syncEveryEntries;
+    private final long syncIntervalMicros;
+    private final long snapshotEvery;
+
+    private final ByteBuffer recordBuffer = ByteBuffer.allocateDirect(MAX_RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    // Guarded by "this"
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes; // end of the last complete record
+    private IOException failure; // set once the journal can no longer be trusted
+    private int unsyncedEntries;
+    private long lastSyncNanos = System.nanoTime();
+    private long appendsSinceSnapshot;
+    private long appendCount;
+
+    private ScheduledExecutorService scheduler;
+    private volatile long recoveryMillis;
+    private volatile long recoveredRecords;
+
+    LedgerJournal(Path dir, int syncEveryEntries, long syncIntervalMicros, long snapshotEvery) {
+        this.dir = dir;
+        this.syncEveryEntries = Math.max(1, syncEveryEntries);
+        this.syncIntervalMicros = Math.max(1, syncIntervalMicros);
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // --- Recovery ---
+
+    /**
+     * Loads the last snapshot, replays the journal tail and opens a fresh segment for appends.
+     * A torn record at the end of a segment (from a crash mid-write) ends the replay there.
+     */
+    synchronized void recover(Replayer replayer) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(dir);
+
+        long firstSegment = 1;
+        Path snapshot = dir.resolve("snapshot.dat");
+        if (Files.exists(snapshot)) {
+            firstSegment = readSnapshot(snapshot, replayer);
+        }
+
+        long records = 0;
+        long lastSegment = firstSegment - 1;
+        for (long seg : listSegments()) {
+            if (seg < firstSegment) {
+                Files.deleteIfExists(segmentPath(seg)); // already folded into the snapshot
+                continue;
+            }
+            records += replaySegment(segmentPath(seg), replayer);
+            lastSegment = seg;
+        }
+
+        openSegment(lastSegment + 1);
+        recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        recoveredRecords = records;
+    }
+
+    private long readSnapshot(Path snapshot, Replayer replayer) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+        if (buf.remaining() < 4 + 8 + 8 + 4 + 4 || buf.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Corrupt ledger snapshot: " + snapshot);
+        }
+        crc.reset();
+        crc.update(buf.array(), 0, buf.limit() - 4);
+        if ((int) crc.getValue() != buf.getInt(buf.limit() - 4)) {
+            throw new IOException("Ledger snapshot checksum mismatch: " + snapshot);
+        }
+        long nextEntryId = buf.getLong();
+        long firstSegment = buf.getLong();
+        int count = buf.getInt();
+        for (int i = 0; i < count; i++) {
+            long accountId = buf.getLong();
+            replayer.restoreAccount(accountId, buf.getLong());
+        }
+        replayer.restoreNextEntryId(nextEntryId);
+        return firstSegment;
+    }
+
+    private long replaySegment(Path path, Replayer replayer) throws IOException {
+        long records = 0;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            ByteBuffer payload = ByteBuffer.allocate(MAX_RECORD_BYTES);
+            long position = 0;
+            while (true) {
+                header.clear();
+                if (ch.read(header, position) < HEADER_BYTES) break;
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) break;
+
+                payload.clear().limit(length);
+                if (ch.read(payload, position + HEADER_BYTES) < length) break;
+                crc.reset();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != checksum) break;
+
+                payload.flip();
+                applyRecord(payload, replayer);
+                position += HEADER_BYTES + length;
+                records++;
+            }
+            if (position < ch.size()) {
+                ch.truncate(position); // drop the torn tail so later appends stay readable
+            }
+        }
+        return records;
+    }
+
+    private void applyRecord(ByteBuffer payload, Replayer replayer) {
+        byte kind = payload.get();
+        long entryId = payload.getLong();
+        long accountId = payload.getLong();
+        long targetAccountId = payload.getLong();
+        long timestamp = payload.getLong();
+        long amount = payload.getLong();
+        if (kind == KIND_OPEN) {
+            replayer.restoreAccount(accountId, amount);
+        } else {
+            EntryType type = EntryType.values()[kind - 1];
+            replayer.replay(new LedgerEntry(entryId, type, accountId, targetAccountId, amount, timestamp));
+        }
+    }
+
+    // --- Appends ---
+
+    synchronized void appendOpen(long accountId, long openingBalance) {
+        append(KIND_OPEN, 0, accountId, -1, 0, openingBalance);
+    }
+
+    synchronized void appendEntry(LedgerEntry e) {
+        append((byte) (e.getType().ordinal() + 1), e.getId(), e.getAccountId(), e.getTargetAccountId(),
+                e.getTimestamp(), e.getAmountMinor());
+    }
+
+    private void append(byte kind, long entryId, long accountId, long targetAccountId, long timestamp, long amount) {
+        if (failure != null) {
+            throw new IllegalStateException("Ledger journal failed earlier; restart to recover", failure);
+        }
+        ByteBuffer buf = recordBuffer;
+        buf.clear();
+        buf.position(HEADER_BYTES);
+        buf.put(kind).putLong(entryId).putLong(accountId).putLong(targetAccountId).putLong(timestamp).putLong(amount);
+        int length = buf.position() - HEADER_BYTES;
+
+        buf.flip();
+        buf.position(HEADER_BYTES);
+        crc.reset();
+        crc.update(buf);
+        buf.putInt(0, length).putInt(4, (int) crc.getValue());
+        buf.position(0);
+        long start = segmentBytes;
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (++unsyncedEntries >= syncEveryEntries) {
+                sync();
+            }
+        } catch (IOException e) {
+            // The caller undoes the command in memory, so the record must not survive either.
+            discardFrom(start, e);
+            throw new IllegalStateException("Ledger journal append failed", e);
+        }
+        segmentBytes = start + HEADER_BYTES + length;
+        appendCount++;
+        appendsSinceSnapshot++;
+    }
+
+    /**
+     * Cuts a failed append off the segment. If that fails too, the torn record may stay
+     * on disk, so the journal refuses every later append.
+     */
+    private void discardFrom(long position, IOException cause) {
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+        }
+    }
+
+    private void sync() throws IOException {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        unsyncedEntries = 0;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    synchronized void syncIfDue() throws IOException {
+        if (channel != null && failure == null && unsyncedEntries > 0
+                && System.nanoTime() - lastSyncNanos >= TimeUnit.MICROSECONDS.toNanos(syncIntervalMicros)) {
+            sync();
+        }
+    }
+
+    synchronized boolean isSnapshotDue() {
+        return snapshotEvery > 0 && appendsSinceSnapshot >= snapshotEvery;
+    }
+
+    // --- Snapshots ---
+
+    /**
+     * Writes a snapshot of all balances and rolls the journal. The caller must make sure
+     * no command runs concurrently, so the snapshot and the segment boundary agree.
+     */
+    synchronized void snapshot(long nextEntryId, long[] accountIds, long[] balances) throws IOException {
+        sync();
+        channel.close();
+        long previous = segment;
+        openSegment(previous + 1);
+
+        ByteBuffer buf = ByteBuffer.allocate(4 + 8 + 8 + 4 + accountIds.length * 16 + 4);
+        buf.putInt(SNAPSHOT_MAGIC).putLong(nextEntryId).putLong(segment).putInt(accountIds.length);
+        for (int i = 0; i < accountIds.length; i++) {
+            buf.putLong(accountIds[i]).putLong(balances[i]);
+        }
+        crc.reset();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve("snapshot.dat"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long seg : listSegments()) {
+            if (seg <= previous) {
+                Files.deleteIfExists(segmentPath(seg));
+            }
+        }
+        appendsSinceSnapshot = 0;
+    }
+
+    // --- Lifecycle ---
+
+    /**
+     * Starts the background thread that performs interval fsyncs and triggers snapshots.
+     */
+    synchronized void startBackgroundTasks(Runnable snapshotTask) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                syncIfDue();
+                if (isSnapshotDue()) {
+                    snapshotTask.run();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, syncIntervalMicros, syncIntervalMicros, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void close() {
+        stopBackgroundTasks();
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    if (failure == null) {
+                        sync();
+                    }
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the sync/snapshot task and waits for a run in progress. Call it before taking
+     * the engine's locks to close, since a snapshot needs them.
+     */
+    void stopBackgroundTasks() {
+        ScheduledExecutorService s;
+        synchronized (this) {
+            s = scheduler;
+            scheduler = null;
+        }
+        if (s != null) {
+            s.shutdown();
+            try {
+                s.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    long getRecoveredRecordCount() {
+        return recoveredRecords;
+    }
+
+    synchronized long getAppendCount() {
+        return appendCount;
+    }
+
+    // --- Helpers ---
+
+    private void openSegment(long seg) throws IOException {
+        segment = seg;
+        channel = FileChannel.open(segmentPath(seg), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+        unsyncedEntries = 0;
+    }
+
+    private Path segmentPath(long seg) {
+        return dir.resolve(String.format("journal-%010d.log", seg));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "journal-*.log")) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                segments.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
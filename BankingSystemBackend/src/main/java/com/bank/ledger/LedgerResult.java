@@ -0,0 +1,57 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+
+/**
+ * Outcome of a ledger command, including the balances observed
+ * while the command still held its accounts.
+ */
+public final class LedgerResult {
+
+    public enum Status {
+        OK, INSUFFICIENT_FUNDS
+    }
+
+    private final Status status;
+    private final LedgerEntry entry;
+    private final long sourceBalance;
+    private final long targetBalance; // only meaningful for transfers
+
+    private LedgerResult(Status status, LedgerEntry entry, long sourceBalance, long targetBalance) {
+        this.status = status;
+        this.entry = entry;
+        this.sourceBalance = sourceBalance;
+        this.targetBalance = targetBalance;
+    }
+
+    static LedgerResult ok(LedgerEntry entry, long sourceBalance, long targetBalance) {
+        return new LedgerResult(Status.OK, entry, sourceBalance, targetBalance);
+    }
+
+    static LedgerResult insufficientFunds() {
+        return new LedgerResult(Status.INSUFFICIENT_FUNDS, null, 0, 0);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public LedgerEntry getEntry() {
+        return entry;
+    }
+
+    public Money getSourceBalance() {
+        return Money.ofMinor(sourceBalance);
+    }
+
+    /**
+     * The destination balance after a transfer; null for other commands.
+     */
+    public Money getTargetBalance() {
+        return entry != null && entry.getType() == EntryType.TRANSFER ? Money.ofMinor(targetBalance) : null;
+    }
+}
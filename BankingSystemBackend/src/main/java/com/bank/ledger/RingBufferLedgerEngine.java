@@ -0,0 +1,222 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Single-writer ledger engine. Request threads publish commands into a
+ * pre-allocated ring buffer and wait for the reply; one business-logic thread
+ * applies them in sequence order with no locks. Commands that pile up while
+ * the writer is busy are drained as one batch on its next pass.
+ *
+ * On shutdown the writer finishes every command already claimed before it exits;
+ * later submissions are rejected, so no request thread is left waiting for a reply.
+ * A producer can pass the running check just as the writer leaves its loop: the
+ * writer then records where it stopped (exitedAt) and fails whatever was published
+ * past that point, and a producer that publishes after it sees exitedAt and fails
+ * its own command.
+ */
+final class RingBufferLedgerEngine extends AbstractLedgerEngine {
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Slot[] slots;
+    private final int mask;
+
+    // Next sequence a producer may claim, and the first sequence the writer has not finished
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile long exitedAt = -1; // first sequence the writer never processed, once it has stopped
+
+    RingBufferLedgerEngine(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1; // next power of two
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+
+        writer = new Thread(this::runWriter, "ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public LedgerResult execute(EntryType type, long accountId, long targetAccountId, Money amount) {
+        Slot slot = claim();
+        slot.type = type;
+        slot.accountId = accountId;
+        slot.targetAccountId = targetAccountId;
+        slot.amount = amount.getMinorUnits();
+        return publishAndWait(slot);
+    }
+
+    /**
+     * Every command already runs alone on the writer thread, so other
+     * exclusive work is simply queued behind it as a task.
+     */
+    @Override
+    protected <T> T withAccounts(long accountId, long targetAccountId, Supplier<T> action) {
+        return withAllAccounts(action);
+    }
+
+    @Override
+    protected <T> T withAllAccounts(Supplier<T> action) {
+        if (Thread.currentThread() == writer) {
+            return action.get();
+        }
+        Slot slot = claim();
+        slot.task = action;
+        return publishAndWait(slot);
+    }
+
+    /**
+     * Claims the next sequence and waits until its slot is free for reuse.
+     * The slot is returned with its sequence still unpublished.
+     */
+    private Slot claim() {
+        if (!running) {
+            throw new IllegalStateException("Ledger has been shut down.");
+        }
+        long seq = claimed.getAndIncrement();
+
+        // Wait for the writer to free the slot this sequence wraps onto
+        int idle = 0;
+        while (seq - slots.length >= consumed.get()) {
+            if (exitedAt >= 0) {
+                throw new IllegalStateException("Ledger has been shut down.");
+            }
+            idle = idle(idle);
+        }
+        Slot slot = slots[(int) (seq & mask)];
+        slot.claimedSequence = seq;
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T publishAndWait(Slot slot) {
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        slot.reply = reply;
+        slot.sequence = slot.claimedSequence; // volatile write publishes the fields above
+
+        // Published after the writer stopped: nobody else will answer it
+        long end = exitedAt;
+        if (end >= 0 && slot.claimedSequence >= end) {
+            reply.completeExceptionally(new IllegalStateException("Ledger has been shut down."));
+        }
+        try {
+            return (T) reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        stopJournalTasks(); // snapshots are queued on the ring, so stop them while it still runs
+        running = false;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join(); // drains at most one ring's worth of commands
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // The writer was the only thread applying commands, so the journal can close now
+        closeJournal();
+    }
+
+    private void runWriter() {
+        long next = 0;
+        int idle = 0;
+        while (running || next < claimed.get()) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.sequence != next) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+
+            // Drain everything already published as one batch
+            do {
+                process(slot);
+                next++;
+                slot = slots[(int) (next & mask)];
+            } while (slot.sequence == next);
+            consumed.set(next);
+        }
+
+        // A producer that claimed after the loop's last check either published before
+        // seeing exitedAt (failed here) or sees it after publishing (fails itself)
+        exitedAt = next;
+        long last = claimed.get();
+        for (long seq = next; seq < last && seq - next < slots.length; seq++) {
+            Slot slot = slots[(int) (seq & mask)];
+            if (slot.sequence == seq) { // volatile read first, so the reply written before it is visible
+                slot.reply.completeExceptionally(new IllegalStateException("Ledger has been shut down."));
+            }
+        }
+    }
+
+    private void process(Slot slot) {
+        CompletableFuture<Object> reply = slot.reply;
+        try {
+            if (slot.task != null) {
+                reply.complete(slot.task.get());
+            } else {
+                LedgerAccount src = account(slot.accountId);
+                LedgerAccount dest = slot.type == EntryType.TRANSFER ? account(slot.targetAccountId) : null;
+                reply.complete(apply(slot.type, src, dest, slot.amount));
+            }
+        } catch (RuntimeException e) {
+            reply.completeExceptionally(e);
+        } finally {
+            slot.task = null;
+            slot.reply = null;
+        }
+    }
+
+    /**
+     * Spin briefly, then yield, then park, so an idle ring does not burn a core.
+     */
+    private static int idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < SPIN_TRIES * 2) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries + 1;
+    }
+
+    /**
+     * A pre-allocated command cell. Plain fields are published by the volatile sequence write.
+     * A slot carries either a command or, for non-command work, a task.
+     */
+    private static final class Slot {
+        volatile long sequence = -1;
+        long claimedSequence;
+        EntryType type;
+        long accountId;
+        long targetAccountId;
+        long amount;
+        Supplier<?> task;
+        CompletableFuture<Object> reply;
+    }
+}
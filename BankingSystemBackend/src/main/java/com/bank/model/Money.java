@@ -0,0 +1,169 @@
+package com.bank.model;
+
+import java.math.BigDecimal;
+
+/**
+ * An immutable amount of money stored as a long count of minor units (cents).
+ * Arithmetic is overflow-checked and never allocates more than the result.
+ * Convert to and from BigDecimal only at the JDBC and JSON edges.
+ */
+public final class Money implements Comparable<Money> {
+
+    /** Number of decimal places in the currency (cents). */
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_UNIT = 100;
+    private static final long MAX_UNITS = Long.MAX_VALUE / MINOR_PER_UNIT;
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * @throws ArithmeticException if the value has more than SCALE decimals or does not fit in a long.
+     */
+    public static Money of(BigDecimal value) {
+        return ofMinor(value.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Parses a plain decimal such as "12", "-3.5" or "0.07" without going through BigDecimal.
+     * @throws NumberFormatException if the text is not a number, has more than SCALE
+     *         significant decimals, or is out of range.
+     */
+    public static Money parse(String text) {
+        if (text == null) throw new NumberFormatException("null");
+        String s = text.trim();
+        int i = 0;
+        int len = s.length();
+        boolean negative = false;
+        if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < len && s.charAt(i) != '.'; i++, digits++) {
+            units = units * 10 + digit(s, i);
+            if (units > MAX_UNITS) throw new NumberFormatException("Out of range: " + text);
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < len) {
+            for (i++; i < len; i++, digits++) {
+                int d = digit(s, i);
+                if (fractionDigits < SCALE) {
+                    fraction = fraction * 10 + d;
+                    fractionDigits++;
+                } else if (d != 0) {
+                    throw new NumberFormatException("More than " + SCALE + " decimal places: " + text);
+                }
+            }
+        }
+        if (digits == 0) throw new NumberFormatException("No digits: " + text);
+        for (; fractionDigits < SCALE; fractionDigits++) {
+            fraction *= 10;
+        }
+        try {
+            long minor = Math.addExact(Math.multiplyExact(units, MINOR_PER_UNIT), fraction);
+            return ofMinor(negative ? -minor : minor);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Out of range: " + text);
+        }
+    }
+
+    private static int digit(String s, int i) {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9') throw new NumberFormatException("Invalid amount: " + s);
+        return c - '0';
+    }
+
+    // --- Arithmetic ---
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    public Money abs() {
+        return minorUnits < 0 ? negate() : this;
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    // --- Conversion ---
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Appends a minor-unit amount as a plain decimal, e.g. 1234 -> 12.34.
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long minorUnits) {
+        if (minorUnits < 0) {
+            sb.append('-');
+        }
+        long units = Math.abs(minorUnits / MINOR_PER_UNIT);
+        long cents = Math.abs(minorUnits % MINOR_PER_UNIT);
+        sb.append(units).append('.');
+        if (cents < 10) sb.append('0');
+        return sb.append(cents);
+    }
+
+    public StringBuilder appendTo(StringBuilder sb) {
+        return appendTo(sb, minorUnits);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+}
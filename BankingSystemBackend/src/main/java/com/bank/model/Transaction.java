@@ -12,6 +12,7 @@ public class Transaction {
     private Integer destinationAccountId;
     private String description;
     private Timestamp transactionDate;
+    private BigDecimal balanceAfter; // null for rows written before it was recorded, and for hot accounts
     
     // --- Getters and Setters ---
     
@@ -78,4 +79,12 @@ public class Transaction {
     public void setTransactionDate(Timestamp transactionDate) {
         this.transactionDate = transactionDate;
     }
-}
\ No newline at end of file
+
+    public BigDecimal getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public void setBalanceAfter(BigDecimal balanceAfter) {
+        this.balanceAfter = balanceAfter;
+    }
+}
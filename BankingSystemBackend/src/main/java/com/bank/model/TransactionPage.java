@@ -0,0 +1,37 @@
+package com.bank.model;
+
+import java.util.List;
+
+/**
+ * One page of transaction history.
+ * nextCursor is an opaque token for the following page, or null on the last page.
+ */
+public class TransactionPage {
+    private List<Transaction> transactions;
+    private String nextCursor;
+
+    public TransactionPage() {}
+
+    public TransactionPage(List<Transaction> transactions, String nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    // --- Getters and Setters ---
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
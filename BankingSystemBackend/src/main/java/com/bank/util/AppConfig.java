@@ -0,0 +1,58 @@
+package com.bank.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Application settings.
+ * Values are read from bank.properties on the classpath and can be
+ * overridden per JVM with -D system properties of the same name.
+ */
+public class AppConfig {
+    private static final Properties properties = new Properties();
+
+    // Static block to load the optional bank.properties file
+    static {
+        try (InputStream in = AppConfig.class.getClassLoader().getResourceAsStream("bank.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            // Fall back to defaults; a broken config file should not stop the app.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Looks up a setting, giving system properties precedence over bank.properties.
+     * @return The trimmed value, or defaultValue if the key is not set.
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
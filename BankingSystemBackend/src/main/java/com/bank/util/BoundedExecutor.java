@@ -0,0 +1,156 @@
+package com.bank.util;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs request work off the container threads with a hard limit on backlog.
+ *
+ * At most threads + queueDepth tasks are admitted at once; submit() refuses the
+ * rest immediately so callers can answer 503 instead of piling up. A task that
+ * waited longer than queueTimeoutMillis before starting is not run; its
+ * onExpired callback runs instead. Once a task has started it runs to completion.
+ *
+ * With ThreadModel.VIRTUAL each task gets its own virtual thread (JDK 21+); the
+ * admission limit still applies. On older JDKs it falls back to PLATFORM.
+ */
+public class BoundedExecutor {
+
+    public enum ThreadModel { PLATFORM, VIRTUAL }
+
+    private final ExecutorService executor;
+    private final ThreadModel threadModel;
+    private final Semaphore admission;
+    private final int capacity;
+    private final long queueTimeoutNanos;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public BoundedExecutor(String name, ThreadModel model, int threads, int queueDepth, long queueTimeoutMillis) {
+        ExecutorService virtual = (model == ThreadModel.VIRTUAL) ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            executor = virtual;
+            threadModel = ThreadModel.VIRTUAL;
+        } else {
+            if (model == ThreadModel.VIRTUAL) {
+                System.err.println(name + ": virtual threads need JDK 21+, using platform threads.");
+            }
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+                Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            threadModel = ThreadModel.PLATFORM;
+        }
+        capacity = Math.max(1, threads) + Math.max(0, queueDepth);
+        admission = new Semaphore(capacity);
+        queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+    }
+
+    /**
+     * Builds an executor from the {prefix}.threadModel, .threads, .queueDepth and
+     * .queueTimeoutMillis settings.
+     */
+    public static BoundedExecutor fromConfig(String prefix, String threadName) {
+        return new BoundedExecutor(threadName,
+                ThreadModel.valueOf(AppConfig.getString(prefix + ".threadModel", "PLATFORM").toUpperCase(Locale.ROOT)),
+                AppConfig.getInt(prefix + ".threads", 16),
+                AppConfig.getInt(prefix + ".queueDepth", 200),
+                AppConfig.getLong(prefix + ".queueTimeoutMillis", 5000));
+    }
+
+    /**
+     * @return false if the backlog is full (or the executor is shut down); neither
+     *         callback will run in that case.
+     */
+    public boolean submit(Runnable task, Runnable onExpired) {
+        if (!admission.tryAcquire()) {
+            rejected.increment();
+            return false;
+        }
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                running.incrementAndGet();
+                try {
+                    if (System.nanoTime() - enqueuedAt > queueTimeoutNanos) {
+                        expired.increment();
+                        onExpired.run();
+                    } else {
+                        task.run();
+                    }
+                } finally {
+                    running.decrementAndGet();
+                    admission.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            rejected.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Refuses new tasks and waits up to 5 seconds for admitted ones to finish (queued
+     * tasks still run, or expire). Safe to call more than once.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reflective so the code still compiles for Java 8 targets.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // --- Metrics ---
+
+    public ThreadModel getThreadModel() {
+        return threadModel;
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * Tasks admitted but not yet started.
+     */
+    public int getQueuedCount() {
+        return Math.max(0, admittedCount() - running.get());
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    private int admittedCount() {
+        return capacity - admission.availablePermits();
+    }
+}
@@ -0,0 +1,384 @@
+package com.bank.util;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A small JDBC connection pool for running the DAOs outside Tomcat
+ * (benchmarks, tests, an embedded server, H2 in MySQL mode).
+ *
+ * - At most maxSize physical connections; borrowers wait up to acquireTimeoutMillis.
+ * - Idle connections are reused most-recently-returned first and are validated
+ *   when they have been idle longer than validateAfterIdleMillis.
+ * - With leakDetectionMillis > 0, a connection held longer than that is reported
+ *   once, with the stack trace of the code that borrowed it.
+ */
+public class ConnectionPool implements DataSource {
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final String validationQuery; // null means Connection.isValid
+    private final int validationTimeoutSeconds;
+    private final long validateAfterIdleMillis;
+    private final long leakDetectionMillis;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Map<Handle, Boolean> borrowed = new ConcurrentHashMap<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder leaksReported = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String username, String password, int maxSize, long acquireTimeoutMillis,
+                          String validationQuery, int validationTimeoutSeconds, long validateAfterIdleMillis,
+                          long leakDetectionMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationQuery = validationQuery;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+        this.permits = new Semaphore(this.maxSize, true);
+
+        if (leakDetectionMillis > 0) {
+            housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "bank-pool-housekeeper");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(100, leakDetectionMillis / 2);
+            housekeeper.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            housekeeper = null;
+        }
+    }
+
+    /**
+     * Builds a pool from the db.* settings in bank.properties.
+     */
+    public static ConnectionPool fromConfig() {
+        String driver = AppConfig.getString("db.driverClassName", null);
+        if (driver != null) {
+            try {
+                Class.forName(driver);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("JDBC driver not found: " + driver, e);
+            }
+        }
+        String url = AppConfig.getString("db.url", null);
+        if (url == null) {
+            throw new RuntimeException("db.url must be set when db.dataSource=POOL");
+        }
+        return new ConnectionPool(
+                url,
+                AppConfig.getString("db.username", null),
+                AppConfig.getString("db.password", null),
+                AppConfig.getInt("db.pool.maxSize", Runtime.getRuntime().availableProcessors() * 2 + 1),
+                AppConfig.getLong("db.pool.acquireTimeoutMillis", 10_000),
+                AppConfig.getString("db.pool.validationQuery", null),
+                AppConfig.getInt("db.pool.validationTimeoutSeconds", 2),
+                AppConfig.getLong("db.pool.validateAfterIdleMillis", 30_000),
+                AppConfig.getLong("db.pool.leakDetectionMillis", 0));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a connection (pool size " + maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection.", e);
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(url, username, password));
+                totalConnections.incrementAndGet();
+            }
+            Handle handle = new Handle(pooled, leakDetectionMillis > 0 ? new Exception("Connection borrowed here") : null);
+            borrowed.put(handle, Boolean.TRUE);
+            return handle.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Per-call credentials are not supported by the pool.");
+    }
+
+    /**
+     * Pops the most recently returned idle connection that is still usable, or null.
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastReturned < validateAfterIdleMillis || isValid(pooled.connection)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            if (validationQuery == null) {
+                return connection.isValid(validationTimeoutSeconds);
+            }
+            try (Statement st = connection.createStatement()) {
+                st.setQueryTimeout(validationTimeoutSeconds);
+                st.execute(validationQuery);
+                return true;
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(Handle handle) {
+        borrowed.remove(handle);
+        PooledConnection pooled = handle.pooled;
+        try {
+            if (closed || pooled.connection.isClosed()) {
+                discard(pooled);
+            } else {
+                if (!pooled.connection.getAutoCommit()) {
+                    pooled.connection.rollback(); // never hand out a half-finished transaction
+                    pooled.connection.setAutoCommit(true);
+                }
+                pooled.lastReturned = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void reportLeaks() {
+        long now = System.currentTimeMillis();
+        for (Handle handle : borrowed.keySet()) {
+            if (!handle.leakReported && now - handle.borrowedAt > leakDetectionMillis) {
+                handle.leakReported = true;
+                leaksReported.increment();
+                System.err.println("Possible connection leak: held for " + (now - handle.borrowedAt)
+                        + " ms by thread " + handle.borrowerThread);
+                handle.borrowSite.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Closes idle connections and stops handing out new ones. Borrowed connections
+     * are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+            try {
+                housekeeper.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Returns the driver connection behind a connection borrowed from a ConnectionPool,
+     * or null if the connection did not come from one.
+     */
+    public static Connection physicalConnectionOf(Connection connection) {
+        if (connection != null && Proxy.isProxyClass(connection.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(connection);
+            if (handler instanceof Handle) {
+                return ((Handle) handler).pooled.connection;
+            }
+        }
+        return null;
+    }
+
+    // --- Metrics ---
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Number of threads currently blocked waiting for a connection.
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquireTimeoutCount() {
+        return acquireTimeouts.sum();
+    }
+
+    public long getLeakCount() {
+        return leaksReported.sum();
+    }
+
+    // --- DataSource boilerplate ---
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static final class PooledConnection {
+        final Connection connection;
+        volatile long lastReturned;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * The borrower's view of a pooled connection: close() returns it to the pool,
+     * and every other call fails once it has been closed.
+     */
+    private final class Handle implements InvocationHandler {
+        final PooledConnection pooled;
+        final Connection proxy;
+        final long borrowedAt = System.currentTimeMillis();
+        final String borrowerThread = Thread.currentThread().getName();
+        final Exception borrowSite; // null unless leak detection is on
+        volatile boolean leakReported;
+        private boolean handleClosed;
+
+        Handle(PooledConnection pooled, Exception borrowSite) {
+            this.pooled = pooled;
+            this.borrowSite = borrowSite;
+            this.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!handleClosed) {
+                        handleClosed = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return handleClosed || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.connection + "]";
+                default:
+                    if (handleClosed) {
+                        throw new SQLException("Connection is closed.");
+                    }
+                    try {
+                        return method.invoke(pooled.connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
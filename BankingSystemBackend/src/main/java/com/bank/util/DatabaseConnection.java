@@ -5,30 +5,109 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
 
 public class DatabaseConnection {
-    private static DataSource dataSource;
 
-    // Static block to initialize the DataSource from JNDI
-    static {
+    /**
+     * Fetch size that makes MySQL Connector/J stream rows one by one instead of
+     * buffering the whole result set. Other drivers reject it.
+     */
+    private static final int MYSQL_ROW_STREAMING = Integer.MIN_VALUE;
+    /** Rows per round trip for drivers that stream through a cursor. */
+    private static final int CURSOR_FETCH_SIZE = AppConfig.getInt("db.streamingFetchSize", 500);
+    private static volatile DataSource dataSource;
+    // Whether dataSource was built here (db.dataSource=POOL) rather than by the container or setDataSource()
+    private static boolean ownsDataSource;
+
+    /**
+     * Returns the configured DataSource, creating it on first use.
+     * db.dataSource=JNDI (default) looks up the container resource named by db.jndiName;
+     * db.dataSource=POOL builds a {@link ConnectionPool} from the db.* settings.
+     */
+    public static DataSource getDataSource() {
+        DataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (DatabaseConnection.class) {
+                ds = dataSource;
+                if (ds == null) {
+                    ds = createDataSource();
+                    ownsDataSource = ds instanceof ConnectionPool;
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * Replaces the DataSource, e.g. with a pool built by a benchmark or test harness.
+     * Call it before the first connection is borrowed.
+     */
+    public static synchronized void setDataSource(DataSource ds) {
+        dataSource = ds;
+        ownsDataSource = false;
+    }
+
+    /**
+     * Closes the pool built for db.dataSource=POOL, stopping its housekeeper thread.
+     * A JNDI DataSource belongs to the container and one passed to setDataSource()
+     * to its caller; neither is touched. Called by AppLifecycleListener on undeploy.
+     */
+    public static synchronized void close() {
+        if (ownsDataSource) {
+            ((ConnectionPool) dataSource).close();
+            dataSource = null;
+            ownsDataSource = false;
+        }
+    }
+
+    private static DataSource createDataSource() {
+        String type = AppConfig.getString("db.dataSource", "JNDI");
+        if ("POOL".equalsIgnoreCase(type)) {
+            return ConnectionPool.fromConfig();
+        }
+        String name = AppConfig.getString("db.jndiName", "jdbc/bankDB");
         try {
             // JNDI lookup to find the resource defined in context.xml
             Context initContext = new InitialContext();
             Context envContext = (Context) initContext.lookup("java:comp/env");
-            dataSource = (DataSource) envContext.lookup("jdbc/bankDB");
+            return (DataSource) envContext.lookup(name);
         } catch (NamingException e) {
             // This is a critical failure; the application cannot run without the DB.
-            throw new RuntimeException("Cannot find JNDI DataSource 'jdbc/bankDB'", e);
+            throw new RuntimeException("Cannot find JNDI DataSource '" + name + "'", e);
         }
     }
 
     /**
-     * Gets a connection from the Tomcat-managed connection pool.
+     * Makes the statement's result set stream instead of being buffered whole.
+     * MySQL Connector/J streams row by row (the connection cannot run other statements
+     * until the result set is closed), or through a server cursor when the URL sets
+     * useCursorFetch=true; other drivers (H2 in tests) fetch db.streamingFetchSize rows
+     * per round trip.
+     */
+    public static void enableStreaming(Statement statement) throws SQLException {
+        DatabaseMetaData meta = statement.getConnection().getMetaData();
+        boolean rowStreaming = meta.getDriverName().startsWith("MySQL Connector")
+                && !meta.getURL().toLowerCase(Locale.ROOT).contains("usecursorfetch=true");
+        statement.setFetchSize(rowStreaming ? MYSQL_ROW_STREAMING : CURSOR_FETCH_SIZE);
+    }
+
+    /**
+     * Gets a connection from the configured pool (Tomcat's by default).
+     * Its single-argument prepareStatement(sql) reuses statements already prepared
+     * on the same physical connection (see {@link StatementCache}), and acquire wait,
+     * hold time and statement timings are recorded (see {@link JdbcMetrics}).
      * @return A java.sql.Connection
      * @throws SQLException
      */
     public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        if (JdbcMetrics.isEnabled()) {
+            return JdbcMetrics.borrow(getDataSource());
+        }
+        return StatementCache.wrap(getDataSource().getConnection());
     }
 }
\ No newline at end of file
@@ -0,0 +1,476 @@
+package com.bank.util;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instruments every connection handed out by {@link DatabaseConnection#getConnection()}
+ * to explain pool exhaustion:
+ *
+ * - acquire wait: how long getConnection() blocked, and how many threads are blocked now;
+ * - hold time per borrower: the DAO method that borrowed the connection, from borrow to close();
+ * - execution time per SQL shape: each execute*() call, up to its first result;
+ * - slow queries (db.metrics.slowQueryMillis) are logged with the caller's stack;
+ * - connections held longer than db.metrics.longHoldMillis are logged while still held,
+ *   with the holding thread's current stack, i.e. what it is doing with the connection;
+ * - an acquire timeout logs every current holder, so an exhausted pool says who has it;
+ * - a connection whose borrowing thread has ended without closing it is logged as
+ *   leaked and forgotten, so it no longer counts as held (or pins the dead Thread).
+ *
+ * Log lines are limited to one per shape/borrower every logIntervalSeconds; counters
+ * count everything. Borrowers and shapes are bounded (maxBorrowers, maxShapes) and the
+ * rest are counted under "other". The shape of a prepared statement is its SQL text;
+ * for plain Statements, literals are replaced by "?" first.
+ *
+ * The checks on held connections run on the "db-hold-watchdog" thread between start()
+ * and stop(), called by AppLifecycleListener when the application is deployed and undeployed.
+ */
+public final class JdbcMetrics {
+
+    private static final boolean ENABLED = AppConfig.getBoolean("db.metrics.enabled", true);
+    private static final boolean TRACK_BORROWERS = AppConfig.getBoolean("db.metrics.trackBorrowers", true);
+    private static final long SLOW_QUERY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("db.metrics.slowQueryMillis", 500));
+    private static final long LONG_HOLD_MILLIS = AppConfig.getLong("db.metrics.longHoldMillis", 5_000);
+    private static final long LOG_INTERVAL_NANOS =
+            TimeUnit.SECONDS.toNanos(AppConfig.getLong("db.metrics.logIntervalSeconds", 10));
+    private static final int MAX_SHAPES = AppConfig.getInt("db.metrics.maxShapes", 300);
+    private static final int MAX_BORROWERS = AppConfig.getInt("db.metrics.maxBorrowers", 200);
+    private static final int MAX_SHAPE_LENGTH = 200;
+    private static final String OTHER = "other";
+    private static final String UNKNOWN = "unknown";
+
+    private static final LatencyHistogram ACQUIRE_WAIT = new LatencyHistogram();
+    private static final LongAdder WAITING = new LongAdder();
+    private static final LongAdder ACQUIRE_FAILURES = new LongAdder();
+    private static final LongAdder SLOW_QUERIES = new LongAdder();
+    private static final LongAdder LONG_HOLDS = new LongAdder();
+    private static final LongAdder LEAKS = new LongAdder();
+    private static final long NEVER = Long.MIN_VALUE; // nanoTime() of a log line that never happened
+    private static final AtomicLong lastExhaustionLog = new AtomicLong(NEVER);
+
+    private static final ConcurrentHashMap<String, Timed> BORROWERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timed> SHAPES = new ConcurrentHashMap<>();
+    private static final Map<Borrow, Boolean> ACTIVE = new ConcurrentHashMap<>();
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private static ScheduledExecutorService watchdog; // guarded by JdbcMetrics.class
+
+    private JdbcMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Starts the watchdog that reports long holds and leaked connections. Does nothing
+     * if metrics are off or it is already running.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || watchdog != null) {
+            return;
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-hold-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = LONG_HOLD_MILLIS > 0 ? Math.max(100, Math.min(1_000, LONG_HOLD_MILLIS / 2)) : 1_000;
+        watchdog.scheduleWithFixedDelay(JdbcMetrics::checkHolds, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the watchdog and waits briefly for a check in progress to finish.
+     */
+    public static synchronized void stop() {
+        if (watchdog == null) {
+            return;
+        }
+        watchdog.shutdownNow();
+        try {
+            watchdog.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watchdog = null;
+    }
+
+    /**
+     * Borrows a connection from the DataSource (through the statement cache) and
+     * returns it instrumented.
+     */
+    static Connection borrow(DataSource dataSource) throws SQLException {
+        long start = System.nanoTime();
+        WAITING.increment();
+        Connection pooled;
+        try {
+            pooled = dataSource.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            ACQUIRE_FAILURES.increment();
+            reportExhaustion(System.nanoTime() - start);
+            throw e;
+        } finally {
+            WAITING.decrement();
+        }
+        long acquired = System.nanoTime();
+        ACQUIRE_WAIT.recordNanos(acquired - start);
+
+        Connection cached;
+        try {
+            cached = StatementCache.wrap(pooled);
+        } catch (SQLException | RuntimeException e) {
+            pooled.close();
+            throw e;
+        }
+        Borrow borrow = new Borrow(cached, TRACK_BORROWERS ? findBorrower() : UNKNOWN, acquired);
+        ACTIVE.put(borrow, Boolean.TRUE);
+        return borrow.proxy;
+    }
+
+    /**
+     * The first caller outside the JDBC plumbing, e.g. "AccountDao.transferFunds".
+     */
+    private static String findBorrower() {
+        return WALKER.walk(frames -> frames
+                .filter(f -> {
+                    String cls = f.getClassName();
+                    return !cls.startsWith("com.bank.util.") && !cls.startsWith("java.") && !cls.startsWith("javax.");
+                })
+                .findFirst()
+                .map(f -> {
+                    String cls = f.getClassName();
+                    return cls.substring(cls.lastIndexOf('.') + 1) + "." + f.getMethodName();
+                })
+                .orElse(UNKNOWN));
+    }
+
+    private static Timed timed(ConcurrentHashMap<String, Timed> map, String key, int max) {
+        Timed timed = map.get(key);
+        if (timed != null) {
+            return timed;
+        }
+        if (map.size() >= max) {
+            key = OTHER;
+        }
+        return map.computeIfAbsent(key, k -> new Timed());
+    }
+
+    // --- Logging ---
+
+    private static void checkHolds() {
+        try {
+            long now = System.nanoTime();
+            forgetLeaks(now);
+            if (LONG_HOLD_MILLIS > 0) {
+                reportLongHolds(now);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // keep the watchdog scheduled
+        }
+    }
+
+    /**
+     * Drops borrows whose thread has ended without closing the connection.
+     */
+    private static void forgetLeaks(long now) {
+        for (Borrow borrow : ACTIVE.keySet()) {
+            if (!borrow.thread.isAlive() && ACTIVE.remove(borrow) != null) {
+                LEAKS.increment();
+                if (timed(BORROWERS, borrow.borrower, MAX_BORROWERS).shouldLog(now)) {
+                    System.err.println("Connection borrowed by " + borrow.borrower + " on thread " + borrow.thread.getName()
+                            + " was never closed; the thread has ended after "
+                            + TimeUnit.NANOSECONDS.toMillis(now - borrow.acquiredAt) + " ms.");
+                }
+            }
+        }
+    }
+
+    private static void reportLongHolds(long now) {
+        for (Borrow borrow : ACTIVE.keySet()) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - borrow.acquiredAt);
+            if (!borrow.longHoldReported && heldMillis > LONG_HOLD_MILLIS) {
+                borrow.longHoldReported = true;
+                LONG_HOLDS.increment();
+                if (timed(BORROWERS, borrow.borrower, MAX_BORROWERS).shouldLog(now)) {
+                    System.err.println("Connection held for " + heldMillis + " ms by " + borrow.borrower
+                            + " on thread " + borrow.thread.getName() + ", which is now at:");
+                    printStack(borrow.thread.getStackTrace());
+                }
+            }
+        }
+    }
+
+    private static void reportExhaustion(long waitedNanos) {
+        long now = System.nanoTime();
+        long last = lastExhaustionLog.get();
+        if ((last != NEVER && now - last < LOG_INTERVAL_NANOS) || !lastExhaustionLog.compareAndSet(last, now)) {
+            return;
+        }
+        StringBuilder holders = new StringBuilder();
+        for (Borrow borrow : ACTIVE.keySet()) {
+            holders.append("\n\t").append(borrow.borrower).append(" on ").append(borrow.thread.getName())
+                    .append(" for ").append(TimeUnit.NANOSECONDS.toMillis(now - borrow.acquiredAt)).append(" ms");
+        }
+        System.err.println("Failed to get a connection after " + TimeUnit.NANOSECONDS.toMillis(waitedNanos)
+                + " ms; " + ACTIVE.size() + " held by this application:" + holders);
+    }
+
+    private static void printStack(StackTraceElement[] stack) {
+        StringBuilder trace = new StringBuilder();
+        for (StackTraceElement element : stack) {
+            trace.append("\tat ").append(element).append('\n');
+        }
+        System.err.print(trace);
+    }
+
+    // --- SQL shapes ---
+
+    /**
+     * Collapses whitespace and, for SQL with inlined values, replaces string and
+     * numeric literals with "?", so the same query with different values is one shape.
+     */
+    static String shapeOf(String sql, boolean replaceLiterals) {
+        StringBuilder shape = new StringBuilder(Math.min(sql.length(), MAX_SHAPE_LENGTH));
+        boolean space = false;
+        for (int i = 0; i < sql.length() && shape.length() < MAX_SHAPE_LENGTH; i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = shape.length() > 0;
+                continue;
+            }
+            if (space) {
+                shape.append(' ');
+                space = false;
+            }
+            if (replaceLiterals && (c == '\'' || c == '"')) {
+                for (i++; i < sql.length(); i++) {
+                    if (sql.charAt(i) == c) {
+                        if (i + 1 < sql.length() && sql.charAt(i + 1) == c) {
+                            i++; // doubled quote inside the literal
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                shape.append('?');
+            } else if (replaceLiterals && Character.isDigit(c)
+                    && (shape.length() == 0 || !Character.isLetterOrDigit(shape.charAt(shape.length() - 1))
+                        && shape.charAt(shape.length() - 1) != '_')) {
+                while (i + 1 < sql.length() && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                shape.append('?');
+            } else {
+                shape.append(c);
+            }
+        }
+        return shape.toString();
+    }
+
+    // --- Metrics ---
+
+    public static LatencyHistogram getAcquireWait() {
+        return ACQUIRE_WAIT;
+    }
+
+    /**
+     * Threads blocked in getConnection() right now.
+     */
+    public static long getWaitingCount() {
+        return WAITING.sum();
+    }
+
+    /**
+     * Connections this application holds right now.
+     */
+    public static int getBorrowedCount() {
+        return ACTIVE.size();
+    }
+
+    /**
+     * getConnection() calls that failed, mostly acquire timeouts.
+     */
+    public static long getAcquireFailureCount() {
+        return ACQUIRE_FAILURES.sum();
+    }
+
+    public static long getSlowQueryCount() {
+        return SLOW_QUERIES.sum();
+    }
+
+    public static long getLongHoldCount() {
+        return LONG_HOLDS.sum();
+    }
+
+    /**
+     * Connections never closed by a thread that has since ended.
+     */
+    public static long getLeakCount() {
+        return LEAKS.sum();
+    }
+
+    /**
+     * Hold time by borrower, sorted by name.
+     */
+    public static Map<String, LatencyHistogram> getHoldTimes() {
+        return snapshot(BORROWERS);
+    }
+
+    /**
+     * Execution time by SQL shape, sorted by shape.
+     */
+    public static Map<String, LatencyHistogram> getQueryTimes() {
+        return snapshot(SHAPES);
+    }
+
+    private static Map<String, LatencyHistogram> snapshot(Map<String, Timed> map) {
+        Map<String, LatencyHistogram> histograms = new TreeMap<>();
+        map.forEach((key, timed) -> {
+            if (timed.histogram.getCount() > 0) {
+                histograms.put(key, timed.histogram);
+            }
+        });
+        return histograms;
+    }
+
+    // --- Internals ---
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A histogram plus the time it last caused a log line.
+     */
+    private static final class Timed {
+        // Many of these exist and each is written by few threads at a time: one stripe
+        final LatencyHistogram histogram = new LatencyHistogram(1);
+        final AtomicLong lastLogged = new AtomicLong(NEVER);
+
+        boolean shouldLog(long now) {
+            long last = lastLogged.get();
+            return (last == NEVER || now - last >= LOG_INTERVAL_NANOS) && lastLogged.compareAndSet(last, now);
+        }
+    }
+
+    /**
+     * One borrowed connection: times statements made on it, and records its hold
+     * time when closed.
+     */
+    private static final class Borrow implements InvocationHandler {
+        final Connection delegate;
+        final Connection proxy;
+        final String borrower;
+        final Thread thread = Thread.currentThread();
+        final long acquiredAt;
+        volatile boolean longHoldReported;
+        private boolean closed;
+
+        Borrow(Connection delegate, String borrower, long acquiredAt) {
+            this.delegate = delegate;
+            this.borrower = borrower;
+            this.acquiredAt = acquiredAt;
+            this.proxy = (Connection) Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        ACTIVE.remove(this);
+                        timed(BORROWERS, borrower, MAX_BORROWERS).histogram.recordNanos(System.nanoTime() - acquiredAt);
+                    }
+                    return JdbcMetrics.invoke(delegate, method, args);
+                case "prepareStatement":
+                case "prepareCall":
+                    Object statement = JdbcMetrics.invoke(delegate, method, args);
+                    return new TimedStatement((Statement) statement, shapeOf((String) args[0], false), this).proxy;
+                case "createStatement":
+                    return new TimedStatement((Statement) JdbcMetrics.invoke(delegate, method, args), null, this).proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return JdbcMetrics.invoke(delegate, method, args);
+            }
+        }
+    }
+
+    /**
+     * Times execute*() calls of a statement under its SQL shape. For plain Statements
+     * the shape comes from the SQL passed to execute.
+     */
+    private static final class TimedStatement implements InvocationHandler {
+        final Statement delegate;
+        final Object proxy;
+        private final String preparedShape; // null for a plain Statement
+        private final Borrow borrow;
+
+        TimedStatement(Statement delegate, String preparedShape, Borrow borrow) {
+            this.delegate = delegate;
+            this.preparedShape = preparedShape;
+            this.borrow = borrow;
+            Class<?> iface = (delegate instanceof CallableStatement) ? CallableStatement.class
+                    : (delegate instanceof PreparedStatement) ? PreparedStatement.class : Statement.class;
+            this.proxy = Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(), new Class<?>[] {iface}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                if ("getConnection".equals(name)) {
+                    return borrow.proxy;
+                }
+                return JdbcMetrics.invoke(delegate, method, args);
+            }
+            String shape = preparedShape;
+            if (shape == null) {
+                shape = (args != null && args.length > 0 && args[0] instanceof String)
+                        ? shapeOf((String) args[0], true) : "(batch)";
+            }
+            long start = System.nanoTime();
+            try {
+                return JdbcMetrics.invoke(delegate, method, args);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                Timed timed = timed(SHAPES, shape, MAX_SHAPES);
+                timed.histogram.recordNanos(elapsed);
+                if (elapsed > SLOW_QUERY_NANOS) {
+                    SLOW_QUERIES.increment();
+                    if (timed.shouldLog(start + elapsed)) {
+                        System.err.println("Slow query: " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms in "
+                                + borrow.borrower + ": " + shape);
+                        printStack(new Throwable().getStackTrace());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.bank.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-memory latency histogram in the style of HdrHistogram: log-linear
+ * buckets with 32 linear sub-buckets per power of two, so any recorded value is
+ * reported within ~3% (exactly below 64 microseconds), from 1 microsecond up to
+ * about 19 hours, in 1056 counters.
+ *
+ * Recording is lock-free and allocation-free: one bucket increment, one count and
+ * sum update, and a CAS on the max only when a new maximum is seen. The buckets are
+ * striped by thread (up to 8 copies, one per core) so threads recording similar
+ * latencies do not all increment the same counter. Reads merge the stripes into a
+ * non-atomic snapshot, which is fine for monitoring. Counts are cumulative since start.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;          // 32
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;              // values below this are exact
+    private static final int MAX_MAGNITUDE = 36;                          // 2^36 us ~ 19 hours
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKETS = LINEAR_LIMIT + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final int DEFAULT_STRIPES =
+            Integer.highestOneBit(Math.min(8, Math.max(1, Runtime.getRuntime().availableProcessors())));
+
+    private final int stripeMask;
+    private final AtomicLongArray counts; // stripe-major
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes Copies of the buckets (rounded down to a power of two); 1 for
+     *                histograms that are many and rarely contended.
+     */
+    public LatencyHistogram(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes));
+        stripeMask = n - 1;
+        counts = new AtomicLongArray(BUCKETS * n);
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.incrementAndGet(stripe * BUCKETS + indexOf(value));
+        totalCount.increment();
+        totalMicros.add(value);
+        long max = maxMicros.get();
+        while (value > max && !maxMicros.compareAndSet(max, value)) {
+            max = maxMicros.get();
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);            // >= SUB_BUCKET_BITS + 1
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;            // 0..31
+        return LINEAR_LIMIT + (magnitude - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The largest value that falls in the bucket, as HdrHistogram reports percentiles.
+     */
+    static long highestValueIn(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int offset = index - LINEAR_LIMIT;
+        int shift = offset / SUB_BUCKETS + 1;
+        long subBucket = SUB_BUCKETS + offset % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getTotalMicros() {
+        return totalMicros.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param quantiles Ascending, each in (0, 1].
+     * @return The value at each quantile in microseconds (0 while empty).
+     */
+    public long[] getQuantileMicros(double... quantiles) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = counts.get(stripe * BUCKETS + i);
+                snapshot[i] += count;
+                total += count;
+            }
+        }
+        long[] values = new long[quantiles.length];
+        if (total == 0) {
+            return values;
+        }
+        long max = maxMicros.get();
+        long seen = 0;
+        int q = 0;
+        for (int i = 0; i < BUCKETS && q < quantiles.length; i++) {
+            seen += snapshot[i];
+            while (q < quantiles.length && seen >= (long) Math.ceil(quantiles[q] * total)) {
+                values[q++] = Math.min(highestValueIn(i), max);
+            }
+        }
+        while (q < quantiles.length) {
+            values[q++] = max;
+        }
+        return values;
+    }
+}
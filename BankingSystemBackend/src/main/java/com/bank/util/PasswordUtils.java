@@ -1,43 +1,87 @@
 package com.bank.util;
 
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class PasswordUtils {
 
+    private static final int HASH_BYTES = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // MessageDigest.getInstance is a provider lookup; each thread keeps one digest and its output buffer
+    private static final ThreadLocal<Sha256> SHA256 = ThreadLocal.withInitial(Sha256::new);
+
     /**
      * Hashes a plain-text password using SHA-256.
      * @param password The plain-text password.
      * @return A 64-character hex string representing the hash.
      */
     public static String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+        byte[] hash = SHA256.get().digest(password);
+        char[] hex = new char[HASH_BYTES * 2];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
         }
+        return new String(hex);
     }
 
     /**
      * Checks a plain-text password against a stored SHA-256 hash.
+     * Compares the digest against the hex string in place, without building a
+     * second string, and in constant time so the match length does not leak.
      * @param plainPassword The password to check.
      * @param hashedPassword The stored hash from the database.
      * @return true if the passwords match, false otherwise.
      */
     public static boolean checkPassword(String plainPassword, String hashedPassword) {
-        String hashOfPlainPassword = hashPassword(plainPassword);
-        return hashOfPlainPassword.equals(hashedPassword);
+        if (hashedPassword == null || hashedPassword.length() != HASH_BYTES * 2) {
+            return false;
+        }
+        byte[] hash = SHA256.get().digest(plainPassword);
+        int diff = 0;
+        for (int i = 0; i < HASH_BYTES; i++) {
+            diff |= hexValue(hashedPassword.charAt(2 * i)) ^ ((hash[i] >> 4) & 0xF);
+            diff |= hexValue(hashedPassword.charAt(2 * i + 1)) ^ (hash[i] & 0xF);
+        }
+        return diff == 0;
+    }
+
+    /**
+     * @return 0-15 for a lowercase hex digit, -1 (never equal to a nibble) otherwise.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -1;
+    }
+
+    private static final class Sha256 {
+        final MessageDigest md;
+        final byte[] out = new byte[HASH_BYTES];
+
+        Sha256() {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-256 algorithm not found", e);
+            }
+        }
+
+        /**
+         * @return This thread's output buffer, valid until its next call.
+         */
+        byte[] digest(String text) {
+            md.update(text.getBytes(StandardCharsets.UTF_8));
+            try {
+                md.digest(out, 0, HASH_BYTES); // also resets the digest
+            } catch (DigestException e) {
+                md.reset();
+                throw new IllegalStateException(e);
+            }
+            return out;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package com.bank.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets keyed by string (a user, a client address), all with the same
+ * rate and burst size.
+ *
+ * Each bucket is a single AtomicLong updated by CAS, using the GCRA form of a token
+ * bucket: it stores the "theoretical arrival time" (TAT) at which the bucket would
+ * be full again, instead of a token count plus a refill timestamp. A request is
+ * admitted if TAT - now <= (burst - 1) * interval and then pushes TAT forward by
+ * one interval. A bucket whose TAT is in the past is full, so forgetting it changes
+ * nothing: that is what makes evicting idle buckets exact. Buckets are swept when
+ * the map grows past maxKeys (and by callers on a timer); if every bucket is still
+ * busy, new keys share one overflow bucket rather than growing the map further.
+ */
+public class RateLimiter {
+
+    // Keeps TAT arithmetic well inside the range where System.nanoTime() differences are exact
+    private static final long MAX_SPAN_NANOS = Long.MAX_VALUE / 4;
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param permitsPerSecond Sustained rate per key; must be positive.
+     * @param burst            Requests a full bucket admits back to back.
+     * @param maxKeys          Bound on the number of buckets kept.
+     * @throws IllegalArgumentException if the rate is not positive, or so low that a
+     *         full bucket's span (burst intervals) does not fit the clock arithmetic.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxKeys) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive, got " + permitsPerSecond);
+        }
+        double spanNanos = 1_000_000_000d / permitsPerSecond * Math.max(1, burst);
+        if (spanNanos > MAX_SPAN_NANOS) {
+            throw new IllegalArgumentException("Rate " + permitsPerSecond + "/s with burst " + burst + " is too low.");
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    /**
+     * Takes one permit from the key's bucket.
+     * @return 0 if admitted, otherwise the nanoseconds until a permit is available.
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = bucketFor(key, now);
+        while (true) {
+            long tat = bucket.get();
+            long start = (tat == Long.MIN_VALUE || tat - now < 0) ? now : tat; // full bucket: start from now
+            long wait = start - now - toleranceNanos;
+            if (wait > 0) {
+                rejections.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(tat, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucketFor(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            evictIdle();
+            if (buckets.size() >= maxKeys) {
+                return overflow;
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    /**
+     * Forgets every bucket that has refilled completely since its last use.
+     * Runs at most once per second however often it is called.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < 1_000_000_000L || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        buckets.entrySet().removeIf(e -> {
+            long tat = e.getValue().get();
+            boolean idle = tat == Long.MIN_VALUE || tat - now < 0;
+            if (idle) {
+                evictions.increment();
+            }
+            return idle;
+        });
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+}
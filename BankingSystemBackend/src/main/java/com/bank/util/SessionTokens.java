@@ -0,0 +1,352 @@
+package com.bank.util;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stateless, HMAC-SHA256 signed session tokens for auth.mode=TOKEN, so any node
+ * can authenticate any request without sticky sessions or session replication.
+ *
+ * A token is base64url(payload) + "." + base64url(HMAC-SHA256(payload)), where the
+ * payload is a fixed binary layout:
+ *   version(1) keyId(1) tokenId(8) userId(4) expiresAt epoch seconds(8)
+ *   role length(1) role(ASCII) username length(1) username(UTF-8)
+ *
+ * Keys come from auth.token.keys ("id:base64secret,id:base64secret", ids 1-255);
+ * each secret must decode to at least 32 bytes, or the class fails to load.
+ * New tokens are signed with auth.token.activeKeyId; every listed key still
+ * verifies, so a key is rotated by adding the new one, making it active, and
+ * dropping the old one after a token lifetime.
+ *
+ * Revocation (logout) is a small set of token IDs kept until the tokens would
+ * have expired anyway; callers keep it in sync across nodes (see AuthTokenFilter).
+ * Verification decodes into per-thread buffers and reuses a per-thread Mac, so a
+ * valid token costs one HMAC and the strings of the resulting principal.
+ */
+public final class SessionTokens {
+
+    public enum AuthMode { SESSION, TOKEN }
+
+    private static final AuthMode MODE =
+            AuthMode.valueOf(AppConfig.getString("auth.mode", "SESSION").toUpperCase(Locale.ROOT));
+    private static final long TTL_SECONDS = AppConfig.getLong("auth.token.ttlMinutes", 30) * 60;
+
+    private static final int VERSION = 1;
+    private static final int MAC_BYTES = 32;
+    private static final int MIN_KEY_BYTES = 32; // no weaker than the HMAC-SHA256 output
+    private static final int MAX_PAYLOAD_BYTES = 1 + 1 + 8 + 4 + 8 + 1 + 255 + 1 + 255;
+    private static final int MAX_TOKEN_CHARS = (MAX_PAYLOAD_BYTES + 2) / 3 * 4 + 1 + (MAC_BYTES + 2) / 3 * 4;
+
+    private static final byte[][] KEYS = new byte[256][]; // by key id; null if not configured
+    private static final int ACTIVE_KEY_ID;
+    static {
+        String configured = AppConfig.getString("auth.token.keys", null);
+        if (configured == null || configured.trim().isEmpty()) {
+            byte[] key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            KEYS[1] = key;
+            if (MODE == AuthMode.TOKEN) {
+                System.err.println("auth.token.keys is not set: using a random key; tokens only work on this node until restart.");
+            }
+        } else {
+            for (String entry : configured.split(",")) {
+                String[] parts = entry.trim().split(":", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("auth.token.keys: expected id:base64secret, got " + entry.trim());
+                }
+                int id = Integer.parseInt(parts[0].trim());
+                if (id < 1 || id > 255) {
+                    throw new IllegalArgumentException("auth.token.keys: key id must be 1-255, got " + id);
+                }
+                byte[] key = Base64.getDecoder().decode(parts[1].trim());
+                if (key.length < MIN_KEY_BYTES) {
+                    throw new IllegalArgumentException("auth.token.keys: key " + id + " is " + key.length
+                            + " bytes; at least " + MIN_KEY_BYTES + " random bytes are required");
+                }
+                KEYS[id] = key;
+            }
+        }
+        ACTIVE_KEY_ID = AppConfig.getInt("auth.token.activeKeyId", 1);
+        if (ACTIVE_KEY_ID < 1 || ACTIVE_KEY_ID > 255 || KEYS[ACTIVE_KEY_ID] == null) {
+            throw new IllegalArgumentException("auth.token.activeKeyId " + ACTIVE_KEY_ID + " is not in auth.token.keys");
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // tokenId -> expiresAt (epoch seconds)
+    private static final Map<Long, Long> REVOKED = new ConcurrentHashMap<>();
+
+    private SessionTokens() {
+    }
+
+    public static boolean isEnabled() {
+        return MODE == AuthMode.TOKEN;
+    }
+
+    public static long getTtlSeconds() {
+        return TTL_SECONDS;
+    }
+
+    /**
+     * Signs a new token for the user with the active key.
+     */
+    public static String issue(int userId, String role, String username) {
+        byte[] roleBytes = role.getBytes(StandardCharsets.US_ASCII);
+        byte[] nameBytes = username.getBytes(StandardCharsets.UTF_8);
+        if (roleBytes.length > 255 || nameBytes.length > 255) {
+            throw new IllegalArgumentException("Role or username too long for a token.");
+        }
+        byte[] payload = new byte[1 + 1 + 8 + 4 + 8 + 1 + roleBytes.length + 1 + nameBytes.length];
+        int p = 0;
+        payload[p++] = VERSION;
+        payload[p++] = (byte) ACTIVE_KEY_ID;
+        p = putLong(payload, p, RANDOM.nextLong());
+        p = putInt(payload, p, userId);
+        p = putLong(payload, p, System.currentTimeMillis() / 1000 + TTL_SECONDS);
+        payload[p++] = (byte) roleBytes.length;
+        System.arraycopy(roleBytes, 0, payload, p, roleBytes.length);
+        p += roleBytes.length;
+        payload[p++] = (byte) nameBytes.length;
+        System.arraycopy(nameBytes, 0, payload, p, nameBytes.length);
+
+        Scratch scratch = SCRATCH.get();
+        sign(scratch, ACTIVE_KEY_ID, payload, payload.length);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + "." + encoder.encodeToString(scratch.mac);
+    }
+
+    /**
+     * @return The token's claims, or null if it is malformed, badly signed, signed
+     *         with an unknown key, expired or revoked.
+     */
+    public static Claims verify(String token) {
+        if (token == null || token.length() > MAX_TOKEN_CHARS) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        Scratch scratch = SCRATCH.get();
+        int payloadLength = decode(token, 0, dot, scratch.payload);
+        int macLength = decode(token, dot + 1, token.length(), scratch.expectedMac);
+        if (payloadLength < 1 + 1 + 8 + 4 + 8 + 1 + 1 || macLength != MAC_BYTES) {
+            return null;
+        }
+        byte[] payload = scratch.payload;
+        int keyId = payload[1] & 0xFF;
+        if (payload[0] != VERSION || KEYS[keyId] == null) {
+            return null;
+        }
+
+        sign(scratch, keyId, payload, payloadLength);
+        int diff = 0;
+        for (int i = 0; i < MAC_BYTES; i++) {
+            diff |= scratch.mac[i] ^ scratch.expectedMac[i];
+        }
+        if (diff != 0) {
+            return null;
+        }
+
+        int p = 2;
+        long tokenId = getLong(payload, p);
+        p += 8;
+        int userId = getInt(payload, p);
+        p += 4;
+        long expiresAt = getLong(payload, p);
+        p += 8;
+        if (System.currentTimeMillis() / 1000 >= expiresAt || REVOKED.containsKey(tokenId)) {
+            return null;
+        }
+        int roleLength = payload[p++] & 0xFF;
+        if (p + roleLength + 1 > payloadLength) {
+            return null;
+        }
+        String role = role(payload, p, roleLength);
+        p += roleLength;
+        int nameLength = payload[p++] & 0xFF;
+        if (p + nameLength != payloadLength) {
+            return null;
+        }
+        String username = new String(payload, p, nameLength, StandardCharsets.UTF_8);
+        return new Claims(tokenId, userId, role, username, expiresAt);
+    }
+
+    // --- Revocation ---
+
+    /**
+     * Revokes a token on this node until it would have expired.
+     */
+    public static void revoke(long tokenId, long expiresAt) {
+        REVOKED.put(tokenId, expiresAt);
+    }
+
+    /**
+     * Adds revocations made elsewhere and forgets those whose tokens have expired.
+     */
+    public static void syncRevoked(Map<Long, Long> revoked) {
+        REVOKED.putAll(revoked);
+        long now = System.currentTimeMillis() / 1000;
+        REVOKED.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    public static int getRevokedCount() {
+        return REVOKED.size();
+    }
+
+    // --- Internals ---
+
+    private static void sign(Scratch scratch, int keyId, byte[] payload, int length) {
+        Mac mac = scratch.macs[keyId];
+        try {
+            if (mac == null) {
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(KEYS[keyId], "HmacSHA256"));
+                scratch.macs[keyId] = mac;
+            }
+            mac.update(payload, 0, length);
+            mac.doFinal(scratch.mac, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the shared constant for the usual roles so verifying allocates no role string.
+     */
+    private static String role(byte[] bytes, int offset, int length) {
+        if (matches(bytes, offset, length, "CUSTOMER")) return "CUSTOMER";
+        if (matches(bytes, offset, length, "ADMIN")) return "ADMIN";
+        return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean matches(byte[] bytes, int offset, int length, String ascii) {
+        if (length != ascii.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes unpadded base64url text[from, to) into dst.
+     * @return The number of bytes written, or -1 if the text is not valid or does not fit.
+     */
+    private static int decode(String text, int from, int to, byte[] dst) {
+        int out = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = from; i < to; i++) {
+            int v = base64UrlValue(text.charAt(i));
+            if (v < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | v;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                if (out == dst.length) {
+                    return -1;
+                }
+                dst[out++] = (byte) (bits >> bitCount);
+            }
+        }
+        return (bitCount >= 6) ? -1 : out; // a lone trailing character cannot be valid
+    }
+
+    private static int base64UrlValue(char c) {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if (c >= '0' && c <= '9') return c - '0' + 52;
+        if (c == '-') return 62;
+        if (c == '_') return 63;
+        return -1;
+    }
+
+    private static int putLong(byte[] b, int p, long v) {
+        for (int i = 7; i >= 0; i--) {
+            b[p++] = (byte) (v >>> (i * 8));
+        }
+        return p;
+    }
+
+    private static int putInt(byte[] b, int p, int v) {
+        for (int i = 3; i >= 0; i--) {
+            b[p++] = (byte) (v >>> (i * 8));
+        }
+        return p;
+    }
+
+    private static long getLong(byte[] b, int p) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[p + i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static int getInt(byte[] b, int p) {
+        return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+    }
+
+    private static final class Scratch {
+        final byte[] payload = new byte[MAX_PAYLOAD_BYTES];
+        final byte[] expectedMac = new byte[MAC_BYTES];
+        final byte[] mac = new byte[MAC_BYTES];
+        final Mac[] macs = new Mac[256]; // initialized per key on first use
+    }
+
+    /**
+     * What a verified token says.
+     */
+    public static final class Claims {
+        private final long tokenId;
+        private final int userId;
+        private final String role;
+        private final String username;
+        private final long expiresAt;
+
+        Claims(long tokenId, int userId, String role, String username, long expiresAt) {
+            this.tokenId = tokenId;
+            this.userId = userId;
+            this.role = role;
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+
+        public long getTokenId() {
+            return tokenId;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * Epoch seconds.
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.bank.util;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps prepared statements open per physical connection, so the DAO hot paths
+ * prepare each SQL string once per pooled connection instead of once per call.
+ *
+ * DAOs keep their usual code: {@link DatabaseConnection#getConnection()} hands out
+ * a wrapper whose single-argument prepareStatement(sql) returns a cached statement,
+ * and closing that statement returns it to the cache instead of closing it.
+ * Statements are prepared on the driver connection behind the pool's wrapper
+ * (the pool closes anything prepared through its wrapper on return). That connection
+ * is reached through Connector/J's JdbcConnection or, for other drivers, through
+ * {@link ConnectionPool}; otherwise statements are prepared without caching.
+ *
+ * db.prepareMode picks how statements are prepared, to compare the two:
+ *   DRIVER - whatever the connection URL says (useServerPrepStmts)
+ *   SERVER - server-side prepare (one COM_STMT_PREPARE round trip per miss)
+ *   CLIENT - client-side prepare (parsed locally, parameters inlined on execute)
+ */
+public final class StatementCache {
+
+    public enum PrepareMode { DRIVER, SERVER, CLIENT }
+
+    private static final boolean ENABLED = AppConfig.getBoolean("db.statementCache.enabled", true);
+    private static final int MAX_PER_CONNECTION = AppConfig.getInt("db.statementCache.size", 64);
+    private static final PrepareMode MODE =
+            PrepareMode.valueOf(AppConfig.getString("db.prepareMode", "DRIVER").toUpperCase(Locale.ROOT));
+
+    // Keyed by the driver connection; driver connections use identity equality
+    private static final Map<Connection, ConnectionStatements> CACHES = new ConcurrentHashMap<>();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder PREPARE_NANOS = new LongAdder();
+
+    private StatementCache() {
+    }
+
+    /**
+     * Wraps a pooled connection so its prepareStatement(sql) goes through the cache.
+     */
+    static Connection wrap(Connection pooled) throws SQLException {
+        if (!ENABLED && MODE == PrepareMode.DRIVER) {
+            return pooled;
+        }
+        Connection physical = pooled.isWrapperFor(JdbcConnection.class)
+                ? pooled.unwrap(JdbcConnection.class)
+                : ConnectionPool.physicalConnectionOf(pooled);
+        return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(pooled, physical));
+    }
+
+    // --- Metrics ---
+
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    /**
+     * Number of statements actually prepared (cache misses, or every call when disabled).
+     */
+    public static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Total time spent preparing statements.
+     */
+    public static long getPrepareNanos() {
+        return PREPARE_NANOS.sum();
+    }
+
+    /**
+     * Prepare time avoided so far: cache hits times the average cost of a miss.
+     */
+    public static long getEstimatedNanosSaved() {
+        long misses = MISSES.sum();
+        return misses == 0 ? 0 : HITS.sum() * (PREPARE_NANOS.sum() / misses);
+    }
+
+    public static PrepareMode getPrepareMode() {
+        return MODE;
+    }
+
+    // --- Internals ---
+
+    private static PreparedStatement prepare(Connection conn, JdbcConnection physical, String sql) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps;
+        if (physical != null && MODE == PrepareMode.SERVER) {
+            ps = physical.serverPrepareStatement(sql);
+        } else if (physical != null && MODE == PrepareMode.CLIENT) {
+            ps = physical.clientPrepareStatement(sql);
+        } else {
+            ps = conn.prepareStatement(sql);
+        }
+        PREPARE_NANOS.add(System.nanoTime() - start);
+        MISSES.increment();
+        return ps;
+    }
+
+    /**
+     * Drops the caches of driver connections the pool has since closed.
+     */
+    private static void purgeClosed() {
+        for (Iterator<Map.Entry<Connection, ConnectionStatements>> it = CACHES.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, ConnectionStatements> entry = it.next();
+            try {
+                if (entry.getKey().isClosed()) {
+                    it.remove();
+                }
+            } catch (SQLException e) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection pooled;
+        private final Connection physical; // null if the driver connection is not reachable
+
+        ConnectionHandler(Connection pooled, Connection physical) {
+            this.pooled = pooled;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (args != null && args.length == 1 && "prepareStatement".equals(method.getName())) {
+                return prepareStatement((String) args[0]);
+            }
+            return StatementCache.invoke(pooled, method, args);
+        }
+
+        private PreparedStatement prepareStatement(String sql) throws SQLException {
+            JdbcConnection driver = (physical instanceof JdbcConnection) ? (JdbcConnection) physical : null;
+            if (!ENABLED || physical == null) {
+                return StatementCache.prepare(pooled, driver, sql);
+            }
+            ConnectionStatements statements = CACHES.get(physical);
+            if (statements == null) {
+                purgeClosed(); // a new driver connection usually means an old one was retired
+                statements = CACHES.computeIfAbsent(physical, c -> new ConnectionStatements());
+            }
+            CachedStatement cached = statements.checkout(sql);
+            if (cached != null) {
+                HITS.increment();
+                return cached.proxy;
+            }
+            cached = new CachedStatement(statements, sql, StatementCache.prepare(physical, driver, sql));
+            statements.add(cached);
+            return cached.proxy;
+        }
+    }
+
+    /**
+     * The cached statements of one driver connection, least recently used first.
+     * Only the current borrower touches it, so the locks are uncontended.
+     */
+    private static final class ConnectionStatements extends LinkedHashMap<String, CachedStatement> {
+        ConnectionStatements() {
+            super(16, 0.75f, true);
+        }
+
+        synchronized CachedStatement checkout(String sql) {
+            CachedStatement cached = get(sql);
+            if (cached == null || cached.inUse) {
+                return null; // same SQL open twice on one connection: the second is uncached
+            }
+            try {
+                if (cached.delegate.isClosed()) {
+                    remove(sql);
+                    return null;
+                }
+            } catch (SQLException e) {
+                remove(sql);
+                return null;
+            }
+            cached.inUse = true;
+            return cached;
+        }
+
+        synchronized void add(CachedStatement cached) {
+            if (!containsKey(cached.sql)) {
+                put(cached.sql, cached);
+            } else {
+                cached.evicted = true; // closed for real when released
+            }
+        }
+
+        synchronized void release(CachedStatement cached) {
+            cached.inUse = false;
+            boolean reusable = !cached.evicted;
+            if (reusable) {
+                try {
+                    cached.delegate.clearParameters();
+                } catch (SQLException e) {
+                    reusable = false;
+                    remove(cached.sql);
+                }
+            }
+            if (!reusable) {
+                closeQuietly(cached.delegate);
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= MAX_PER_CONNECTION) {
+                return false;
+            }
+            CachedStatement cached = eldest.getValue();
+            cached.evicted = true;
+            if (!cached.inUse) {
+                closeQuietly(cached.delegate);
+            }
+            return true;
+        }
+
+        private static void closeQuietly(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A cached statement plus the proxy handed to DAOs; close() on the proxy releases it.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+        final ConnectionStatements owner;
+        final String sql;
+        final PreparedStatement delegate;
+        final PreparedStatement proxy;
+        boolean inUse = true;
+        boolean evicted;
+
+        CachedStatement(ConnectionStatements owner, String sql, PreparedStatement delegate) {
+            this.owner = owner;
+            this.sql = sql;
+            this.delegate = delegate;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        owner.release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse;
+                default:
+                    return StatementCache.invoke(delegate, method, args);
+            }
+        }
+    }
+}
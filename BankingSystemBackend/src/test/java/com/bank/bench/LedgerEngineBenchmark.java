@@ -0,0 +1,101 @@
+package com.bank.bench;
+
+import com.bank.ledger.EntryType;
+import com.bank.ledger.LedgerEngine;
+import com.bank.ledger.LedgerFixtures;
+import com.bank.ledger.LedgerResult;
+import com.bank.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer throughput of the in-memory ledger engines (TransactionServlet) at several
+ * thread counts: GLOBAL is the original single-monitor behaviour, STRIPED the default,
+ * RING the single-writer ring buffer. Each transfer moves 0.01 from a random account;
+ * merchantPercent of them go to one of `merchants` merchant accounts (the skewed
+ * workload, where striped locks convoy on a few hot accounts), the rest to a random one.
+ *
+ * Every entry is kept in memory, so each iteration starts from a fresh engine (STRIPED
+ * with 4 stripes per core, RING with 1024 slots, as configured by default).
+ * Run (threads default to 1, 4, 16 and 64; pass others as arguments):
+ *   mvn -f POM.xml test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.bank.bench.LedgerEngineBenchmark [threads...]
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LedgerEngineBenchmark {
+
+    private static final Money AMOUNT = Money.ofMinor(1);
+    private static final long OPENING_BALANCE = 1_000_000_000_000L; // never runs out within an iteration
+
+    @State(Scope.Benchmark)
+    public static class Ledger {
+        @Param({"GLOBAL", "STRIPED", "RING"})
+        public String engine;
+
+        @Param({"10000"})
+        public int accounts;
+
+        @Param({"0", "80"})
+        public int merchantPercent;
+
+        @Param({"8"})
+        public int merchants;
+
+        LedgerEngine ledger;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            ledger = LedgerFixtures.funded(engine, accounts, Money.ofMinor(OPENING_BALANCE));
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            ledger.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public LedgerResult transfer(Ledger ledger, Caller caller) {
+        SplittableRandom random = caller.random;
+        long from = ledger.merchants + random.nextInt(ledger.accounts - ledger.merchants);
+        long to = random.nextInt(100) < ledger.merchantPercent
+                ? random.nextInt(ledger.merchants) : random.nextInt(ledger.accounts);
+        return ledger.ledger.execute(EntryType.TRANSFER, from, to, AMOUNT);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] threadCounts = args.length > 0 ? args : new String[] {"1", "4", "16", "64"};
+        for (String threads : threadCounts) {
+            new Runner(new OptionsBuilder()
+                    .include(LedgerEngineBenchmark.class.getSimpleName())
+                    .threads(Integer.parseInt(threads))
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.bank.bench;
+
+import com.bank.ledger.EntryType;
+import com.bank.ledger.LedgerEngine;
+import com.bank.ledger.LedgerFixtures;
+import com.bank.ledger.LedgerResult;
+import com.bank.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of the ledger's write-ahead journal (ledger.journal.dir):
+ *
+ * - transfer: sustained transfer throughput with every command journaled, for several
+ *   ledger.journal.syncEveryEntries values (1 is an fsync per command), on the same
+ *   uniform and merchant-skewed workloads as LedgerEngineBenchmark.
+ * - recover: startup time to replay a journal of `records` transfers with no snapshot,
+ *   the worst case between two snapshots (ledger.journal.snapshotEvery).
+ *
+ * Journals are written under java.io.tmpdir; point it at the disk the service uses, since
+ * fsync on tmpfs costs nothing.
+ * Run (threads default to 1, 4, 16 and 64; pass others as arguments):
+ *   mvn -f POM.xml test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.bank.bench.LedgerJournalBenchmark [threads...]
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LedgerJournalBenchmark {
+
+    private static final Money AMOUNT = Money.ofMinor(1);
+    private static final long OPENING_BALANCE = 1_000_000_000_000L; // never runs out within an iteration
+
+    @State(Scope.Benchmark)
+    public static class JournaledLedger {
+        @Param({"STRIPED", "RING"})
+        public String engine;
+
+        @Param({"1", "64", "1024"})
+        public int syncEveryEntries;
+
+        @Param({"10000"})
+        public int accounts;
+
+        @Param({"0", "80"})
+        public int merchantPercent;
+
+        @Param({"8"})
+        public int merchants;
+
+        Path dir;
+        LedgerEngine ledger;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("ledger-bench");
+            ledger = LedgerFixtures.journaled(engine, dir, syncEveryEntries, 0);
+            LedgerFixtures.openAccounts(ledger, accounts, Money.ofMinor(OPENING_BALANCE));
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            ledger.shutdown();
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WrittenJournal {
+        @Param({"100000", "1000000"})
+        public int records;
+
+        @Param({"10000"})
+        public int accounts;
+
+        Path dir;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("ledger-bench");
+            LedgerEngine ledger = LedgerFixtures.journaled("STRIPED", dir, 1024, 0);
+            LedgerFixtures.openAccounts(ledger, accounts, Money.ofMinor(OPENING_BALANCE));
+            SplittableRandom random = new SplittableRandom(42);
+            for (int i = 0; i < records; i++) {
+                ledger.execute(EntryType.TRANSFER, random.nextInt(accounts), random.nextInt(accounts), AMOUNT);
+            }
+            ledger.shutdown();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public LedgerResult transfer(JournaledLedger ledger, Caller caller) {
+        SplittableRandom random = caller.random;
+        long from = ledger.merchants + random.nextInt(ledger.accounts - ledger.merchants);
+        long to = random.nextInt(100) < ledger.merchantPercent
+                ? random.nextInt(ledger.merchants) : random.nextInt(ledger.accounts);
+        return ledger.ledger.execute(EntryType.TRANSFER, from, to, AMOUNT);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public Money recover(WrittenJournal journal) throws IOException {
+        LedgerEngine ledger = LedgerFixtures.journaled("STRIPED", journal.dir, 64, 0);
+        ledger.shutdown(); // adds an empty segment; replay cost is unchanged
+        return ledger.getBalance(0);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] threadCounts = args.length > 0 ? args : new String[] {"1", "4", "16", "64"};
+        for (String threads : threadCounts) {
+            new Runner(new OptionsBuilder()
+                    .include(LedgerJournalBenchmark.class.getSimpleName() + ".transfer")
+                    .threads(Integer.parseInt(threads))
+                    .build()).run();
+        }
+        new Runner(new OptionsBuilder()
+                .include(LedgerJournalBenchmark.class.getSimpleName() + ".recover")
+                .build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package com.bank.bench;
+
+import com.bank.dao.UserCredentials;
+import com.bank.dao.UserDao;
+import com.bank.model.User;
+import com.bank.util.PasswordUtils;
+import com.bank.util.TestDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login throughput against H2 (MySQL mode) behind the built-in pool: 1000 users, 4 threads,
+ * about 1 in 6 attempts for a username that does not exist.
+ *
+ *   twoQueries      - the old login: password hash, then the profile, hex string compare
+ *   oneQuery        - getCredentialsByUsername with the credential cache off
+ *   oneQueryCached  - the same with the cache on (the default)
+ *
+ * Run:
+ *   mvn -f POM.xml test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.bank.bench.LoginBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int USERNAMES = 1200; // the last 200 do not exist
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        final UserDao dao = new UserDao();
+
+        @Setup
+        public void setUp() throws Exception {
+            TestDatabase.install("login_bench", 8, 5_000);
+            for (int i = 0; i < USERS; i++) {
+                TestDatabase.execute("INSERT INTO users (username, password_hash, status) VALUES ('user" + i
+                        + "', '" + PasswordUtils.hashPassword("pw" + i) + "', 'ACTIVE')");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Attempts {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next() {
+            return random.nextInt(USERNAMES);
+        }
+    }
+
+    @Benchmark
+    public boolean twoQueries(Database db, Attempts attempts) {
+        int u = attempts.next();
+        String username = "user" + u;
+        String hash = db.dao.getPasswordHashByUsername(username);
+        if (hash == null || !hash.equals(PasswordUtils.hashPassword("pw" + u))) {
+            return false;
+        }
+        User user = db.dao.getUserByUsername(username);
+        return "ACTIVE".equals(user.getStatus());
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dauth.cache.enabled=false")
+    public boolean oneQuery(Database db, Attempts attempts) {
+        return login(db, attempts);
+    }
+
+    @Benchmark
+    public boolean oneQueryCached(Database db, Attempts attempts) {
+        return login(db, attempts);
+    }
+
+    private static boolean login(Database db, Attempts attempts) {
+        int u = attempts.next();
+        UserCredentials credentials = db.dao.getCredentialsByUsername("user" + u);
+        if (credentials == null || !PasswordUtils.checkPassword("pw" + u, credentials.getPasswordHash())) {
+            return false;
+        }
+        return "ACTIVE".equals(credentials.toUser().getStatus());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoginBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
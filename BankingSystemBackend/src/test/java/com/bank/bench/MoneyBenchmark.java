@@ -0,0 +1,112 @@
+package com.bank.bench;
+
+import com.bank.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money against BigDecimal on the ledger hot path: parse the request amount, check it is
+ * positive, check funds, debit one balance and credit another.
+ *
+ * Run with allocation profiling:
+ *   mvn -f POM.xml test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.bank.bench.MoneyBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final String[] AMOUNTS = {"25.00", "0.99", "1250.50", "3", "74.10", "19.99", "500", "0.01"};
+
+    private int next;
+    private BigDecimal decimalSource;
+    private BigDecimal decimalTarget;
+    private long minorSource;
+    private long minorTarget;
+
+    @Setup
+    public void setUp() {
+        decimalSource = new BigDecimal("1000000000.00");
+        decimalTarget = BigDecimal.ZERO.setScale(2);
+        minorSource = Money.parse("1000000000.00").getMinorUnits();
+        minorTarget = 0;
+    }
+
+    private String nextAmount() {
+        String amount = AMOUNTS[next];
+        next = (next + 1) & (AMOUNTS.length - 1);
+        return amount;
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalTransfer() {
+        BigDecimal amount = new BigDecimal(nextAmount());
+        if (amount.compareTo(BigDecimal.ZERO) <= 0 || amount.scale() > 2) {
+            throw new IllegalArgumentException();
+        }
+        if (decimalSource.compareTo(amount) < 0) {
+            setUp(); // refill rather than measuring the rejection path
+        }
+        decimalSource = decimalSource.subtract(amount);
+        decimalTarget = decimalTarget.add(amount);
+        return decimalTarget;
+    }
+
+    @Benchmark
+    public long moneyTransfer() {
+        Money amount = Money.parse(nextAmount());
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException();
+        }
+        if (minorSource < amount.getMinorUnits()) {
+            setUp();
+        }
+        // The ledger keeps balances as primitive minor units; only the amount is a Money
+        minorSource = Math.subtractExact(minorSource, amount.getMinorUnits());
+        minorTarget = Math.addExact(minorTarget, amount.getMinorUnits());
+        return minorTarget;
+    }
+
+    @Benchmark
+    public Money moneyObjectTransfer() {
+        Money amount = Money.parse(nextAmount());
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException();
+        }
+        Money source = Money.ofMinor(minorSource);
+        if (source.isLessThan(amount)) {
+            setUp();
+            source = Money.ofMinor(minorSource);
+        }
+        // Balances as Money objects too, as in the DAO paths
+        Money target = Money.ofMinor(minorTarget).plus(amount);
+        minorSource = source.minus(amount).getMinorUnits();
+        minorTarget = target.getMinorUnits();
+        return target;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
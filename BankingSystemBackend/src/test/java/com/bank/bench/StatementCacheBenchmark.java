@@ -0,0 +1,101 @@
+package com.bank.bench;
+
+import com.bank.dao.AccountDao;
+import com.bank.model.Money;
+import com.bank.util.TestDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request latency of the deposit and transfer paths with the prepared-statement
+ * cache on (the default) and off (db.statementCache.enabled=false), against H2 (MySQL
+ * mode) behind the built-in pool: 1000 accounts, one caller, so the difference is the
+ * prepare work the cache saves on each request rather than queueing.
+ *
+ * H2 prepares in-process, so this is the parse/plan cost alone; with Connector/J and
+ * server-side prepares each avoided prepare is also a network round trip.
+ * Run:
+ *   mvn -f POM.xml test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.bank.bench.StatementCacheBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        final AccountDao dao = new AccountDao();
+
+        @Setup
+        public void setUp() throws Exception {
+            TestDatabase.install("statement_cache_bench", 4, 5_000);
+            TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) "
+                    + "SELECT 1, CAST(4000000000 + X AS VARCHAR), 'CHECKING', 1000000000.00 "
+                    + "FROM SYSTEM_RANGE(1, " + ACCOUNTS + ")");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int account() {
+            return 1 + random.nextInt(ACCOUNTS);
+        }
+    }
+
+    @Benchmark
+    public boolean deposit(Database db, Caller caller) {
+        return db.dao.updateBalance(caller.account(), AMOUNT);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Ddb.statementCache.enabled=false")
+    public boolean depositUncached(Database db, Caller caller) {
+        return deposit(db, caller);
+    }
+
+    @Benchmark
+    public boolean transfer(Database db, Caller caller) {
+        int from = caller.account();
+        int to = caller.account();
+        if (to == from) {
+            to = to % ACCOUNTS + 1;
+        }
+        return db.dao.transferFunds(from, String.valueOf(4_000_000_000L + to), AMOUNT);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Ddb.statementCache.enabled=false")
+    public boolean transferUncached(Database db, Caller caller) {
+        return transfer(db, caller);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StatementCacheBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
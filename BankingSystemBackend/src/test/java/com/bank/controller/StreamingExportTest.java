@@ -0,0 +1,164 @@
+package com.bank.controller;
+
+import com.bank.dao.TransactionDao;
+import com.bank.dao.UserDao;
+import com.bank.model.Transaction;
+import com.bank.model.User;
+import com.bank.util.TestDatabase;
+import com.google.gson.Gson;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streamed exports run against H2, whose driver rejects Connector/J's row-streaming
+ * fetch size, and span several fetches. The statement export is checked byte for byte.
+ */
+public class StreamingExportTest {
+
+    private static final int USERS = 1200;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("db.streamingFetchSize", "100");
+        TestDatabase.install("streaming_export", 4, 10_000);
+        TestDatabase.execute("INSERT INTO users (username, password_hash) "
+                + "SELECT 'user' || X, 'x' FROM SYSTEM_RANGE(1, " + USERS + ")");
+        TestDatabase.execute("INSERT INTO transactions (account_id, transaction_type, amount, source_account_id, "
+                + "destination_account_id, description, transaction_date, balance_after) VALUES "
+                + "(1, 'DEPOSIT', 100.00, NULL, 1, 'Salary, January', TIMESTAMP '2026-01-02 10:00:00', 100.00), "
+                + "(1, 'WITHDRAWAL', 5.50, 1, NULL, 'Say \"hi\"' || CHAR(10) || 'bye', TIMESTAMP '2026-01-03 11:30:00', NULL), "
+                + "(1, 'TRANSFER', 10.00, 1, 2, NULL, TIMESTAMP '2026-01-04 09:15:00', 84.50), "
+                + "(2, 'TRANSFER', 10.00, 1, 2, 'other account', TIMESTAMP '2026-01-04 09:15:00', 10.00), "
+                + "(1, 'DEPOSIT', 1.00, NULL, 1, 'after the range', TIMESTAMP '2026-02-01 00:00:00', 85.50)");
+    }
+
+    @Test
+    public void streamsEveryUserAsAJsonArray() throws Exception {
+        CapturedResponse captured = new CapturedResponse();
+        new ExportServlet().sendJsonArrayStream(captured.response, User.class, new UserDao()::streamAllUsers);
+
+        assertEquals(200, captured.status);
+        User[] users = new Gson().fromJson(captured.body(), User[].class);
+        assertEquals(USERS, users.length);
+        assertEquals("user1", users[0].getUsername());
+        assertEquals("user" + USERS, users[USERS - 1].getUsername());
+    }
+
+    @Test
+    public void statementCsvQuotesDescriptionsAndLeavesMissingValuesEmpty() throws Exception {
+        String csv = exportStatement(StatementFormat.CSV);
+
+        assertEquals(StatementFormat.CSV.header
+                + "1,2026-01-02 10:00:00.0,DEPOSIT,100.00,100.00,,1,\"Salary, January\"\r\n"
+                + "2,2026-01-03 11:30:00.0,WITHDRAWAL,5.50,,1,,\"Say \"\"hi\"\"\nbye\"\r\n"
+                + "3,2026-01-04 09:15:00.0,TRANSFER,10.00,84.50,1,2,\r\n", csv);
+    }
+
+    @Test
+    public void statementNdjsonWritesOneObjectPerLine() throws Exception {
+        String ndjson = exportStatement(StatementFormat.NDJSON);
+
+        assertTrue(ndjson.endsWith("\n"));
+        String[] lines = ndjson.split("\n");
+        assertEquals(3, lines.length); // the newline inside a description is escaped
+        Gson gson = new Gson();
+        Transaction withdrawal = gson.fromJson(lines[1], Transaction.class);
+        assertEquals(2, withdrawal.getTransactionId());
+        assertEquals("Say \"hi\"\nbye", withdrawal.getDescription());
+        assertEquals(new BigDecimal("5.50"), withdrawal.getAmount());
+        assertNull(withdrawal.getBalanceAfter());
+        assertNull(gson.fromJson(lines[2], Transaction.class).getDescription());
+    }
+
+    /**
+     * Account 1's statement for January 2026, as AccountServlet streams it.
+     */
+    private static String exportStatement(StatementFormat format) throws Exception {
+        CapturedResponse captured = new CapturedResponse();
+        HttpServletRequest req = (HttpServletRequest) Proxy.newProxyInstance(StreamingExportTest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> null); // no Accept-Encoding
+        Timestamp from = Timestamp.valueOf("2026-01-01 00:00:00");
+        Timestamp to = Timestamp.valueOf("2026-01-31 23:59:59");
+        ExportServlet servlet = new ExportServlet();
+        servlet.<Transaction>sendTextStream(req, captured.response, format.contentType, "statement." + format.fileExtension,
+                format.header, (tx, out) -> format.write(tx, out, servlet.gson),
+                callback -> new TransactionDao().streamStatement(1, from, to, callback));
+        assertEquals(200, captured.status);
+        return captured.body();
+    }
+
+    private static final class ExportServlet extends BaseServlet {
+    }
+
+    /**
+     * An HttpServletResponse that keeps the body in memory.
+     */
+    static final class CapturedResponse {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int status = 200;
+        final HttpServletResponse response;
+
+        CapturedResponse() {
+            ServletOutputStream out = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    bytes.write(b, off, len);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                }
+            };
+            response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getOutputStream":
+                                return out;
+                            case "getWriter":
+                                return new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                            case "setStatus":
+                                status = (Integer) args[0];
+                                return null;
+                            case "isCommitted":
+                                return bytes.size() > 0;
+                            case "reset":
+                                bytes.reset();
+                                status = 200;
+                                return null;
+                            default:
+                                return null; // headers and content type are not checked
+                        }
+                    });
+        }
+
+        String body() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Bloom filter of account numbers is loaded in the background and only ever
+ * speeds up known numbers: a miss is confirmed against the database, then remembered
+ * for account.cache.missTtlSeconds.
+ */
+public class AccountDaoBloomFilterTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("account.cache.bloomFilter", "true");
+        System.setProperty("account.cache.bloomRefreshSeconds", "3600");
+        TestDatabase.install("bloom_filter", 4, 2_000);
+        TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) "
+                + "VALUES (1, '3000000001', 'SAVINGS', 100.00)");
+    }
+
+    @Test
+    public void accountOpenedElsewhereAfterTheLoadIsStillReachable() throws Exception {
+        AccountDao dao = new AccountDao(); // starts the background load
+        AccountMetadataCache cache = AccountDao.getMetadataCache();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!cache.isUnknownToFilter("3999999999")) {
+            assertTrue("filter never loaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        // Inserted directly, as another node would: not in this node's filter
+        TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) "
+                + "VALUES (2, '3000000002', 'SAVINGS', 0.00)");
+        assertTrue(cache.isUnknownToFilter("3000000002"));
+
+        assertTrue(dao.transferFunds(1, "3000000002", Money.parse("10.00")));
+        assertFalse(cache.isUnknownToFilter("3000000002"));
+        assertEquals(0, cache.getBloomRejectionCount());
+
+        assertFalse(dao.transferFunds(1, "3999999999", Money.parse("10.00")));
+        assertEquals(1, cache.getBloomRejectionCount());
+        assertEquals(2, cache.getBloomLookupCount());
+
+        // A repeated unknown number is refused from the recent-miss cache, without a query
+        assertFalse(dao.transferFunds(1, "3999999999", Money.parse("10.00")));
+        assertEquals(2, cache.getBloomRejectionCount());
+        assertEquals(2, cache.getBloomLookupCount());
+    }
+}
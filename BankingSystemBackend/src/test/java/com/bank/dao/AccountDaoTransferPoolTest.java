@@ -0,0 +1,120 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.util.ConnectionPool;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pool pressure: N concurrent transfers against a pool of N connections must all
+ * succeed, because a transfer holds exactly one connection for its whole transaction.
+ * (Before the fix, each transfer borrowed a second connection for the destination
+ * lookup while holding the first, so N transfers could starve a pool of N.)
+ */
+public class AccountDaoTransferPoolTest {
+
+    private static final int POOL_SIZE = 8;
+    private static final String FIRST_NUMBER = "2000000000";
+
+    private static ConnectionPool pool;
+    private static final ThreadLocal<AtomicInteger> HELD = ThreadLocal.withInitial(AtomicInteger::new);
+    private static final AtomicInteger MAX_HELD_BY_ONE_THREAD = new AtomicInteger();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Short timeout, so a transfer that needs a second connection fails fast instead of hanging
+        pool = TestDatabase.install("transfer_pool", POOL_SIZE, 2_000);
+        for (int i = 0; i < POOL_SIZE * 2; i++) {
+            TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) VALUES ("
+                    + (i + 1) + ", '" + accountNumber(i) + "', 'SAVINGS', 100.00)");
+        }
+        DatabaseConnection.setDataSource(countingPerThread(pool));
+    }
+
+    @Test
+    public void concurrentTransfersNeverHoldMoreThanOneConnection() throws Exception {
+        AccountDao dao = new AccountDao();
+        CyclicBarrier start = new CyclicBarrier(POOL_SIZE);
+        ExecutorService threads = Executors.newFixedThreadPool(POOL_SIZE);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < POOL_SIZE; i++) {
+                // Account i pays account N + i: disjoint rows, so only the pool is contended
+                final int from = i + 1;
+                final String to = accountNumber(POOL_SIZE + i);
+                results.add(threads.submit(() -> {
+                    start.await();
+                    return dao.transferFunds(from, to, Money.parse("25.00"));
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue("transfer failed", result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertEquals(1, MAX_HELD_BY_ONE_THREAD.get());
+        assertEquals(0, pool.getAcquireTimeoutCount());
+        for (int i = 0; i < POOL_SIZE; i++) {
+            assertEquals(new BigDecimal("75.00"), dao.getAccountById(i + 1).getBalance());
+            assertEquals(new BigDecimal("125.00"), dao.getAccountById(POOL_SIZE + i + 1).getBalance());
+        }
+    }
+
+    private static String accountNumber(int index) {
+        return String.valueOf(Long.parseLong(FIRST_NUMBER) + index);
+    }
+
+    /**
+     * A DataSource over the pool that records how many connections each thread holds at once.
+     */
+    private static DataSource countingPerThread(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(AccountDaoTransferPoolTest.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (!"getConnection".equals(method.getName())) {
+                        return result;
+                    }
+                    AtomicInteger held = HELD.get();
+                    MAX_HELD_BY_ONE_THREAD.accumulateAndGet(held.incrementAndGet(), Math::max);
+                    Connection conn = (Connection) result;
+                    AtomicInteger closed = new AtomicInteger();
+                    return Proxy.newProxyInstance(AccountDaoTransferPoolTest.class.getClassLoader(),
+                            new Class<?>[] {Connection.class}, (p, m, a) -> {
+                                if ("close".equals(m.getName()) && closed.getAndIncrement() == 0) {
+                                    held.decrementAndGet();
+                                }
+                                return invoke(conn, m, a);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Back-filling days missed since the last checkpoint, and as-of queries that fall
+ * before the first checkpoint.
+ */
+public class BalanceCheckpointerTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestDatabase.install("balance_checkpoints", 4, 10_000);
+        // Balance history of account 1: 100 on day -6, +50 on day -4, -30 on day -2, +5 today
+        TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) "
+                + "VALUES (1, '6000000001', 'SAVINGS', 125.00)");
+        post("DEPOSIT", "100.00", -6);
+        post("DEPOSIT", "50.00", -4);
+        post("WITHDRAWAL", "30.00", -2);
+        post("DEPOSIT", "5.00", 0);
+    }
+
+    @Test
+    public void catchUpBackFillsEveryDaySinceTheLatestCheckpoint() throws Exception {
+        BalanceCheckpointer checkpointer = new BalanceCheckpointer();
+        LocalDate yesterday = TODAY.minusDays(1);
+        assertEquals(1, checkpointer.catchUp(yesterday.minusDays(3))); // first run: day -4 only
+        assertEquals(3, checkpointer.catchUp(yesterday));             // missed days -3, -2, -1
+        assertEquals(0, checkpointer.catchUp(yesterday));
+
+        TransactionDao dao = new TransactionDao();
+        assertEquals(Money.parse("150.00"), dao.getBalanceAsOf(1, endOf(-3)));
+        assertEquals(Money.parse("120.00"), dao.getBalanceAsOf(1, endOf(-1)));
+        // Before the first checkpoint (day -4): walked back from it
+        assertEquals(Money.parse("100.00"), dao.getBalanceAsOf(1, endOf(-5)));
+        assertEquals(Money.parse("100.00"), dao.getBalanceAsOf(1, at(-4, 11)));
+        assertEquals(Money.parse("0.00"), dao.getBalanceAsOf(1, at(-7, 12)));
+    }
+
+    private static void post(String type, String amount, int day) throws Exception {
+        TestDatabase.execute("INSERT INTO transactions (account_id, transaction_type, amount, transaction_date) "
+                + "VALUES (1, '" + type + "', " + amount + ", TIMESTAMP '" + at(day, 12) + "')");
+    }
+
+    private static Timestamp at(int day, int hour) {
+        return Timestamp.valueOf(TODAY.plusDays(day).atTime(hour, 0));
+    }
+
+    private static Timestamp endOf(int day) {
+        return Timestamp.valueOf(TODAY.plusDays(day).atTime(23, 59, 59));
+    }
+}
@@ -0,0 +1,103 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.model.Transaction;
+import com.bank.util.ConnectionPool;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceUpdateBatcherTest {
+
+    private static ConnectionPool pool;
+    private static final AtomicBoolean FAIL_WITH_ERROR = new AtomicBoolean();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        pool = TestDatabase.install("batcher", 4, 2_000);
+        TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) "
+                + "VALUES (1, '4000000001', 'SAVINGS', 100.00)");
+        DatabaseConnection.setDataSource((DataSource) Proxy.newProxyInstance(
+                BalanceUpdateBatcherTest.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                    if (FAIL_WITH_ERROR.get() && "getConnection".equals(method.getName())) {
+                        throw new StackOverflowError("simulated");
+                    }
+                    try {
+                        return method.invoke(pool, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }));
+    }
+
+    @Test
+    public void errorInFlushFailsTheBatchAndTheFlusherCarriesOn() throws Exception {
+        BalanceUpdateBatcher batcher = new BalanceUpdateBatcher(new AccountDao(), true, 16, 500);
+
+        FAIL_WITH_ERROR.set(true);
+        CompletableFuture<Boolean> failed =
+                CompletableFuture.supplyAsync(() -> batcher.submit(1, Money.parse("5.00"), null));
+        assertFalse(failed.get(10, TimeUnit.SECONDS)); // answered, not stranded
+
+        FAIL_WITH_ERROR.set(false);
+        CompletableFuture<Boolean> applied =
+                CompletableFuture.supplyAsync(() -> batcher.submit(1, Money.parse("5.00"), null));
+        assertTrue(applied.get(10, TimeUnit.SECONDS));
+        assertEquals(new BigDecimal("105.00"), new AccountDao().getAccountById(1).getBalance());
+    }
+
+    @Test
+    public void accountWithShardRowsGetsNoBalanceAfter() throws Exception {
+        BalanceUpdateBatcher batcher = new BalanceUpdateBatcher(new AccountDao(), true, 16, 500);
+        // Made hot elsewhere: 50.00 moved from the base row into a shard
+        TestDatabase.execute("INSERT INTO accounts (account_id, user_id, account_number, account_type, balance) "
+                + "VALUES (2, 1, '4000000002', 'SAVINGS', 50.00), (3, 1, '4000000003', 'SAVINGS', 0.00)");
+        TestDatabase.execute("INSERT INTO account_shards (account_id, shard_no, balance) VALUES (2, 0, 50.00)");
+
+        assertTrue(CompletableFuture.supplyAsync(() -> batcher.submit(2, Money.parse("5.00"), null))
+                .get(10, TimeUnit.SECONDS));
+        assertTrue(CompletableFuture.supplyAsync(() -> batcher.submit(3, Money.parse("1.00"), null))
+                .get(10, TimeUnit.SECONDS));
+
+        List<Transaction> sharded = new TransactionDao().getTransactionsByAccountId(2);
+        assertEquals(1, sharded.size());
+        assertNull(sharded.get(0).getBalanceAfter()); // 55.00 would be the base row alone
+        assertEquals(new BigDecimal("1.00"), new TransactionDao().getTransactionsByAccountId(3).get(0).getBalanceAfter());
+    }
+
+    @Test
+    public void stoppedBatcherExitsAndRefusesUpdates() throws Exception {
+        BalanceUpdateBatcher batcher = new BalanceUpdateBatcher(new AccountDao(), true, 16, 500);
+        TestDatabase.execute("INSERT INTO accounts (account_id, user_id, account_number, account_type, balance) "
+                + "VALUES (4, 1, '4000000004', 'SAVINGS', 10.00)");
+        assertTrue(CompletableFuture.supplyAsync(() -> batcher.submit(4, Money.parse("1.00"), null))
+                .get(10, TimeUnit.SECONDS));
+        Field field = BalanceUpdateBatcher.class.getDeclaredField("flusher");
+        field.setAccessible(true);
+        Thread flusher = (Thread) field.get(batcher);
+
+        batcher.stop();
+        assertFalse(flusher.isAlive());
+        assertFalse(CompletableFuture.supplyAsync(() -> batcher.submit(4, Money.parse("1.00"), null))
+                .get(10, TimeUnit.SECONDS));
+        assertFalse(((Thread) field.get(batcher)).isAlive()); // not restarted by the submit
+        assertEquals(new BigDecimal("11.00"), new AccountDao().getAccountById(4).getBalance());
+    }
+}
@@ -0,0 +1,118 @@
+package com.bank.dao;
+
+import com.bank.model.Money;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hot accounts under concurrent load, and an account made hot by another node.
+ */
+public class HotAccountsTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("account.hot.enabled", "true");
+        System.setProperty("account.hot.refreshSeconds", "3600"); // only the initial load
+        System.setProperty("account.hot.rebalanceSeconds", "0");  // driven by the test instead
+        TestDatabase.install("hot_accounts", 8, 10_000);
+        for (int i = 1; i <= 5; i++) {
+            TestDatabase.execute("INSERT INTO accounts (user_id, account_number, account_type, balance) "
+                    + "VALUES (" + i + ", '500000000" + i + "', 'SAVINGS', 10000.00)");
+        }
+    }
+
+    /**
+     * Hot->cold, cold->hot, hot->hot in both directions, and deposits/withdrawals on a hot
+     * account, all at once with the rebalancer running. With one lock order everywhere,
+     * nothing deadlocks and no money is created or lost.
+     */
+    @Test
+    public void mixedLoadIsDeadlockFreeAndConservesMoney() throws Exception {
+        AccountDao dao = new AccountDao();
+        assertTrue(dao.makeHot(1, 8));
+        assertTrue(dao.makeHot(2, 4));
+        HotAccounts hot = hotAccounts();
+
+        int threads = 12;
+        int perThread = 150;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor();
+        rebalancer.scheduleWithFixedDelay(hot::rebalanceAll, 5, 10, TimeUnit.MILLISECONDS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int kind = t % 6;
+                workers.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        switch (kind) {
+                            case 0: dao.transferFunds(1, "5000000003", Money.parse("7.00")); break;
+                            case 1: dao.transferFunds(4, "5000000001", Money.parse("5.00")); break;
+                            case 2: dao.transferFunds(1, "5000000002", Money.parse("3.00")); break;
+                            case 3: dao.transferFunds(2, "5000000001", Money.parse("4.00")); break;
+                            case 4: dao.updateBalance(1, Money.parse("2.00")); break;
+                            default: dao.updateBalance(1, Money.parse("-6.50")); break;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            rebalancer.shutdownNow();
+            pool.shutdownNow();
+        }
+
+        assertEquals(0, AccountDao.getDeadlockCount());
+        try (Connection conn = DatabaseConnection.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT (SELECT SUM(balance) FROM accounts) + (SELECT SUM(balance) FROM account_shards), "
+                     + "(SELECT SUM(CASE transaction_type WHEN 'DEPOSIT' THEN amount WHEN 'WITHDRAWAL' THEN -amount ELSE 0 END) FROM transactions), "
+                     + "(SELECT MIN(balance) FROM account_shards), (SELECT MIN(balance) FROM accounts)")) {
+            rs.next();
+            assertEquals(new BigDecimal("50000.00").add(rs.getBigDecimal(2)), rs.getBigDecimal(1));
+            assertTrue(rs.getBigDecimal(3).signum() >= 0);
+            assertTrue(rs.getBigDecimal(4).signum() >= 0);
+        }
+    }
+
+    /**
+     * Another node splits account 5 into shards, leaving its base row at 0. This node has
+     * not reloaded yet, but a withdrawal the shards can cover still succeeds.
+     */
+    @Test
+    public void debitOnAccountMadeHotElsewhereIsRetriedOnTheShards() throws Exception {
+        AccountDao dao = new AccountDao();
+        TestDatabase.execute("INSERT INTO account_shards (account_id, shard_no, balance) VALUES "
+                + "(5, 0, 5000.00), (5, 1, 5000.00)");
+        TestDatabase.execute("UPDATE accounts SET balance = 0 WHERE account_id = 5");
+
+        assertTrue(dao.updateBalance(5, Money.parse("-100.00")));
+        assertTrue(dao.transferFunds(5, "5000000004", Money.parse("100.00")));
+        assertEquals(new BigDecimal("9800.00"), dao.getAccountById(5).getBalance());
+    }
+
+    private static HotAccounts hotAccounts() throws Exception {
+        Field field = AccountDao.class.getDeclaredField("HOT");
+        field.setAccessible(true);
+        return (HotAccounts) field.get(null);
+    }
+}
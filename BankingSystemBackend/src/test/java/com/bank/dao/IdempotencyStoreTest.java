@@ -0,0 +1,124 @@
+package com.bank.dao;
+
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Claims on one node: replays, duplicates that wait for the first execution, and
+ * what happens when it runs too long, fails, or the key is reused for another request.
+ */
+public class IdempotencyStoreTest {
+
+    private static final int USER = 7;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("idempotency.waitMillis", "1000");
+        TestDatabase.install("idempotency", 4, 2_000);
+    }
+
+    @Test
+    public void completedOutcomeIsReplayedFromTheCache() {
+        IdempotencyStore store = new IdempotencyStore();
+        IdempotencyStore.Claim owner = store.claim(USER, "replay", "deposit:1:5.00");
+        assertNotNull(owner);
+        assertFalse(owner.isReplay());
+        owner.complete(owner.record(200, "{\"message\":\"Deposit successful.\"}"));
+        owner.release();
+
+        // Nothing was written to idempotency_keys, so this can only come from the LRU
+        IdempotencyStore.Claim retry = store.claim(USER, "replay", "deposit:1:5.00");
+        assertTrue(retry.isReplay());
+        assertTrue(retry.matches(retry.getReplay()));
+        assertEquals(200, retry.getReplay().getStatusCode());
+        assertEquals("{\"message\":\"Deposit successful.\"}", retry.getReplay().getResponseBody());
+    }
+
+    @Test
+    public void concurrentDuplicateWaitsThenReplays() throws Exception {
+        IdempotencyStore store = new IdempotencyStore();
+        IdempotencyStore.Claim owner = store.claim(USER, "wait", "transfer:1:2:10.00");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            long waits = IdempotencyStore.getWaitCount();
+            Future<IdempotencyStore.Claim> duplicate = pool.submit(() -> store.claim(USER, "wait", "transfer:1:2:10.00"));
+            awaitWaitCount(waits + 1);
+
+            owner.complete(owner.record(200, "{\"message\":\"Transfer successful.\"}"));
+            owner.release();
+            IdempotencyStore.Claim replay = duplicate.get(10, TimeUnit.SECONDS);
+            assertTrue(replay.isReplay());
+            assertEquals("{\"message\":\"Transfer successful.\"}", replay.getReplay().getResponseBody());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void duplicateGivesUpAfterWaitMillis() {
+        IdempotencyStore store = new IdempotencyStore();
+        IdempotencyStore.Claim owner = store.claim(USER, "slow", "withdraw:1:5.00");
+        try {
+            long start = System.nanoTime();
+            assertNull(store.claim(USER, "slow", "withdraw:1:5.00")); // the servlet answers 409 + Retry-After
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+        } finally {
+            owner.release();
+        }
+    }
+
+    @Test
+    public void keyReusedForAnotherRequestDoesNotMatch() {
+        IdempotencyStore store = new IdempotencyStore();
+        IdempotencyStore.Claim owner = store.claim(USER, "reused", "deposit:1:5.00");
+        owner.complete(owner.record(200, "{\"message\":\"Deposit successful.\"}"));
+        owner.release();
+
+        IdempotencyStore.Claim other = store.claim(USER, "reused", "deposit:1:500.00");
+        assertTrue(other.isReplay());
+        assertFalse(other.matches(other.getReplay())); // the servlet answers 422
+    }
+
+    @Test
+    public void waiterRunsTheRequestItselfWhenTheOwnerFails() throws Exception {
+        IdempotencyStore store = new IdempotencyStore();
+        IdempotencyStore.Claim owner = store.claim(USER, "failed", "transfer:1:2:10.00");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            long waits = IdempotencyStore.getWaitCount();
+            Future<IdempotencyStore.Claim> duplicate = pool.submit(() -> store.claim(USER, "failed", "transfer:1:2:10.00"));
+            awaitWaitCount(waits + 1);
+
+            owner.release(); // failed: nothing stored
+            IdempotencyStore.Claim second = duplicate.get(10, TimeUnit.SECONDS);
+            assertNotNull(second);
+            assertFalse(second.isReplay()); // now the owner
+
+            second.complete(second.record(200, "{\"message\":\"Transfer successful.\"}"));
+            second.release();
+            assertTrue(store.claim(USER, "failed", "transfer:1:2:10.00").isReplay());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void awaitWaitCount(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (IdempotencyStore.getWaitCount() < expected) {
+            assertTrue("duplicate never waited", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
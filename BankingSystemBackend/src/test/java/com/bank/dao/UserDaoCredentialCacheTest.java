@@ -0,0 +1,86 @@
+package com.bank.dao;
+
+import com.bank.util.ConnectionPool;
+import com.bank.util.DatabaseConnection;
+import com.bank.util.PasswordUtils;
+import com.bank.util.TestDatabase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A login lookup that read a user before a status change, but caches the row after
+ * the change has cleared the cache, must not leave the stale row cached.
+ */
+public class UserDaoCredentialCacheTest {
+
+    private static final CountDownLatch READ = new CountDownLatch(1);
+    private static final CountDownLatch WRITTEN = new CountDownLatch(1);
+    private static volatile Thread pausedReader;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("auth.cache.enabled", "true");
+        ConnectionPool pool = TestDatabase.install("credential_cache", 4, 10_000);
+        TestDatabase.execute("INSERT INTO users (username, password_hash, status) VALUES ('alice', '"
+                + PasswordUtils.hashPassword("pw") + "', 'ACTIVE')");
+        DatabaseConnection.setDataSource((DataSource) pausing(pool, DataSource.class));
+    }
+
+    @Test
+    public void lookupRacingAStatusChangeDoesNotCacheTheOldStatus() throws Exception {
+        UserDao dao = new UserDao();
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<UserCredentials> stale = reader.submit(() -> {
+                pausedReader = Thread.currentThread();
+                return dao.getCredentialsByUsername("alice");
+            });
+            assertTrue(READ.await(10, TimeUnit.SECONDS));
+            assertTrue(dao.updateUserStatus(1, "DEACTIVATED"));
+            WRITTEN.countDown();
+
+            assertEquals("ACTIVE", stale.get(10, TimeUnit.SECONDS).toUser().getStatus()); // read before the change
+            assertEquals("DEACTIVATED", dao.getCredentialsByUsername("alice").toUser().getStatus());
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * Proxies the JDBC objects handed out by target. On the paused reader thread, closing
+     * a ResultSet (after the row is read, before it is cached) waits for the write.
+     */
+    private static Object pausing(Object target, Class<?> type) {
+        return Proxy.newProxyInstance(UserDaoCredentialCacheTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    if (type == ResultSet.class && "close".equals(method.getName())
+                            && Thread.currentThread() == pausedReader) {
+                        READ.countDown();
+                        WRITTEN.await(10, TimeUnit.SECONDS);
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    Class<?> returned = method.getReturnType();
+                    return (result != null && returned.isInterface() && returned.getName().startsWith("java.sql."))
+                            ? pausing(result, returned) : result;
+                });
+    }
+}
@@ -0,0 +1,172 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LedgerEngineTest {
+
+    private Path dir;
+
+    @Before
+    public void createJournalDir() throws IOException {
+        dir = Files.createTempDirectory("ledger-test");
+    }
+
+    @After
+    public void deleteJournalDir() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void failedJournalAppendLeavesStripedBalancesUnchanged() throws Exception {
+        assertFailedAppendLeavesBalancesUnchanged(() -> new StripedLedgerEngine(16));
+    }
+
+    @Test
+    public void failedJournalAppendLeavesGlobalBalancesUnchanged() throws Exception {
+        assertFailedAppendLeavesBalancesUnchanged(GlobalLockLedgerEngine::new);
+    }
+
+    @Test
+    public void failedJournalAppendLeavesRingBalancesUnchanged() throws Exception {
+        assertFailedAppendLeavesBalancesUnchanged(() -> new RingBufferLedgerEngine(64));
+    }
+
+    private void assertFailedAppendLeavesBalancesUnchanged(Supplier<AbstractLedgerEngine> engines) throws Exception {
+        AbstractLedgerEngine ledger = engines.get();
+        LedgerJournal journal = new LedgerJournal(dir, 1, 1000, 0);
+        ledger.attachJournal(journal);
+        ledger.openAccount(1, Money.parse("100.00"));
+        ledger.openAccount(2, Money.parse("50.00"));
+        ledger.execute(EntryType.TRANSFER, 1, 2, Money.parse("10.00"));
+
+        breakChannel(journal);
+        for (EntryType type : EntryType.values()) {
+            try {
+                ledger.execute(type, 1, 2, Money.parse("5.00"));
+                fail(type + " succeeded without being journaled");
+            } catch (IllegalStateException expected) {
+                // "Ledger journal append failed"
+            }
+        }
+        assertEquals(Money.parse("90.00"), ledger.getBalance(1));
+        assertEquals(Money.parse("60.00"), ledger.getBalance(2));
+        ledger.shutdown();
+
+        // Recovery agrees with what callers were told
+        AbstractLedgerEngine recovered = engines.get();
+        recovered.attachJournal(new LedgerJournal(dir, 1, 1000, 0));
+        assertEquals(Money.parse("90.00"), recovered.getBalance(1));
+        assertEquals(Money.parse("60.00"), recovered.getBalance(2));
+        recovered.shutdown();
+    }
+
+    @Test
+    public void stripedEngineRejectsCommandsAfterShutdown() throws Exception {
+        StripedLedgerEngine ledger = new StripedLedgerEngine(16);
+        ledger.attachJournal(new LedgerJournal(dir, 1, 1000, 0));
+        ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("1.00"));
+        ledger.shutdown();
+        try {
+            ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("1.00"));
+            fail("command accepted after shutdown");
+        } catch (IllegalStateException expected) {
+            // nothing applied without the journal
+        }
+        assertEquals(Money.parse("1.00"), ledger.getBalance(1));
+    }
+
+    @Test
+    public void ringShutdownAnswersEveryPendingCommand() throws Exception {
+        RingBufferLedgerEngine ledger = new RingBufferLedgerEngine(16);
+        ledger.openAccount(1, Money.parse("0.00"));
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> submitters = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                submitters.add(pool.submit(() -> {
+                    int applied = 0;
+                    while (true) {
+                        try {
+                            ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("0.01"));
+                            applied++;
+                        } catch (IllegalStateException | CompletionException e) {
+                            return applied;
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            ledger.shutdown();
+
+            long total = 0;
+            for (Future<Integer> submitter : submitters) {
+                total += submitter.get(10, TimeUnit.SECONDS); // none left waiting for a reply
+            }
+            assertTrue(total > 0);
+            assertEquals(Money.ofMinor(total), ledger.getBalance(1));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ringAnswersAProducerThatClaimsAfterTheWriterExits() throws Exception {
+        RingBufferLedgerEngine ledger = new RingBufferLedgerEngine(4);
+        ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("1.00"));
+        ledger.shutdown();
+
+        // The state of a producer that passed the running check just before shutdown flipped it
+        Field running = RingBufferLedgerEngine.class.getDeclaredField("running");
+        running.setAccessible(true);
+        running.setBoolean(ledger, true);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> late = pool.submit(() -> ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("1.00")));
+            try {
+                late.get(10, TimeUnit.SECONDS);
+                fail("command applied after the writer exited");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(Money.parse("1.00"), ledger.getBalance(1));
+    }
+
+    /**
+     * Closes the journal's file channel, so the next append fails with an I/O error.
+     */
+    private static void breakChannel(LedgerJournal journal) throws Exception {
+        Field field = LedgerJournal.class.getDeclaredField("channel");
+        field.setAccessible(true);
+        ((FileChannel) field.get(journal)).close();
+    }
+}
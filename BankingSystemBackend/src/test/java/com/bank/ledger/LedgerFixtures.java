@@ -0,0 +1,69 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Builds pre-funded and journaled ledger engines for benchmarks outside this package.
+ */
+public final class LedgerFixtures {
+
+    private LedgerFixtures() {
+    }
+
+    /**
+     * An engine (GLOBAL, STRIPED or RING, as for ledger.engine) with accounts 0..accounts-1
+     * opened at openingBalance. The accounts are opened in one exclusive section, so the
+     * ring's writer takes one task rather than one hand-off per account.
+     */
+    public static LedgerEngine funded(String engine, int accounts, Money openingBalance) {
+        LedgerEngine ledger = create(engine);
+        openAccounts(ledger, accounts, openingBalance);
+        return ledger;
+    }
+
+    /**
+     * An engine recovered from, and journaling to, dir (as with ledger.journal.dir). A
+     * snapshotEvery of 0 never snapshots, so recovery replays every record.
+     */
+    public static LedgerEngine journaled(String engine, Path dir, int syncEveryEntries, long snapshotEvery)
+            throws IOException {
+        AbstractLedgerEngine ledger = create(engine);
+        ledger.attachJournal(new LedgerJournal(dir, syncEveryEntries, 1000, snapshotEvery));
+        return ledger;
+    }
+
+    /**
+     * Opens accounts 0..accounts-1 at openingBalance in one exclusive section.
+     */
+    public static void openAccounts(LedgerEngine engine, int accounts, Money openingBalance) {
+        AbstractLedgerEngine ledger = (AbstractLedgerEngine) engine;
+        ledger.withAllAccounts(() -> {
+            for (long id = 0; id < accounts; id++) {
+                ledger.openAccount(id, openingBalance);
+            }
+            return null;
+        });
+    }
+
+    private static AbstractLedgerEngine create(String engine) {
+        AbstractLedgerEngine ledger;
+        switch (engine.toUpperCase(Locale.ROOT)) {
+            case "GLOBAL":
+                ledger = new GlobalLockLedgerEngine();
+                break;
+            case "RING":
+                ledger = new RingBufferLedgerEngine(1024);
+                break;
+            case "STRIPED":
+                ledger = new StripedLedgerEngine(Runtime.getRuntime().availableProcessors() * 4);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        return ledger;
+    }
+}
@@ -0,0 +1,216 @@
+package com.bank.ledger;
+
+import com.bank.model.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LedgerJournalTest {
+
+    private Path dir;
+
+    @Before
+    public void createJournalDir() throws IOException {
+        dir = Files.createTempDirectory("journal-test");
+    }
+
+    @After
+    public void deleteJournalDir() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void partialWriteIsCutOffAndLaterAppendsSurviveRecovery() throws Exception {
+        StripedLedgerEngine ledger = new StripedLedgerEngine(16);
+        LedgerJournal journal = new LedgerJournal(dir, 64, 1_000_000, 0);
+        ledger.attachJournal(journal);
+        ledger.openAccount(1, Money.parse("100.00"));
+        FaultyChannel channel = FaultyChannel.install(journal);
+
+        channel.failNextWriteHalfway = true;
+        try {
+            ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("5.00"));
+            fail("deposit succeeded although its record was torn");
+        } catch (IllegalStateException expected) {
+            // "Ledger journal append failed"
+        }
+        // The journal keeps going; without the cut, replay would stop at the torn bytes
+        ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("7.00"));
+        assertEquals(Money.parse("107.00"), ledger.getBalance(1));
+        ledger.shutdown();
+
+        assertEquals(Money.parse("107.00"), recover().getBalance(1));
+    }
+
+    @Test
+    public void failedForceDropsTheRecordAndRejectsLaterAppends() throws Exception {
+        StripedLedgerEngine ledger = new StripedLedgerEngine(16);
+        LedgerJournal journal = new LedgerJournal(dir, 1, 1_000_000, 0);
+        ledger.attachJournal(journal);
+        ledger.openAccount(1, Money.parse("100.00"));
+        ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("1.00"));
+        FaultyChannel channel = FaultyChannel.install(journal);
+
+        channel.failForce = true;
+        try {
+            ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("5.00"));
+            fail("deposit succeeded although its fsync failed");
+        } catch (IllegalStateException expected) {
+            // "Ledger journal append failed"
+        }
+        channel.failForce = false; // a retried fsync may "succeed" on pages the kernel already dropped
+        try {
+            ledger.execute(EntryType.DEPOSIT, 1, -1, Money.parse("7.00"));
+            fail("journal accepted an append after a failed fsync");
+        } catch (IllegalStateException expected) {
+            // "Ledger journal failed earlier; restart to recover"
+        }
+        assertEquals(Money.parse("101.00"), ledger.getBalance(1));
+        ledger.shutdown();
+
+        assertEquals(Money.parse("101.00"), recover().getBalance(1));
+    }
+
+    private AbstractLedgerEngine recover() throws IOException {
+        StripedLedgerEngine recovered = new StripedLedgerEngine(16);
+        recovered.attachJournal(new LedgerJournal(dir, 1, 1_000_000, 0));
+        recovered.shutdown();
+        return recovered;
+    }
+
+    /**
+     * Wraps the journal's segment channel and fails writes or fsyncs on demand.
+     */
+    private static final class FaultyChannel extends FileChannel {
+        private final FileChannel delegate;
+        volatile boolean failNextWriteHalfway;
+        volatile boolean failForce;
+
+        private FaultyChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        static FaultyChannel install(LedgerJournal journal) throws Exception {
+            Field field = LedgerJournal.class.getDeclaredField("channel");
+            field.setAccessible(true);
+            FaultyChannel channel = new FaultyChannel((FileChannel) field.get(journal));
+            field.set(journal, channel);
+            return channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failNextWriteHalfway) {
+                failNextWriteHalfway = false;
+                ByteBuffer half = src.duplicate();
+                half.limit(src.position() + src.remaining() / 2);
+                src.position(src.position() + delegate.write(half));
+                throw new IOException("No space left on device");
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failForce) {
+                throw new IOException("Input/output error");
+            }
+            delegate.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.bank.model;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MoneyTest {
+
+    @Test
+    public void parsesPlainDecimals() {
+        assertEquals(1200, Money.parse("12").getMinorUnits());
+        assertEquals(-350, Money.parse("-3.5").getMinorUnits());
+        assertEquals(7, Money.parse("0.07").getMinorUnits());
+        assertEquals(50, Money.parse(".5").getMinorUnits());
+        assertEquals(100, Money.parse("+1.000").getMinorUnits());
+    }
+
+    @Test
+    public void parsesTheLargestAmounts() {
+        assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07").getMinorUnits());
+        assertEquals(-Long.MAX_VALUE, Money.parse("-92233720368547758.07").getMinorUnits());
+    }
+
+    @Test
+    public void rejectsBadInputWithNumberFormatException() {
+        String[] bad = {
+                "99999999999999999999",          // overflows in the integer digits
+                "9999999999999999999999999999.99",
+                "92233720368547758.08",          // overflows only when the cents are added
+                "1.001", "", "-", ".", "1,00", "1e3", "abc", null
+        };
+        for (String text : bad) {
+            try {
+                Money.parse(text);
+                fail("parsed " + text);
+            } catch (NumberFormatException expected) {
+                // mapped to 400 by the servlets
+            }
+        }
+    }
+
+    @Test
+    public void convertsAtTheEdges() {
+        assertEquals(new BigDecimal("12.34"), Money.parse("12.34").toBigDecimal());
+        assertEquals(Money.parse("12.30"), Money.of(new BigDecimal("12.3")));
+        assertEquals("-0.05", Money.ofMinor(-5).toString());
+    }
+}
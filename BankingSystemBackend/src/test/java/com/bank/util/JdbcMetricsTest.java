@@ -0,0 +1,64 @@
+package com.bank.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The hold watchdog runs only between start() and stop(), and forgets connections
+ * whose borrowing thread ended without closing them.
+ */
+public class JdbcMetricsTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("db.metrics.enabled", "true");
+        TestDatabase.install("jdbc_metrics", 4, 10_000);
+    }
+
+    @Test
+    public void watchdogForgetsLeaksAndStopsOnRequest() throws Exception {
+        assertFalse(watchdogRunning());
+        JdbcMetrics.start();
+        JdbcMetrics.start(); // idempotent
+        try {
+            assertTrue(watchdogRunning());
+            Thread leaker = new Thread(() -> {
+                try {
+                    Connection leaked = DatabaseConnection.getConnection(); // never closed
+                    leaked.getAutoCommit();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            leaker.start();
+            leaker.join();
+            assertEquals(1, JdbcMetrics.getBorrowedCount());
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (JdbcMetrics.getBorrowedCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, JdbcMetrics.getBorrowedCount());
+            assertEquals(1, JdbcMetrics.getLeakCount());
+
+            try (Connection held = DatabaseConnection.getConnection()) {
+                Thread.sleep(1_500); // a live holder is not a leak
+                assertEquals(1, JdbcMetrics.getBorrowedCount());
+            }
+        } finally {
+            JdbcMetrics.stop();
+        }
+        assertFalse(watchdogRunning());
+    }
+
+    private static boolean watchdogRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(t -> t.isAlive() && "db-hold-watchdog".equals(t.getName()));
+    }
+}
@@ -0,0 +1,48 @@
+package com.bank.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PasswordUtilsTest {
+
+    @Test
+    public void hashesMatchPlainSha256Hex() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            String password = Long.toString(random.nextLong(), 36) + "é€" + i;
+            String expected = referenceHash(password);
+            assertEquals(expected, PasswordUtils.hashPassword(password));
+            assertTrue(PasswordUtils.checkPassword(password, expected));
+            assertFalse(PasswordUtils.checkPassword(password + "x", expected));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedStoredHashes() {
+        String hash = PasswordUtils.hashPassword("secret");
+        assertFalse(PasswordUtils.checkPassword("secret", null));
+        assertFalse(PasswordUtils.checkPassword("secret", hash.substring(1)));
+        assertFalse(PasswordUtils.checkPassword("secret", hash.toUpperCase()));
+    }
+
+    /**
+     * The hashing code as it was before PasswordUtils was optimised.
+     */
+    private static String referenceHash(String password) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            String h = Integer.toHexString(0xff & b);
+            if (h.length() == 1) hex.append('0');
+            hex.append(h);
+        }
+        return hex.toString();
+    }
+}
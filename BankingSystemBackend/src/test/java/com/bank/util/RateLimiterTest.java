@@ -0,0 +1,40 @@
+package com.bank.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    @Test
+    public void fullBucketAdmitsBurstThenWaits() {
+        RateLimiter limiter = new RateLimiter(1, 3, 10);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("k"));
+        }
+        long wait = limiter.tryAcquire("k");
+        assertTrue(wait > 0 && wait <= 1_000_000_000L);
+        assertEquals(0, limiter.tryAcquire("other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroRate() {
+        new RateLimiter(0, 10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeRate() {
+        new RateLimiter(-1, 10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaNRate() {
+        new RateLimiter(Double.NaN, 10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRateWhoseBurstSpanOverflows() {
+        new RateLimiter(1e-9, Integer.MAX_VALUE, 10);
+    }
+}
@@ -0,0 +1,26 @@
+package com.bank.util;
+
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A signing key shorter than 32 bytes stops SessionTokens from loading (and so the
+ * application from starting). Runs in its own JVM, as every test class does here.
+ */
+public class SessionTokensKeyTest {
+
+    @Test
+    public void shortKeyFailsAtStartup() throws Exception {
+        System.setProperty("auth.token.keys", "1:" + Base64.getEncoder().encodeToString("sixteen-byte-key".getBytes("US-ASCII")));
+        try {
+            Class.forName("com.bank.util.SessionTokens");
+            fail("16-byte key accepted");
+        } catch (ExceptionInInitializerError expected) {
+            assertTrue(expected.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.bank.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Issue/verify with two configured keys, key 2 active (mid-rotation). Tokens that
+ * SessionTokens would not issue itself (expired, signed with key 1) are built here
+ * from an issued token's payload and signed with the test's copy of the key.
+ */
+public class SessionTokensTest {
+
+    private static final byte[] KEY_1 = key(1);
+    private static final byte[] KEY_2 = key(2);
+    private static final int EXPIRES_AT_OFFSET = 1 + 1 + 8 + 4;
+
+    @BeforeClass
+    public static void configure() {
+        Base64.Encoder b64 = Base64.getEncoder();
+        System.setProperty("auth.token.keys", "1:" + b64.encodeToString(KEY_1) + ",2:" + b64.encodeToString(KEY_2));
+        System.setProperty("auth.token.activeKeyId", "2");
+        System.setProperty("auth.token.ttlMinutes", "30");
+    }
+
+    @Test
+    public void issuedTokenVerifies() {
+        long now = System.currentTimeMillis() / 1000;
+        String token = SessionTokens.issue(42, "CUSTOMER", "zo\u00eb");
+
+        SessionTokens.Claims claims = SessionTokens.verify(token);
+        assertNotNull(claims);
+        assertEquals(42, claims.getUserId());
+        assertEquals("CUSTOMER", claims.getRole());
+        assertEquals("zo\u00eb", claims.getUsername());
+        assertTrue(Math.abs(claims.getExpiresAt() - (now + 30 * 60)) <= 1);
+        assertEquals(2, payload(token)[1]); // signed with the active key
+    }
+
+    @Test
+    public void tamperedPayloadOrMacIsRejected() {
+        String token = SessionTokens.issue(42, "CUSTOMER", "alice");
+        int dot = token.indexOf('.');
+
+        byte[] payload = payload(token);
+        payload[13] ^= 1; // userId 42 -> 43, old MAC
+        assertNull(SessionTokens.verify(encode(payload) + token.substring(dot)));
+
+        byte[] mac = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        mac[0] ^= 1;
+        assertNull(SessionTokens.verify(token.substring(0, dot + 1) + encode(mac)));
+
+        byte[] admin = payload(SessionTokens.issue(42, "ADMIN", "alice"));
+        assertNull(SessionTokens.verify(encode(admin) + token.substring(dot))); // another token's MAC
+    }
+
+    @Test
+    public void truncatedOrOversizedTokenIsRejected() {
+        String token = SessionTokens.issue(42, "CUSTOMER", "alice");
+        int dot = token.indexOf('.');
+
+        assertNull(SessionTokens.verify(token.substring(0, token.length() - 1)));
+        assertNull(SessionTokens.verify(token.substring(0, dot)));
+        assertNull(SessionTokens.verify(token.substring(0, dot + 1)));
+        assertNull(SessionTokens.verify(token.substring(dot)));
+        assertNull(SessionTokens.verify(""));
+        assertNull(SessionTokens.verify(null));
+
+        // A payload cut short but correctly signed still fails the layout checks
+        byte[] cut = Arrays.copyOf(payload(token), payload(token).length - 2);
+        assertNull(SessionTokens.verify(signed(cut, KEY_2)));
+
+        char[] huge = new char[4096];
+        Arrays.fill(huge, 'A');
+        assertNull(SessionTokens.verify(new String(huge) + token.substring(dot)));
+        assertNull(SessionTokens.verify(token + "AAAA")); // MAC longer than 32 bytes
+        assertNull(SessionTokens.verify(token.replace('.', '=') + ".x"));
+
+        char[] name = new char[256];
+        Arrays.fill(name, 'n');
+        try {
+            SessionTokens.issue(42, "CUSTOMER", new String(name));
+            fail("256-byte username issued");
+        } catch (IllegalArgumentException expected) {
+            // the length prefix is one byte
+        }
+    }
+
+    @Test
+    public void expiredTokenIsRejected() {
+        byte[] payload = payload(SessionTokens.issue(42, "CUSTOMER", "alice"));
+        long now = System.currentTimeMillis() / 1000;
+
+        ByteBuffer.wrap(payload).putLong(EXPIRES_AT_OFFSET, now - 1);
+        assertNull(SessionTokens.verify(signed(payload, KEY_2)));
+
+        ByteBuffer.wrap(payload).putLong(EXPIRES_AT_OFFSET, now + 60);
+        assertNotNull(SessionTokens.verify(signed(payload, KEY_2))); // same forgery, still valid
+    }
+
+    @Test
+    public void revokedTokensAreRejectedAndForgottenOnceExpired() {
+        String mine = SessionTokens.issue(42, "CUSTOMER", "alice");
+        String other = SessionTokens.issue(43, "CUSTOMER", "bob");
+        SessionTokens.Claims claims = SessionTokens.verify(mine);
+        SessionTokens.revoke(claims.getTokenId(), claims.getExpiresAt());
+        assertNull(SessionTokens.verify(mine));
+
+        // Revoked on another node
+        SessionTokens.Claims otherClaims = SessionTokens.verify(other);
+        SessionTokens.syncRevoked(Collections.singletonMap(otherClaims.getTokenId(), otherClaims.getExpiresAt()));
+        assertNull(SessionTokens.verify(other));
+
+        int count = SessionTokens.getRevokedCount();
+        SessionTokens.syncRevoked(Collections.singletonMap(-1L, System.currentTimeMillis() / 1000 - 1));
+        assertEquals(count, SessionTokens.getRevokedCount()); // already expired: dropped
+        assertNull(SessionTokens.verify(mine));
+    }
+
+    @Test
+    public void tokenSignedWithAnotherConfiguredKeyVerifies() {
+        byte[] payload = payload(SessionTokens.issue(42, "CUSTOMER", "alice"));
+
+        payload[1] = 1; // issued before the rotation to key 2
+        SessionTokens.Claims claims = SessionTokens.verify(signed(payload, KEY_1));
+        assertNotNull(claims);
+        assertEquals("alice", claims.getUsername());
+        assertNull(SessionTokens.verify(signed(payload, KEY_2))); // key id says 1, signed with 2
+
+        payload[1] = 3; // not configured (dropped after rotation)
+        assertNull(SessionTokens.verify(signed(payload, KEY_1)));
+    }
+
+    private static byte[] key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        key[0] = (byte) (seed * 31);
+        return key;
+    }
+
+    private static byte[] payload(String token) {
+        return Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.')));
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String signed(byte[] payload, byte[] key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return encode(payload) + "." + encode(mac.doFinal(payload));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
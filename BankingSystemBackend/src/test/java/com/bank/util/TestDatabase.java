@@ -0,0 +1,56 @@
+package com.bank.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Scanner;
+
+/**
+ * An H2 database in MySQL mode behind the built-in {@link ConnectionPool},
+ * installed as the application's DataSource, with the tables from h2-schema.sql.
+ */
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Creates a fresh in-memory database and makes DatabaseConnection hand out
+     * connections from a pool of poolSize.
+     * @param name Database name; each test class should use its own.
+     */
+    public static ConnectionPool install(String name, int poolSize, long acquireTimeoutMillis) throws SQLException {
+        ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                "sa", "", poolSize, acquireTimeoutMillis, null, 2, 30_000, 0);
+        try (Connection conn = pool.getConnection(); Statement st = conn.createStatement()) {
+            for (String sql : readSchema().split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    st.execute(sql);
+                }
+            }
+        }
+        DatabaseConnection.setDataSource(pool);
+        return pool;
+    }
+
+    private static String readSchema() {
+        try (InputStream in = TestDatabase.class.getClassLoader().getResourceAsStream("h2-schema.sql");
+             Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
+            return scanner.next().replaceAll("(?m)^--.*$", "");
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read h2-schema.sql", e);
+        }
+    }
+
+    /**
+     * Runs one statement on its own connection, e.g. to insert fixtures.
+     */
+    public static void execute(String sql) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection(); Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
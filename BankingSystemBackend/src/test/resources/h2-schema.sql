@@ -0,0 +1,57 @@
+-- Schema used by the DAO tests (H2 in MySQL mode). Mirrors the production tables.
+CREATE TABLE users (
+    user_id INT AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR(50) UNIQUE NOT NULL,
+    password_hash VARCHAR(255) NOT NULL,
+    email VARCHAR(100),
+    first_name VARCHAR(50),
+    last_name VARCHAR(50),
+    role VARCHAR(20) DEFAULT 'CUSTOMER',
+    status VARCHAR(20) DEFAULT 'ACTIVE',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE TABLE accounts (
+    account_id INT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    account_number VARCHAR(20) UNIQUE NOT NULL,
+    account_type VARCHAR(20),
+    balance DECIMAL(15,2) DEFAULT 0.00,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE TABLE transactions (
+    transaction_id INT AUTO_INCREMENT PRIMARY KEY,
+    account_id INT NOT NULL,
+    transaction_type VARCHAR(20),
+    amount DECIMAL(15,2),
+    source_account_id INT,
+    destination_account_id INT,
+    description VARCHAR(255),
+    transaction_date TIMESTAMP(6) DEFAULT CURRENT_TIMESTAMP(6),
+    balance_after DECIMAL(15,2)
+);
+CREATE INDEX idx_transactions_account_date ON transactions (account_id, transaction_date, transaction_id);
+CREATE TABLE balance_checkpoints (
+    account_id INT NOT NULL,
+    checkpoint_date DATE NOT NULL,
+    balance DECIMAL(15,2) NOT NULL,
+    PRIMARY KEY (account_id, checkpoint_date)
+);
+CREATE TABLE account_shards (
+    account_id INT NOT NULL,
+    shard_no INT NOT NULL,
+    balance DECIMAL(15,2) NOT NULL DEFAULT 0.00,
+    PRIMARY KEY (account_id, shard_no)
+);
+CREATE TABLE idempotency_keys (
+    user_id INT NOT NULL,
+    idempotency_key VARCHAR(100) NOT NULL,
+    request_hash CHAR(64) NOT NULL,
+    status_code INT NOT NULL,
+    response_body VARCHAR(1000) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, idempotency_key)
+);
+CREATE TABLE revoked_tokens (
+    token_id BIGINT PRIMARY KEY,
+    expires_at TIMESTAMP NOT NULL
+);